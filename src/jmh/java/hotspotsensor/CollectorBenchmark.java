@@ -0,0 +1,66 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Collector#access(Object)}, in a never ending window and in windows which are rotated (submitted to
+ * {@link HotspotSensor} and cleared) every {@link #WINDOW_ACCESSES} accesses.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectorBenchmark {
+
+    static final int WINDOW_ACCESSES = 1000;
+
+    @Param({"200"})
+    public int l1Capacity;
+
+    @Param({"200"})
+    public int l2Capacity;
+
+    private ManualTimeSource timeSource;
+
+    private Collector<String> collector;
+
+    @Setup
+    public void setup() {
+        HotspotSensor<String> sensor = HotspotSensor.<String>builder().setChannelSize(1 << 16).build();
+        timeSource = new ManualTimeSource();
+        collector =
+            new Collector<>(sensor, new Watch(1, timeSource), new SimpleL1LRU<>(l1Capacity), new SimpleL2Counter<>(l2Capacity));
+    }
+
+    @Benchmark
+    public void access(KeyStream keys) {
+        collector.access(keys.next());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW_ACCESSES)
+    public void accessWithRotation(KeyStream keys) {
+        for (int i = 0; i < WINDOW_ACCESSES; i++) {
+            collector.access(keys.next());
+        }
+        // the next access submits current window
+        timeSource.advance(1);
+    }
+}
@@ -0,0 +1,67 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link HotspotSensor#isHot(Object)} lookup on the published {@link HotSet}, compared with a {@code HashSet}
+ * copied from a notification.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotSetBenchmark {
+
+    @Param({"100", "10000"})
+    public int hotElements;
+
+    @Param({"false", "true"})
+    public boolean bloomFilter;
+
+    private HotSet<String> hotSet;
+
+    private Set<String> hashSet;
+
+    @Setup
+    public void setup() {
+        List<Entry<String>> entries = new ArrayList<>();
+        hashSet = new HashSet<>();
+        // a fraction of the uniform key space is hot
+        for (String key : KeyDistribution.UNIFORM.sequence(hotElements * 4, 7)) {
+            if (hashSet.size() < hotElements && hashSet.add(key)) {
+                entries.add(new Entry<>(key, 100));
+            }
+        }
+        hotSet = HotSet.of(entries, bloomFilter);
+    }
+
+    @Benchmark
+    public int hotSet(KeyStream keys) {
+        return hotSet.get(keys.next());
+    }
+
+    @Benchmark
+    public boolean hashSet(KeyStream keys) {
+        return hashSet.contains(keys.next());
+    }
+}
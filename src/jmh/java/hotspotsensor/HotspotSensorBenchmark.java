@@ -0,0 +1,91 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of {@link HotspotSensor#increase(Object)} and {@link HotspotSensor.OfLong#increase(long)},
+ * including window rotation and submission to the consumer thread.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotspotSensorBenchmark {
+
+    @Param({"200"})
+    public int l1Capacity;
+
+    @Param({"200"})
+    public int l2Capacity;
+
+    private HotspotSensor<String> sensor;
+
+    private HotspotSensor.OfLong longSensor;
+
+    @Setup
+    public void setup() {
+        sensor = HotspotSensor.<String>builder()
+                              .setL1Capacity(l1Capacity)
+                              .setL2Capacity(l2Capacity)
+                              .setChannelSize(1 << 16)
+                              .build();
+        longSensor = HotspotSensor.OfLong.longBuilder()
+                                             .setL1Capacity(l1Capacity)
+                                             .setL2Capacity(l2Capacity)
+                                             .setChannelSize(1 << 16)
+                                             .buildOfLong();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void increase1Thread(KeyStream keys) {
+        sensor.increase(keys.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void increase4Threads(KeyStream keys) {
+        sensor.increase(keys.next());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void increase16Threads(KeyStream keys) {
+        sensor.increase(keys.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void increaseLong1Thread(KeyStream keys) {
+        longSensor.increase(keys.nextId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void increaseLong4Threads(KeyStream keys) {
+        longSensor.increase(keys.nextId());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void increaseLong16Threads(KeyStream keys) {
+        longSensor.increase(keys.nextId());
+    }
+}
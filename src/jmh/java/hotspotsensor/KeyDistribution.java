@@ -0,0 +1,112 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Key distributions used by the JMH benchmarks. Keys are generated ahead of time so the measured code never pays
+ * for random number generation or string allocation.
+ *
+ * @author iamlotus@gmail.com
+ */
+public enum KeyDistribution {
+
+    /**
+     * every key of the universe has the same probability
+     */
+    UNIFORM {
+        @Override
+        int next(Random random, int universe) {
+            return random.nextInt(universe);
+        }
+    },
+
+    /**
+     * zipfian distribution with exponent 1.0, the classic "few keys take most of the traffic" shape
+     */
+    ZIPFIAN {
+        @Override
+        int next(Random random, int universe) {
+            return zipf(random, universe);
+        }
+    },
+
+    /**
+     * 10 hot keys take 10% of the traffic, the rest is uniform long tail. Close to what {@code BenchmarkMain} emits.
+     */
+    HOTSPOT {
+        @Override
+        int next(Random random, int universe) {
+            return random.nextInt(10) == 0 ? random.nextInt(10) : random.nextInt(universe);
+        }
+    };
+
+    static final int UNIVERSE = 1 << 20;
+
+    private static final String[] KEYS = new String[UNIVERSE];
+
+    private static double[] zipfCumulative;
+
+    static {
+        for (int i = 0; i < UNIVERSE; i++) {
+            KEYS[i] = ("K" + i).intern();
+        }
+    }
+
+    abstract int next(Random random, int universe);
+
+    /**
+     * Generate a sequence of keys following this distribution.
+     *
+     * @param length length of sequence, must be a power of 2
+     * @param seed   random seed
+     * @return keys
+     */
+    String[] sequence(int length, long seed) {
+        long[] ids = idSequence(length, seed);
+        String[] result = new String[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = KEYS[(int) ids[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Generate a sequence of numeric keys following this distribution, the same seed gives the same keys as
+     * {@link #sequence(int, long)}.
+     *
+     * @param length length of sequence, must be a power of 2
+     * @param seed   random seed
+     * @return keys in [0, UNIVERSE)
+     */
+    long[] idSequence(int length, long seed) {
+        if (Integer.bitCount(length) != 1) {
+            throw new IllegalArgumentException("length:" + length);
+        }
+
+        Random random = new Random(seed);
+        long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = next(random, UNIVERSE);
+        }
+        return result;
+    }
+
+    private static synchronized int zipf(Random random, int universe) {
+        if (zipfCumulative == null) {
+            double[] cumulative = new double[universe];
+            double sum = 0;
+            for (int i = 0; i < universe; i++) {
+                sum += 1d / (i + 1);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < universe; i++) {
+                cumulative[i] /= sum;
+            }
+            zipfCumulative = cumulative;
+        }
+
+        int pos = Arrays.binarySearch(zipfCumulative, random.nextDouble());
+        return pos < 0 ? Math.min(-pos - 1, universe - 1) : pos;
+    }
+}
@@ -0,0 +1,46 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-thread stream of pre-generated keys, every benchmark thread gets its own sequence.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Thread)
+public class KeyStream {
+
+    private static final int LENGTH = 1 << 16;
+
+    private static final AtomicLong SEED = new AtomicLong(42);
+
+    @Param({"UNIFORM", "ZIPFIAN", "HOTSPOT"})
+    public KeyDistribution distribution;
+
+    private String[] keys;
+
+    private long[] ids;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        long seed = SEED.getAndIncrement();
+        keys = distribution.sequence(LENGTH, seed);
+        ids = distribution.idSequence(LENGTH, seed);
+        cursor = 0;
+    }
+
+    public String next() {
+        return keys[cursor++ & (LENGTH - 1)];
+    }
+
+    public long nextId() {
+        return ids[cursor++ & (LENGTH - 1)];
+    }
+}
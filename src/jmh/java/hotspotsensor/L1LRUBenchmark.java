@@ -0,0 +1,59 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link L1LRU#put(Object)}.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class L1LRUBenchmark {
+
+    @Param({"SIMPLE", "ARRAY", "DOORKEEPER"})
+    public String type;
+
+    @Param({"200"})
+    public int capacity;
+
+    private L1LRU<String> l1LRU;
+
+    @Setup
+    public void setup() {
+        switch (type) {
+            case "SIMPLE":
+                l1LRU = new SimpleL1LRU<>(capacity);
+                break;
+            case "ARRAY":
+                l1LRU = new ArrayL1LRU<>(capacity);
+                break;
+            case "DOORKEEPER":
+                l1LRU = new DoorkeeperL1LRU<>(capacity);
+                break;
+            default:
+                throw new IllegalArgumentException("type:" + type);
+        }
+    }
+
+    @Benchmark
+    public String put(KeyStream keys) {
+        return l1LRU.put(keys.next());
+    }
+}
@@ -0,0 +1,76 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link L2Counter} operations the way {@link Collector} uses them: increase if present, else add. The
+ * snapshot benchmark measures {@link L2Counter#getElements()} + {@link L2Counter#clear()} of a full counter, which
+ * happens once per window.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class L2CounterBenchmark {
+
+    @Param({"SIMPLE", "OPEN_ADDRESSING", "SPACE_SAVING"})
+    public String type;
+
+    @Param({"200"})
+    public int capacity;
+
+    private L2Counter<String> l2Counter;
+
+    @Setup
+    public void setup() {
+        switch (type) {
+            case "SIMPLE":
+                l2Counter = new SimpleL2Counter<>(capacity);
+                break;
+            case "OPEN_ADDRESSING":
+                l2Counter = new OpenAddressingL2Counter<>(capacity);
+                break;
+            case "SPACE_SAVING":
+                l2Counter = new SpaceSavingL2Counter<>(capacity);
+                break;
+            default:
+                throw new IllegalArgumentException("type:" + type);
+        }
+    }
+
+    @Benchmark
+    public boolean incOrAdd(KeyStream keys) {
+        String key = keys.next();
+        return l2Counter.incIfPresent(key) || l2Counter.addIfAbsentAndNotFull(key);
+    }
+
+    @Benchmark
+    public List<Entry<String>> snapshotAndClear(KeyStream keys) {
+        while (!l2Counter.isFull()) {
+            String key = keys.next();
+            if (!l2Counter.incIfPresent(key)) {
+                l2Counter.addIfAbsentAndNotFull(key);
+            }
+        }
+        List<Entry<String>> result = l2Counter.getElements();
+        l2Counter.clear();
+        return result;
+    }
+}
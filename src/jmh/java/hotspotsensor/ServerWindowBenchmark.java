@@ -0,0 +1,81 @@
+package hotspotsensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link HotspotSensor.ServerWindow#merge} for one collector submission, on the consumer thread. A window
+ * is cleared after every collector has submitted once, as the consumer does when the window expires.
+ *
+ * @author iamlotus@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerWindowBenchmark {
+
+    @Param({"UNIFORM", "ZIPFIAN", "HOTSPOT"})
+    public KeyDistribution distribution;
+
+    @Param({"50", "2000"})
+    public int collectors;
+
+    @Param({"200"})
+    public int l2Capacity;
+
+    private HotspotSensor.ServerWindow<String> window;
+
+    private ClientMessage[] submissions;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        window = new HotspotSensor.ServerWindow<>();
+        submissions = new ClientMessage[collectors];
+
+        String[] keys = distribution.sequence(Integer.highestOneBit(collectors * l2Capacity * 4), collectors);
+        int k = 0;
+        for (int i = 0; i < collectors; i++) {
+            // a collector submits distinct elements
+            Set<String> distinct = new HashSet<>();
+            while (distinct.size() < l2Capacity && k < keys.length) {
+                distinct.add(keys[k++]);
+            }
+            // not pooled, merged again after the window is cleared
+            ClientMessage submission = new ClientMessage(null, false);
+            submission.reset(i, 0, l2Capacity);
+            for (String key : distinct) {
+                submission.add(key, 1);
+            }
+            submissions[i] = submission;
+        }
+        cursor = 0;
+    }
+
+    @Benchmark
+    public boolean merge() {
+        if (cursor == collectors) {
+            window.clear();
+            cursor = 0;
+        }
+        int i = cursor++;
+        return window.merge(submissions[i]);
+    }
+}
@@ -0,0 +1,325 @@
+package hotspotsensor;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Window bookkeeping shared by {@link Collector} and {@link LongCollector}: the window (timeId) being collected, its
+ * total count, and submission to {@link HotspotSensor} once the window is elapsed.
+ * <p>
+ * A collector is owned by its worker thread, but a worker which stops accessing (blocked on I/O, idle thread pool)
+ * would hold its window forever. So the consumer of {@link HotspotSensor} flushes elapsed windows of idle collectors
+ * by {@link #flush(long)}. Both sides take the collector by a CAS on {@code state} instead of a lock, the CAS of the
+ * worker is uncontended except in the rare moment of flushing. Even then the worker does not wait: accesses are
+ * deferred to a ring buffer written by the worker only, and put into the window by whoever takes the collector
+ * next, the worker on its next access or the flusher before it submits, so deferred accesses are neither lost with
+ * an idle worker nor counted into a later window. The worker waits only when the buffer is full. Only collectors
+ * shared by threads (stripes) wait for each other.
+ *
+ * @author iamlotus@gmail.com
+ */
+abstract class AbstractCollector {
+
+    private static final int FREE = 0;
+
+    private static final int BUSY = 1;
+
+    private static final AtomicIntegerFieldUpdater<AbstractCollector> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(AbstractCollector.class, "state");
+
+    // capacity of the deferred buffer, power of 2
+    protected static final int DEFER_CAPACITY = 64;
+
+    private static final AtomicIntegerFieldUpdater<AbstractCollector> PUBLISHED =
+        AtomicIntegerFieldUpdater.newUpdater(AbstractCollector.class, "published");
+
+    private static final AtomicIntegerFieldUpdater<AbstractCollector> DRAINED =
+        AtomicIntegerFieldUpdater.newUpdater(AbstractCollector.class, "drained");
+
+    // report to hotspotSensor periodically.
+    protected final HotspotSensor<?> hotspotSensor;
+
+    // ID
+    private final Collector.CollectorId id;
+
+    private final Watch watch;
+
+    // written by owner of state, read by flusher without owning
+    private volatile long currentTimeId;
+
+    // start time of the window after currentTimeId, compared on every access instead of dividing time to timeId
+    private long nextWindowMillis;
+
+    // increase count in the window(currentTimeId)
+    protected long totalCount;
+
+    // elements moved from L1LRU to L2Counter, and those rejected by a full L2Counter, in the window
+    protected int l1Promotions;
+
+    protected int l2Rejections;
+
+    // accesses which put a new element into L1LRU in the window
+    protected int l1Misses;
+
+    // capacities of L1LRU and L2Counter, null if they are fixed
+    private CapacityBudget.Tuner tuner;
+
+    // messages to submit windows
+    protected final MessagePool pool;
+
+    // dense index assigned by hotspotSensor on register, -1 if not registered
+    private int index;
+
+    // used by many threads, which wait for each other instead of deferring
+    private boolean shared;
+
+    // accesses deferred while the collector is flushed: slots before published are written by the owner, slots
+    // before drained are put into the window by the holder of state
+    private volatile int published;
+
+    private volatile int drained;
+
+    private volatile int state;
+
+    AbstractCollector(HotspotSensor<?> hotspotSensor, Watch watch, boolean ofLong) {
+        this.id = Collector.CollectorId.next();
+        this.pool = new MessagePool(ofLong);
+        this.index = -1;
+        this.hotspotSensor = hotspotSensor;
+        this.watch = watch;
+
+        this.currentTimeId = watch.currentTimeId();
+        this.nextWindowMillis = watch.startTimeMillisOf(currentTimeId + 1);
+        this.totalCount = 0;
+        this.state = FREE;
+    }
+
+    /**
+     * Take the collector before modifying window, and replay deferred accesses. The owner never waits: it gets false
+     * if the collector is being flushed, and defers the access. A shared collector waits for the other threads.
+     *
+     * @return true if taken
+     */
+    protected final boolean enter() {
+        if (!STATE.compareAndSet(this, FREE, BUSY)) {
+            if (!shared) {
+                return false;
+            }
+            acquire();
+        }
+        drainDeferred();
+        return true;
+    }
+
+    /**
+     * Take the collector even if it is being flushed, called by the owner whose deferred buffer is full.
+     */
+    protected final void enterWaiting() {
+        acquire();
+        drainDeferred();
+    }
+
+    /**
+     * Take the collector, spin if it is held. Only for threads sharing a collector, and for the owner on close.
+     */
+    private void acquire() {
+        while (!STATE.compareAndSet(this, FREE, BUSY)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Take the collector if nobody holds it
+     *
+     * @return true if taken
+     */
+    protected final boolean tryAcquire() {
+        return STATE.compareAndSet(this, FREE, BUSY);
+    }
+
+    protected final void release() {
+        STATE.lazySet(this, FREE);
+    }
+
+    /**
+     * Submit and reset window if it is elapsed, called by the owner of state.
+     */
+    protected final void rotateIfElapsed() {
+        long now = watch.currentTimeMillis();
+        if (now >= nextWindowMillis) {
+            // the same reading, so that the new window is the one which is elapsed to
+            rotate(watch.timeIdOf(now));
+        }
+    }
+
+    /**
+     * Submit the window of an idle collector if it is elapsed, called by consumer thread of {@link HotspotSensor}.
+     *
+     * @param timeId current timeId
+     * @return true if a window is submitted
+     */
+    final boolean flush(long timeId) {
+        if (currentTimeId >= timeId || !STATE.compareAndSet(this, FREE, BUSY)) {
+            // not elapsed, or the worker is active and will submit by itself
+            return false;
+        }
+
+        try {
+            if (currentTimeId >= timeId) {
+                return false;
+            }
+            // deferred while the window is current, even if the owner never accesses again
+            drainDeferred();
+            boolean submitted = totalCount > 0;
+            rotate(timeId);
+            return submitted;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Submit the current window even if it is not elapsed, called by the owner when collector is closed.
+     */
+    final void flushCurrent() {
+        // not on the access path, the owner may wait for the flusher here
+        acquire();
+        try {
+            drainDeferred();
+            if (totalCount > 0) {
+                submitWindow(currentTimeId, totalCount);
+            }
+            resetCounts();
+            clearWindow();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Slot of the deferred buffer to write, called by the owner when {@link #enter()} fails.
+     *
+     * @return slot, or -1 if the buffer is full
+     */
+    protected final int deferSlot() {
+        int p = published;
+        return p - drained == DEFER_CAPACITY ? -1 : p & (DEFER_CAPACITY - 1);
+    }
+
+    /**
+     * Publish the slot written by the owner to whoever takes the collector next.
+     */
+    protected final void publishDeferred() {
+        PUBLISHED.lazySet(this, published + 1);
+    }
+
+    /**
+     * @return number of deferred accesses which are not put into the window yet
+     */
+    final int deferred() {
+        return published - drained;
+    }
+
+    // called by the holder of state, the owner may publish more meanwhile
+    private void drainDeferred() {
+        int p = published;
+        int d = drained;
+        if (d == p) {
+            return;
+        }
+        for (; d != p; d++) {
+            replayDeferred(d & (DEFER_CAPACITY - 1));
+        }
+        DRAINED.lazySet(this, p);
+    }
+
+    private void rotate(long newTimeId) {
+        if (totalCount > 0) {
+            // currentTimeId is elapsed, submit
+            submitWindow(currentTimeId, totalCount);
+        }
+
+        // reset
+        currentTimeId = newTimeId;
+        nextWindowMillis = watch.startTimeMillisOf(newTimeId + 1);
+        if (tuner != null) {
+            int l1Capacity = tuner.getL1Capacity();
+            int l2Capacity = tuner.getL2Capacity();
+            if (tuner.tune(l1Misses, l1Promotions, l2Rejections)) {
+                resize(tuner.getL1Capacity() == l1Capacity ? 0 : tuner.getL1Capacity(),
+                    tuner.getL2Capacity() == l2Capacity ? 0 : tuner.getL2Capacity());
+            } else {
+                clearWindow();
+            }
+        } else {
+            clearWindow();
+        }
+        resetCounts();
+    }
+
+    private void resetCounts() {
+        totalCount = 0;
+        l1Promotions = 0;
+        l2Rejections = 0;
+        l1Misses = 0;
+    }
+
+    /**
+     * Submit L2Counter of the elapsed window to {@link HotspotSensor} by a {@link ClientMessage} taken from
+     * {@code pool}
+     */
+    protected abstract void submitWindow(long timeId, long totalCount);
+
+    /**
+     * Put an access deferred by the owner into the window and release the slot, called by the holder of state
+     *
+     * @param slot of the deferred buffer
+     */
+    protected abstract void replayDeferred(int slot);
+
+    /**
+     * Clear L1LRU and L2Counter for the new window
+     */
+    protected abstract void clearWindow();
+
+    /**
+     * Replace L1LRU and L2Counter by empty ones of new capacities for the new window, chosen by {@code tuner}
+     *
+     * @param l1Capacity new capacity of L1LRU, 0 if L1LRU is only cleared
+     * @param l2Capacity new capacity of L2Counter, 0 if L2Counter is only cleared
+     */
+    protected abstract void resize(int l1Capacity, int l2Capacity);
+
+    public Collector.CollectorId getId() {
+        return this.id;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Mark the collector as shared by threads, called before the collector is used.
+     *
+     * @param shared
+     */
+    void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    CapacityBudget.Tuner getTuner() {
+        return tuner;
+    }
+
+    /**
+     * Resize L1LRU and L2Counter at window boundaries, called on register before the collector is used.
+     *
+     * @param tuner
+     */
+    void setTuner(CapacityBudget.Tuner tuner) {
+        this.tuner = tuner;
+    }
+}
@@ -0,0 +1,203 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link L1LRU} without allocation in steady state, unlike {@link SimpleL1LRU} which allocates a linked node and a
+ * {@code HashMap} node on every miss.
+ * <p>
+ * Elements are kept in preallocated slots which are linked by index in access order, an open-addressing table
+ * (linear probing, backward-shift deletion) maps element to slot. Entries of the table are stamped with a generation,
+ * {@link #clear()} just starts a new generation so it is O(1). Elements of previous generations stay referenced until
+ * their slots are reused, at most {@code capacity} of them.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class ArrayL1LRU<E> implements L1LRU<E> {
+
+    private static final int NIL = -1;
+
+    private final int capacity;
+
+    // slots, linked in access order
+    private final Object[] elements;
+    private final int[] pre;
+    private final int[] next;
+    private int first;
+    private int last;
+    private int size;
+
+    // slots released by second hit, and slots never used in this generation
+    private final int[] freeSlots;
+    private int freeCount;
+    private int nextUnused;
+
+    // index: element -> slot
+    private final int mask;
+    private final int[] tableHashes;
+    private final int[] tableSlots;
+    private final int[] tableGenerations;
+    private int generation;
+
+    public ArrayL1LRU(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        this.capacity = capacity;
+        this.elements = new Object[capacity];
+        this.pre = new int[capacity];
+        this.next = new int[capacity];
+        this.freeSlots = new int[capacity];
+
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.tableHashes = new int[tableSize];
+        this.tableSlots = new int[tableSize];
+        this.tableGenerations = new int[tableSize];
+        // generation 0 marks never used entries
+        this.generation = 0;
+
+        clear();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E put(E element) {
+        int hash = hash(element);
+        int position = indexOf(element, hash);
+        if (position >= 0) {
+            // If element already exists, remove from queue and return it
+            int slot = tableSlots[position];
+            E result = (E) elements[slot];
+            unlink(slot);
+            freeSlots[freeCount++] = slot;
+            delete(position);
+            return result;
+        }
+
+        int slot;
+        if (size == capacity) {
+            // If element does not exists and queue is full, remove last , add it to first
+            slot = last;
+            unlink(slot);
+            delete(indexOf(elements[slot], hash(elements[slot])));
+            // entries may be shifted by deletion
+            position = indexOf(element, hash);
+        } else if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = nextUnused++;
+        }
+
+        elements[slot] = element;
+        linkFirst(slot);
+
+        position = -position - 1;
+        tableHashes[position] = hash;
+        tableSlots[position] = slot;
+        tableGenerations[position] = generation;
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        generation++;
+        if (generation == 0) {
+            // wrapped, stamps of old generations may collide
+            Arrays.fill(tableGenerations, 0);
+            generation = 1;
+        }
+        first = last = NIL;
+        size = 0;
+        freeCount = 0;
+        nextUnused = 0;
+    }
+
+    @Override
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * @return a copy of alive elements
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<E> getElements() {
+        Set<E> result = new HashSet<>(size * 2);
+        for (int slot = first; slot != NIL; slot = next[slot]) {
+            result.add((E) elements[slot]);
+        }
+        return result;
+    }
+
+    // position of element in table, or (-insertion point - 1) if absent. There is always an empty entry since load
+    // factor is at most 0.5
+    private int indexOf(Object element, int hash) {
+        int i = hash & mask;
+        while (tableGenerations[i] == generation) {
+            if (tableHashes[i] == hash && element.equals(elements[tableSlots[i]])) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -i - 1;
+    }
+
+    // backward-shift deletion, keep every entry reachable from its home position
+    private void delete(int position) {
+        int hole = position;
+        int i = position;
+        while (true) {
+            i = (i + 1) & mask;
+            if (tableGenerations[i] != generation) {
+                break;
+            }
+            int home = tableHashes[i] & mask;
+            // move entry i to hole if its home is not in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                tableHashes[hole] = tableHashes[i];
+                tableSlots[hole] = tableSlots[i];
+                hole = i;
+            }
+        }
+        tableGenerations[hole] = 0;
+    }
+
+    private void linkFirst(int slot) {
+        pre[slot] = NIL;
+        next[slot] = first;
+        if (first != NIL) {
+            pre[first] = slot;
+        }
+        first = slot;
+        if (last == NIL) {
+            last = slot;
+        }
+        size++;
+    }
+
+    private void unlink(int slot) {
+        int p = pre[slot];
+        int n = next[slot];
+        if (p != NIL) {
+            next[p] = n;
+        } else {
+            first = n;
+        }
+        if (n != NIL) {
+            pre[n] = p;
+        } else {
+            last = p;
+        }
+        size--;
+    }
+
+    // spread hash code, linear probing is sensitive to clustered hash codes
+    private static int hash(Object element) {
+        int h = element.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,210 @@
+package hotspotsensor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Budget of entries of L1LRUs and L2Counters of all collectors of a {@link HotspotSensor}, shared by their
+ * {@link Tuner}s. A collector starts with the configured capacities and is resized at window boundaries by what it
+ * observed in the window:
+ * <ol>
+ * <li>L2Counter rejected elements because it is full: L2Counter grows by the rejected ones, doubled at most. L1LRU
+ * is left alone, a bigger one would only promote more elements to be rejected.</li>
+ * <li>L1LRU turned over more than twice (misses are more than twice its capacity): second accesses are forgotten
+ * before they come, L1LRU doubles.</li>
+ * <li>Neither happened for {@link #QUIET_WINDOWS} windows: L1LRU halves if its misses, and L2Counter halves if its
+ * promotions, stayed below a quarter of its capacity.</li>
+ * </ol>
+ * Growth takes entries from the budget, a collector grows as far as the rest of the budget allows. Shrinking gives
+ * entries back, so does a closed or collected collector. Capacities never go below {@code 1/8} of the configured ones,
+ * collectors which start while the budget is exhausted overdraw it, and all collectors shrink until it is repaid.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class CapacityBudget {
+
+    // windows without pressure before shrinking
+    static final int QUIET_WINDOWS = 4;
+
+    private final long maxEntries;
+
+    private final int initialL1Capacity;
+
+    private final int initialL2Capacity;
+
+    private final int minL1Capacity;
+
+    private final int minL2Capacity;
+
+    // entries taken by all tuners, may exceed maxEntries by overdraft
+    private final AtomicLong reserved;
+
+    private final LongAdder l1Entries;
+
+    private final LongAdder l2Entries;
+
+    private final LongAdder resizes;
+
+    CapacityBudget(long maxEntries, int initialL1Capacity, int initialL2Capacity) {
+        if (initialL1Capacity <= 0) {
+            throw new IllegalArgumentException("initialL1Capacity:" + initialL1Capacity);
+        }
+        if (initialL2Capacity <= 0) {
+            throw new IllegalArgumentException("initialL2Capacity:" + initialL2Capacity);
+        }
+        if (maxEntries < initialL1Capacity + initialL2Capacity) {
+            throw new IllegalArgumentException("maxEntries:" + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.initialL1Capacity = initialL1Capacity;
+        this.initialL2Capacity = initialL2Capacity;
+        this.minL1Capacity = Math.max(1, initialL1Capacity / 8);
+        this.minL2Capacity = Math.max(1, initialL2Capacity / 8);
+        this.reserved = new AtomicLong();
+        this.l1Entries = new LongAdder();
+        this.l2Entries = new LongAdder();
+        this.resizes = new LongAdder();
+    }
+
+    /**
+     * @return tuner of a new collector, which takes the configured capacities from budget
+     */
+    Tuner newTuner() {
+        reserved.addAndGet(initialL1Capacity + initialL2Capacity);
+        l1Entries.add(initialL1Capacity);
+        l2Entries.add(initialL2Capacity);
+        return new Tuner();
+    }
+
+    long getMaxEntries() {
+        return maxEntries;
+    }
+
+    long getL1Entries() {
+        return l1Entries.sum();
+    }
+
+    long getL2Entries() {
+        return l2Entries.sum();
+    }
+
+    long getResizes() {
+        return resizes.sum();
+    }
+
+    /**
+     * @param entries wanted
+     * @return entries granted, less than wanted if budget runs out
+     */
+    private int reserve(int entries) {
+        while (true) {
+            long current = reserved.get();
+            long granted = Math.min(entries, maxEntries - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (reserved.compareAndSet(current, current + granted)) {
+                return (int) granted;
+            }
+        }
+    }
+
+    private boolean isOverdrawn() {
+        return reserved.get() > maxEntries;
+    }
+
+
+    /**
+     * Capacities of one collector, tuned by the owner of the collector at window boundaries.
+     */
+    final class Tuner {
+
+        // read by the consumer thread when the collector is collected
+        private volatile int l1Capacity;
+
+        private volatile int l2Capacity;
+
+        private int quietWindows;
+
+        // max of the quiet windows
+        private int quietL1Misses;
+
+        private int quietL2Entries;
+
+        private boolean released;
+
+        Tuner() {
+            this.l1Capacity = initialL1Capacity;
+            this.l2Capacity = initialL2Capacity;
+        }
+
+        int getL1Capacity() {
+            return l1Capacity;
+        }
+
+        int getL2Capacity() {
+            return l2Capacity;
+        }
+
+        /**
+         * Choose capacities of the next window.
+         *
+         * @param l1Misses     accesses which put a new element into L1LRU in the window
+         * @param l1Promotions elements moved from L1LRU to L2Counter in the window
+         * @param l2Rejections elements not moved because L2Counter is full
+         * @return true if any capacity is changed
+         */
+        boolean tune(int l1Misses, int l1Promotions, int l2Rejections) {
+            int newL1Capacity = l1Capacity;
+            int newL2Capacity = l2Capacity;
+            if (isOverdrawn()) {
+                quietWindows = 0;
+                newL1Capacity = Math.max(minL1Capacity, l1Capacity / 2);
+                newL2Capacity = Math.max(minL2Capacity, l2Capacity / 2);
+            } else if (l2Rejections > 0) {
+                quietWindows = 0;
+                newL2Capacity += reserve(Math.min(l2Capacity, l2Rejections));
+            } else if (l1Misses > 2L * l1Capacity) {
+                quietWindows = 0;
+                newL1Capacity += reserve(l1Capacity);
+            } else {
+                quietL1Misses = quietWindows == 0 ? l1Misses : Math.max(quietL1Misses, l1Misses);
+                quietL2Entries = quietWindows == 0 ? l1Promotions : Math.max(quietL2Entries, l1Promotions);
+                if (++quietWindows >= QUIET_WINDOWS) {
+                    quietWindows = 0;
+                    if (quietL1Misses < l1Capacity / 4) {
+                        newL1Capacity = Math.max(minL1Capacity, l1Capacity / 2);
+                    }
+                    if (quietL2Entries < l2Capacity / 4) {
+                        newL2Capacity = Math.max(minL2Capacity, l2Capacity / 2);
+                    }
+                }
+            }
+
+            if (newL1Capacity == l1Capacity && newL2Capacity == l2Capacity) {
+                return false;
+            }
+            // growth is reserved already
+            reserved.addAndGet(Math.min(0, newL1Capacity - l1Capacity) + Math.min(0, newL2Capacity - l2Capacity));
+            l1Entries.add(newL1Capacity - l1Capacity);
+            l2Entries.add(newL2Capacity - l2Capacity);
+            resizes.increment();
+            l1Capacity = newL1Capacity;
+            l2Capacity = newL2Capacity;
+            return true;
+        }
+
+        /**
+         * Give capacities back to budget when the collector is closed or collected, once.
+         */
+        synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            reserved.addAndGet(-(l1Capacity + l2Capacity));
+            l1Entries.add(-l1Capacity);
+            l2Entries.add(-l2Capacity);
+        }
+    }
+}
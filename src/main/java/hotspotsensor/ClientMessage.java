@@ -0,0 +1,173 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+
+/**
+ * Window of a collector submitted to a consumer shard: parallel arrays of elements and counts (including the access
+ * recorded by L1LRU), either {@code Object} or primitive {@code long} elements. Messages are taken from the
+ * {@link MessagePool} of their collector, filled by the collector and recycled by the consumer once merged, so that
+ * arrays are reused and steady-state submission allocates nothing.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class ClientMessage {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // null for a message which is not pooled
+    private final MessagePool pool;
+
+    private final boolean ofLong;
+
+    private Object[] elements;
+
+    private long[] longElements;
+
+    private int[] counts;
+
+    // shard of every element, used when split among shards
+    private int[] shards;
+
+    private int size;
+
+    private int collectorIndex;
+
+    private long timeId;
+
+    private long totalCount;
+
+    // reported by the collector for SensorMetrics, 0 in parts
+    private int l1Promotions;
+
+    private int l2Rejections;
+
+    // next in free list of pool
+    ClientMessage next;
+
+    ClientMessage(MessagePool pool, boolean ofLong) {
+        this.pool = pool;
+        this.ofLong = ofLong;
+        if (ofLong) {
+            this.longElements = new long[INITIAL_CAPACITY];
+        } else {
+            this.elements = new Object[INITIAL_CAPACITY];
+        }
+        this.counts = new int[INITIAL_CAPACITY];
+    }
+
+    void reset(int collectorIndex, long timeId, long totalCount) {
+        this.collectorIndex = collectorIndex;
+        this.timeId = timeId;
+        this.totalCount = totalCount;
+        this.size = 0;
+        this.l1Promotions = 0;
+        this.l2Rejections = 0;
+    }
+
+    void add(Object element, int count) {
+        ensureCapacity();
+        elements[size] = element;
+        counts[size++] = count;
+    }
+
+    void add(long element, int count) {
+        ensureCapacity();
+        longElements[size] = element;
+        counts[size++] = count;
+    }
+
+    /**
+     * @return a message from the same pool, to hold a part of this one
+     */
+    ClientMessage newPart() {
+        ClientMessage part = pool == null ? new ClientMessage(null, ofLong) : pool.take();
+        part.reset(collectorIndex, timeId, 0);
+        return part;
+    }
+
+    /**
+     * Return to pool, called by the consumer after it is merged or discarded.
+     */
+    void recycle() {
+        if (elements != null) {
+            // do not hold elements in pool
+            Arrays.fill(elements, 0, size, null);
+        }
+        size = 0;
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    boolean isOfLong() {
+        return ofLong;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object elementAt(int i) {
+        return ofLong ? (Object) longElements[i] : elements[i];
+    }
+
+    long longElementAt(int i) {
+        return longElements[i];
+    }
+
+    int countAt(int i) {
+        return counts[i];
+    }
+
+    int[] shards() {
+        if (shards == null || shards.length < size) {
+            shards = new int[counts.length];
+        }
+        return shards;
+    }
+
+    int getCollectorIndex() {
+        return collectorIndex;
+    }
+
+    long getTimeId() {
+        return timeId;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    int getL1Promotions() {
+        return l1Promotions;
+    }
+
+    int getL2Rejections() {
+        return l2Rejections;
+    }
+
+    /**
+     * @param l1Promotions elements moved from L1LRU to L2Counter in the window
+     * @param l2Rejections elements not moved because L2Counter is full
+     */
+    void setCollectorCounts(int l1Promotions, int l2Rejections) {
+        this.l1Promotions = l1Promotions;
+        this.l2Rejections = l2Rejections;
+    }
+
+    private void ensureCapacity() {
+        if (size == counts.length) {
+            int capacity = size * 2;
+            counts = Arrays.copyOf(counts, capacity);
+            if (ofLong) {
+                longElements = Arrays.copyOf(longElements, capacity);
+            } else {
+                elements = Arrays.copyOf(elements, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package hotspotsensor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detect hot elements of a cluster by merging {@link WindowSummary}s of many {@link HotspotSensor}s, so that an
+ * element spread over N processes is detected by its total count rather than 1/N of it. Summaries of the same
+ * window are merged into a ring of {@link HotspotSensor.ServerWindow}s, and {@code hotThreshold} is evaluated on the
+ * sum of the ring, with the same shards, weighting and notifications as a {@link HotspotSensor}. A summary is merged
+ * at most once per source and partition.
+ * <p>
+ * Windows are identified by start time, so senders and the aggregator should share {@code windowSizeMills} and have
+ * epoch aligned windows (the default of both sides), summaries of another window size are rejected. A summary is
+ * sent once its window is complete, so results of the aggregator are about one window behind local sensors. Summaries
+ * of windows more than one window ahead of the local watch are rejected, so that a sender with a skewed clock can not
+ * slide the ring. Sources which do not report for {@code windowsNumber} windows are forgotten, and their indexes are
+ * reused by new sources. Build by {@link HostspotSensorBuilder#buildClusterAggregator(KeyCodec, SummaryTransport)}.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class ClusterAggregator<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterAggregator.class);
+
+    private final HotspotSensor<T> sensor;
+
+    private final KeyCodec<T> keyCodec;
+
+    // source#partition -> dense index to tell duplicated summaries
+    private final Map<String, Source> sources;
+
+    // indexes of forgotten sources are reused after a quarantine
+    private final CollectorIndexes sourceIndexes;
+
+    // windows a source may be silent before it is forgotten
+    private final int windowsNumber;
+
+    // timeId when sources are checked for expiry last, guarded by sources
+    private long expiredTimeId;
+
+    private final AtomicLong acceptedCount, rejectedCount;
+
+    ClusterAggregator(HotspotSensor<T> sensor, KeyCodec<T> keyCodec, SummaryTransport transport, int windowsNumber) {
+        if (keyCodec == null) {
+            throw new NullPointerException("keyCodec");
+        }
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        if (windowsNumber <= 0) {
+            throw new IllegalArgumentException("windowsNumber:" + windowsNumber);
+        }
+        this.sensor = sensor;
+        this.keyCodec = keyCodec;
+        this.sources = new HashMap<>();
+        this.sourceIndexes = new CollectorIndexes();
+        this.windowsNumber = windowsNumber;
+        this.expiredTimeId = Long.MIN_VALUE;
+        this.acceptedCount = new AtomicLong();
+        this.rejectedCount = new AtomicLong();
+        transport.subscribe(this::receive);
+    }
+
+    /**
+     * Merge an encoded summary, called by the transport. Malformed summaries are logged and rejected.
+     *
+     * @param bytes encoded summary
+     * @return true if accepted
+     */
+    public boolean receive(byte[] bytes) {
+        WindowSummary<T> summary;
+        try {
+            summary = WindowSummary.decode(bytes, keyCodec);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            rejectedCount.incrementAndGet();
+            LOG.warn("reject malformed summary", e);
+            return false;
+        }
+        return merge(summary);
+    }
+
+    /**
+     * @param summary
+     * @return true if accepted, false if rejected for another window size, a future window or a full channel
+     */
+    public boolean merge(WindowSummary<T> summary) {
+        Watch watch = sensor.getWatch();
+        if (summary.getWindowSizeMills() != watch.getWindowSizeMills()) {
+            rejectedCount.incrementAndGet();
+            LOG.warn("reject summary {} of windowSizeMills {}", summary, summary.getWindowSizeMills());
+            return false;
+        }
+
+        long now = watch.currentTimeId();
+        long timeId = watch.timeIdOf(summary.getWindowStartMillis());
+        if (timeId > now + 1) {
+            rejectedCount.incrementAndGet();
+            LOG.warn("reject summary {} of future window {}, current window is {}", summary, timeId, now);
+            return false;
+        }
+
+        ClientMessage message = new ClientMessage(null, false);
+        message.reset(indexOf(summary, timeId, now), timeId, summary.getTotalCount());
+        for (Entry<T> entry : summary.getEntries()) {
+            message.add(entry.getElement(), entry.getCount());
+        }
+        if (sensor.submit(message)) {
+            acceptedCount.incrementAndGet();
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    private int indexOf(WindowSummary<T> summary, long timeId, long now) {
+        String key = summary.getSource() + '#' + summary.getPartition();
+        synchronized (sources) {
+            if (now > expiredTimeId) {
+                expire(now);
+            }
+            Source source = sources.get(key);
+            if (source == null) {
+                source = new Source(sourceIndexes.allocate(now), timeId);
+                sources.put(key, source);
+            } else if (timeId > source.timeId) {
+                source.timeId = timeId;
+            }
+            return source.index;
+        }
+    }
+
+    // forget sources whose windows have all left the ring, called once per window
+    private void expire(long now) {
+        for (Iterator<Map.Entry<String, Source>> it = sources.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Source> entry = it.next();
+            if (entry.getValue().timeId <= now - windowsNumber) {
+                it.remove();
+                sourceIndexes.release(entry.getValue().index, now);
+                LOG.info("forget source {} silent since window {}", entry.getKey(), entry.getValue().timeId);
+            }
+        }
+        expiredTimeId = now;
+    }
+
+    /**
+     * @return number of sources (source and partition) which reported within {@code windowsNumber} windows
+     */
+    int getSourceCount() {
+        synchronized (sources) {
+            return sources.size();
+        }
+    }
+
+    /**
+     * @see HotspotSensor#isHot(Object)
+     */
+    public boolean isHot(T element) {
+        return sensor.isHot(element);
+    }
+
+    /**
+     * @see HotspotSensor#hotCount(Object)
+     */
+    public int hotCount(T element) {
+        return sensor.hotCount(element);
+    }
+
+    /**
+     * @see HotspotSensor#topK(int)
+     */
+    public List<Entry<T>> topK(int k) {
+        return sensor.topK(k);
+    }
+
+    public List<NotificationDispatcher<T>> getNotificationDispatchers() {
+        return sensor.getNotificationDispatchers();
+    }
+
+    /**
+     * @see HotspotSensor#getMetrics()
+     */
+    public SensorMetrics getMetrics() {
+        return sensor.getMetrics();
+    }
+
+    /**
+     * @see HotspotSensor#stop()
+     */
+    public void stop() {
+        sensor.stop();
+    }
+
+    /**
+     * @return number of summaries accepted, a duplicated one is accepted here and dropped by its window
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * @return number of summaries rejected
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private static class Source {
+        final int index;
+
+        // the latest window reported
+        long timeId;
+
+        Source(int index, long timeId) {
+            this.index = index;
+            this.timeId = timeId;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package hotspotsensor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide {@link TimeSource} updated every millisecond by a single daemon thread, see {@link TimeSource#coarse()}.
+ * The thread is started when the class is initialized, i.e. on first use.
+ *
+ * @author iamlotus@gmail.com
+ */
+class CoarseTimeSource implements TimeSource {
+
+    static final CoarseTimeSource INSTANCE = new CoarseTimeSource();
+
+    private volatile long currentTimeMillis;
+
+    private CoarseTimeSource() {
+        this.currentTimeMillis = System.currentTimeMillis();
+
+        Thread ticker = new Thread("hotspot-sensor-coarse-clock") {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(1);
+                    } catch (InterruptedException e) {
+                        //unreachable
+                        e.printStackTrace();
+                    }
+                    long now = System.currentTimeMillis();
+                    // wall clock may be set backward
+                    if (now > currentTimeMillis) {
+                        currentTimeMillis = now;
+                    }
+                }
+            }
+        };
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
 
 /**
  * {@link Collector} works in fixed thread ({@code ThreadLocal}), which is responsible for collects hot(frequent)
@@ -16,75 +17,217 @@ import java.util.concurrent.atomic.AtomicLong;
  * discarded in L1LRU, and it will never be discard after entering L2Counter. But if it is discarded from L1LRU,
  * it needs another two accesses to be prompted to L2Counter(e.g. the previous increase is forgotten at all because
  * of LRU).
- * After L2Counter is full, no new element will be recorded, so L2Counter should has an proper capacity.
+ * After L2Counter is full, no new element will be recorded, so L2Counter should has an proper capacity, or use
+ * {@link SpaceSavingL2Counter} which replaces the element with minimum count instead.
+ * <p>
+ * Windows of idle collectors are flushed by {@link HotspotSensor}, see {@link AbstractCollector}.
  *
  * @author iamlotus@gmail.com
  */
-class Collector<E> {
+class Collector<E> extends AbstractCollector {
 
     private static final Logger LOG = LoggerFactory.getLogger(Collector.class);
 
-    // report to hotspotSensor periodically.
-    private HotspotSensor hotspotSensor;
-
-    // ID
-    private CollectorId id;
-
-    private long currentTimeId;
-    private Watch watch;
     private L1LRU<E> l1LRU;
     private L2Counter<E> l2Counter;
 
-    // increase count in the window(currentTimeId)
-    private long totalCount;
+    // accesses deferred while the collector is flushed, see AbstractCollector
+    private final Object[] deferredElements = new Object[DEFER_CAPACITY];
+    private final int[] deferredDeltas = new int[DEFER_CAPACITY];
 
-    Collector(HotspotSensor hotspotSensor, Watch watch, L1LRU<E> l1LRU, L2Counter<E> l2Counter) {
-        this.id = CollectorId.next();
-        this.hotspotSensor = hotspotSensor;
-        this.watch = watch;
+    // message being filled by submitWindow
+    private ClientMessage filling;
+    // plus the one from L1LRU
+    private final ObjIntConsumer<E> filler = (element, count) -> filling.add(element, count + 1);
+
+    Collector(HotspotSensor<E> hotspotSensor, Watch watch, L1LRU<E> l1LRU, L2Counter<E> l2Counter) {
+        super(hotspotSensor, watch, false);
         this.l1LRU = l1LRU;
         this.l2Counter = l2Counter;
-
-        this.currentTimeId = watch.currentTimeId();
-        this.totalCount = 0;
     }
 
     public void access(E element) {
+        access(element, 1);
+    }
 
-        put(element);
+    /**
+     * Access element {@code delta} times, counters are added in place.
+     *
+     * @param element
+     * @param delta   positive
+     */
+    public void access(E element, int delta) {
+        if (!enter()) {
+            defer(element, delta);
+            return;
+        }
+        try {
+            put(element, delta);
 
-        totalCount++;
+            totalCount += delta;
 
-        long newTimeId = watch.currentTimeId();
-        if (newTimeId > currentTimeId) {
-            // currentTimeId is elapsed, submit
-            hotspotSensor.submit(id, currentTimeId, l2Counter.getElements(), totalCount);
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+    }
 
-            // reset
-            currentTimeId = newTimeId;
-            l1LRU.clear();
-            totalCount = 0;
-            l2Counter.clear();
+    /**
+     * Access element {@code delta} times if the collector is not held by another thread, used by striped collectors
+     * which are shared by threads.
+     *
+     * @param element
+     * @param delta   positive
+     * @return false if the collector is held by another thread, nothing is done
+     */
+    public boolean tryAccess(E element, int delta) {
+        if (!tryAcquire()) {
+            return false;
         }
+        try {
+            put(element, delta);
+
+            totalCount += delta;
 
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+        return true;
     }
 
+    /**
+     * Access every element once, collector is taken and window is checked once for all elements.
+     *
+     * @param elements
+     */
+    public void accessAll(Iterable<? extends E> elements) {
+        if (!enter()) {
+            for (E element : elements) {
+                defer(element, 1);
+            }
+            return;
+        }
+        try {
+            for (E element : elements) {
+                put(element, 1);
+                totalCount++;
+            }
+
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Access every element once, see {@link #accessAll(Iterable)}
+     *
+     * @param elements
+     */
+    public void accessAll(E[] elements) {
+        if (!enter()) {
+            for (E element : elements) {
+                defer(element, 1);
+            }
+            return;
+        }
+        try {
+            for (E element : elements) {
+                put(element, 1);
+            }
+            totalCount += elements.length;
 
-    private void put(E element) {
-        if (!l2Counter.incIfPresent(element)) {
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    protected void submitWindow(long timeId, long totalCount) {
+        ClientMessage message = pool.take();
+        message.reset(getIndex(), timeId, totalCount);
+        message.setCollectorCounts(l1Promotions, l2Rejections);
+        filling = message;
+        l2Counter.forEach(filler);
+        filling = null;
+        hotspotSensor.submit(message);
+    }
+
+    private void defer(E element, int delta) {
+        int slot = deferSlot();
+        if (slot < 0) {
+            // full, wait for the flusher instead of losing the access
+            enterWaiting();
+            try {
+                put(element, delta);
+                totalCount += delta;
+            } finally {
+                release();
+            }
+            return;
+        }
+        deferredElements[slot] = element;
+        deferredDeltas[slot] = delta;
+        publishDeferred();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void replayDeferred(int slot) {
+        put((E) deferredElements[slot], deferredDeltas[slot]);
+        totalCount += deferredDeltas[slot];
+        deferredElements[slot] = null;
+    }
+
+    @Override
+    protected void clearWindow() {
+        l1LRU.clear();
+        l2Counter.clear();
+    }
+
+    @Override
+    protected void resize(int l1Capacity, int l2Capacity) {
+        // created by the constructor with a HotspotSensor<E>
+        @SuppressWarnings("unchecked")
+        HotspotSensor<E> sensor = (HotspotSensor<E>) hotspotSensor;
+        if (l1Capacity > 0) {
+            l1LRU = sensor.createL1LRU(l1Capacity);
+        } else {
+            l1LRU.clear();
+        }
+        if (l2Capacity > 0) {
+            l2Counter = sensor.createL2Counter(l2Capacity);
+        } else {
+            l2Counter.clear();
+        }
+        LOG.debug("client {} resizes L1LRU to {}, L2Counter to {}", getId(), getTuner().getL1Capacity(),
+            getTuner().getL2Capacity());
+    }
+
+    private void put(E element, int delta) {
+        if (!l2Counter.incIfPresent(element, delta)) {
             E twice = l1LRU.put(element);
-            if (twice != null) {
-                if (!l2Counter.addIfAbsentAndNotFull(twice)) {
+            int count = delta;
+            if (twice == null && delta > 1) {
+                // the second access is in this batch too
+                twice = l1LRU.put(element);
+                count = delta - 1;
+            }
+            if (twice == null) {
+                l1Misses++;
+            } else {
+                if (l2Counter.addIfAbsentAndNotFull(twice, count)) {
+                    l1Promotions++;
+                } else {
+                    l2Rejections++;
                     LOG.debug("client {} discard element {} because of overflow", getId(), element);
                 }
             }
         }
     }
 
-    public CollectorId getId() {
-        return this.id;
-    }
-
 
     public static class CollectorId {
         private static AtomicLong sequence = new AtomicLong(0);
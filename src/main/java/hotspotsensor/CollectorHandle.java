@@ -0,0 +1,86 @@
+package hotspotsensor;
+
+/**
+ * Handle of a {@link Collector} which is bound to the thread opening it (e.g. an event loop thread), increase through
+ * it skips the {@code ThreadLocal} lookup of {@link HotspotSensor#increase(Object)}. Created by
+ * {@link HotspotSensor#openCollector()}, must be used and closed by the owner thread only.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class CollectorHandle<E> implements AutoCloseable {
+
+    private final HotspotSensor<E> hotspotSensor;
+
+    private final Collector<E> collector;
+
+    private final Thread owner;
+
+    private boolean closed;
+
+    CollectorHandle(HotspotSensor<E> hotspotSensor, Collector<E> collector) {
+        this.hotspotSensor = hotspotSensor;
+        this.collector = collector;
+        this.owner = Thread.currentThread();
+        this.closed = false;
+    }
+
+    /**
+     * see {@link HotspotSensor#increase(Object)}
+     *
+     * @param element element to increase
+     */
+    public void increase(E element) {
+        checkOwner();
+        collector.access(element);
+    }
+
+    /**
+     * see {@link HotspotSensor#increase(Object, int)}
+     *
+     * @param element element to increase
+     * @param delta   times, positive
+     */
+    public void increase(E element, int delta) {
+        checkOwner();
+        if (delta <= 0) {
+            throw new IllegalArgumentException("delta:" + delta);
+        }
+        collector.access(element, delta);
+    }
+
+    /**
+     * see {@link HotspotSensor#increaseAll(Iterable)}
+     *
+     * @param elements elements to increase
+     */
+    public void increaseAll(Iterable<? extends E> elements) {
+        checkOwner();
+        collector.accessAll(elements);
+    }
+
+    /**
+     * Submit the current window and deregister the collector, further increase is not allowed. Closing twice has no
+     * effect.
+     */
+    @Override
+    public void close() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("collector is owned by " + owner.getName());
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        collector.flushCurrent();
+        hotspotSensor.deregister(collector);
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("collector is owned by " + owner.getName());
+        }
+        if (closed) {
+            throw new IllegalStateException("collector is closed");
+        }
+    }
+}
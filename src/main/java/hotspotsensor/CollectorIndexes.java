@@ -0,0 +1,47 @@
+package hotspotsensor;
+
+import java.util.ArrayDeque;
+
+/**
+ * Dense indexes of collectors of a {@link HotspotSensor}, so that {@link HotspotSensor.ServerWindow} tells duplicated
+ * submissions by a bitset. An index released by a collector is reused only after the window it was released in, and
+ * the next one, are elapsed, so that the new owner never submits a window which the old one has submitted.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class CollectorIndexes {
+
+    private static final int QUARANTINE_WINDOWS = 2;
+
+    private final ArrayDeque<Released> released;
+
+    private int next;
+
+    CollectorIndexes() {
+        this.released = new ArrayDeque<>();
+    }
+
+    synchronized int allocate(long timeId) {
+        Released oldest = released.peekFirst();
+        if (oldest != null && oldest.timeId + QUARANTINE_WINDOWS <= timeId) {
+            released.pollFirst();
+            return oldest.index;
+        }
+        return next++;
+    }
+
+    synchronized void release(int index, long timeId) {
+        released.addLast(new Released(index, timeId));
+    }
+
+    private static class Released {
+        final int index;
+
+        final long timeId;
+
+        Released(int index, long timeId) {
+            this.index = index;
+            this.timeId = timeId;
+        }
+    }
+}
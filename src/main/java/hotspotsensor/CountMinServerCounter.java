@@ -0,0 +1,240 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ServerCounter} backed by a Count-Min Sketch (Cormode and Muthukrishnan), memory is fixed to
+ * {@code depth * width} integers no matter how many distinct elements are merged. Estimated count never
+ * under-estimates, and over-estimates by at most {@code e * N / width} with probability {@code 1 - exp(-depth)},
+ * where N is the sum of all counts.
+ * <p>
+ * A sketch can not enumerate its elements, so a counter used as aggregate also keeps a bounded min-heap of
+ * {@code heavyHitters} candidates with the biggest estimates, hot elements are only filtered from the candidates.
+ * Counters of windows do not need candidates, sketches are linear so a window is subtracted from the aggregate cell
+ * by cell.
+ *
+ * @author iamlotus@gmail.com
+ */
+class CountMinServerCounter<E> implements ServerCounter<E> {
+
+    private final int depth;
+
+    private final int mask;
+
+    private final int[] table;
+
+    private final int heavyHitters;
+
+    // min-heap of candidates by estimate
+    private final Object[] heapElements;
+
+    private final int[] heapEstimates;
+
+    private int heapSize;
+
+    // element -> position in heap
+    private final Map<E, MutableInt> positions;
+
+    /**
+     * @param width        width of sketch, rounded up to power of 2
+     * @param depth        number of hash functions
+     * @param heavyHitters number of candidates of hot elements, 0 for counters which are never filtered
+     */
+    CountMinServerCounter(int width, int depth, int heavyHitters) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width:" + width);
+        }
+
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth:" + depth);
+        }
+
+        if (heavyHitters < 0) {
+            throw new IllegalArgumentException("heavyHitters:" + heavyHitters);
+        }
+
+        int roundedWidth = Integer.highestOneBit(width);
+        if (roundedWidth < width) {
+            roundedWidth <<= 1;
+        }
+
+        this.depth = depth;
+        this.mask = roundedWidth - 1;
+        this.table = new int[depth * roundedWidth];
+        this.heavyHitters = heavyHitters;
+        this.heapElements = new Object[heavyHitters];
+        this.heapEstimates = new int[heavyHitters];
+        this.positions = new HashMap<>(heavyHitters * 2);
+        this.heapSize = 0;
+    }
+
+    static <T> ServerCounter.Factory<T> factory(int width, int depth, int heavyHitters) {
+        return new ServerCounter.Factory<T>() {
+            @Override
+            public ServerCounter<T> createWindowCounter() {
+                return new CountMinServerCounter<>(width, depth, 0);
+            }
+
+            @Override
+            public ServerCounter<T> createAggregateCounter() {
+                return new CountMinServerCounter<>(width, depth, heavyHitters);
+            }
+        };
+    }
+
+    @Override
+    public void merge(E element, int count) {
+        int h1 = hash(element.hashCode());
+        int h2 = hash(h1) | 1;
+        int width = mask + 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0, h = h1; i < depth; i++, h += h2) {
+            int index = i * width + (h & mask);
+            table[index] += count;
+            estimate = Math.min(estimate, table[index]);
+        }
+
+        if (heavyHitters > 0) {
+            offer(element, estimate);
+        }
+    }
+
+    /**
+     * Estimated count of element
+     *
+     * @param element
+     * @return count, never less than the real one
+     */
+    int estimate(Object element) {
+        int h1 = hash(element.hashCode());
+        int h2 = hash(h1) | 1;
+        int width = mask + 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0, h = h1; i < depth; i++, h += h2) {
+            estimate = Math.min(estimate, table[i * width + (h & mask)]);
+        }
+        return estimate;
+    }
+
+    @Override
+    public void subtract(ServerCounter<E> other) {
+        int[] otherTable = ((CountMinServerCounter<E>) other).table;
+        if (otherTable.length != table.length) {
+            throw new IllegalArgumentException("sketch size mismatch");
+        }
+
+        for (int i = 0; i < table.length; i++) {
+            table[i] -= otherTable[i];
+        }
+
+        if (heapSize > 0) {
+            // estimates of candidates only drop, refresh them so that new elements compete fairly
+            for (int i = 0; i < heapSize; i++) {
+                heapEstimates[i] = estimate(heapElements[i]);
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<? extends Entry<E>> filterGreaterThanOrEqualsTo(int threshold) {
+        Set<Entry<E>> result = new HashSet<>();
+        for (int i = 0; i < heapSize; i++) {
+            int estimate = heapEstimates[i];
+            if (estimate >= threshold && estimate > 0) {
+                result.add(new Entry<>((E) heapElements[i], estimate));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(heapElements, 0, heapSize, null);
+        heapSize = 0;
+        positions.clear();
+    }
+
+    private void offer(E element, int estimate) {
+        MutableInt position = positions.get(element);
+        if (position != null) {
+            // estimate only grows on merge
+            heapEstimates[position.value()] = estimate;
+            siftDown(position.value());
+        } else if (heapSize < heavyHitters) {
+            int i = heapSize++;
+            heapElements[i] = element;
+            heapEstimates[i] = estimate;
+            positions.put(element, new MutableInt(i));
+            siftUp(i);
+        } else if (estimate > heapEstimates[0]) {
+            // replace the minimum candidate
+            MutableInt root = positions.remove(heapElements[0]);
+            heapElements[0] = element;
+            heapEstimates[0] = estimate;
+            positions.put(element, root);
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapEstimates[parent] <= heapEstimates[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < heapSize && heapEstimates[right] < heapEstimates[left]) {
+                smallest = right;
+            }
+            if (heapEstimates[i] <= heapEstimates[smallest]) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Object element = heapElements[i];
+        heapElements[i] = heapElements[j];
+        heapElements[j] = element;
+
+        int estimate = heapEstimates[i];
+        heapEstimates[i] = heapEstimates[j];
+        heapEstimates[j] = estimate;
+
+        positions.get(heapElements[i]).value = i;
+        positions.get(heapElements[j]).value = j;
+    }
+
+    // murmur3 finalizer
+    private static int hash(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
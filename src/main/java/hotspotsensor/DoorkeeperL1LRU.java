@@ -0,0 +1,124 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * {@link L1LRU} implemented as a doorkeeper Bloom filter (as in TinyLFU): an element is promoted on its second
+ * sighting, it costs a few bits per element instead of an object per element, so it remembers far more distinct
+ * elements than a {@link SimpleL1LRU} of the same memory.
+ * <p>
+ * There are two filters of {@code capacity * 8} bits each. Elements are recorded in the current one, and looked up in
+ * both. When {@code capacity} elements have been recorded, the current filter becomes the previous one and a cleared
+ * filter takes its place, so an element is remembered for at least {@code capacity} distinct elements, like an
+ * {@code L1LRU} of {@code capacity}, and the false positive rate stays around 2%.
+ * <p>
+ * Differences from the contract of {@link L1LRU}: an element can not be removed from a Bloom filter, so an element
+ * is returned on every sighting after the first one (the {@link L2Counter} absorbs them), a false positive promotes an
+ * element on its first sighting, and {@link #getElements()} is always empty.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class DoorkeeperL1LRU<E> implements L1LRU<E> {
+
+    private static final int BITS_PER_ELEMENT = 8;
+
+    private static final int HASHES = 3;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private long[] current;
+
+    private long[] previous;
+
+    // elements recorded in current
+    private int size;
+
+    public DoorkeeperL1LRU(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        this.capacity = capacity;
+
+        int bits = Math.max(Long.SIZE, Integer.highestOneBit(capacity * BITS_PER_ELEMENT - 1) << 1);
+        this.mask = bits - 1;
+        this.current = new long[bits / Long.SIZE];
+        this.previous = new long[bits / Long.SIZE];
+        this.size = 0;
+    }
+
+    @Override
+    public E put(E element) {
+        int h1 = spread(element.hashCode());
+        int h2 = spread(h1) | 1;
+
+        if (contains(current, h1, h2) || contains(previous, h1, h2)) {
+            return element;
+        }
+
+        if (size == capacity) {
+            long[] cleared = previous;
+            Arrays.fill(cleared, 0);
+            previous = current;
+            current = cleared;
+            size = 0;
+        }
+
+        for (int i = 0, h = h1; i < HASHES; i++, h += h2) {
+            int bit = h & mask;
+            current[bit >>> 6] |= 1L << bit;
+        }
+        size++;
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(current, 0);
+        Arrays.fill(previous, 0);
+        size = 0;
+    }
+
+    /**
+     * A doorkeeper is never full, it forgets old elements in batch.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isFull() {
+        return false;
+    }
+
+    /**
+     * Elements of a Bloom filter can not be enumerated.
+     *
+     * @return empty set
+     */
+    @Override
+    public Set<E> getElements() {
+        return Collections.emptySet();
+    }
+
+    private boolean contains(long[] filter, int h1, int h2) {
+        for (int i = 0, h = h1; i < HASHES; i++, h += h2) {
+            int bit = h & mask;
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // murmur3 finalizer
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
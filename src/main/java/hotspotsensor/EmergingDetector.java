@@ -0,0 +1,291 @@
+package hotspotsensor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detect emerging elements of a shard by growth rate between consecutive {@link HotspotSensor.ServerWindow}s, so
+ * that an element whose traffic is accelerating is reported before it reaches {@code hotThreshold}.
+ * <p>
+ * Only two numbers are kept per tracked element: rate, the moving average of count per window, and velocity, the
+ * moving average of growth of rate. An element is emerging in a window if its count is at least
+ * {@code minWindowCount}, at least {@code growthFactor} times of its rate before the window, and the growth exceeds
+ * its velocity. An element tracked for the first time starts from its count, it is emerging if the count is at
+ * least {@code minWindowCount}, except in the first window ever. Elements are tracked when their count in a window
+ * reaches {@code minWindowCount / growthFactor}, they are dropped when their rate decays below 1 or when more than
+ * {@code capacity} elements are tracked, the slowest first. New elements of a window wait in a min-heap bounded by
+ * {@code capacity}, so neither memory nor the work of a window grows with the number of distinct elements beyond
+ * {@code capacity}, and counts are fed one by one from the counter of the window without collecting them. Called by
+ * the consumer thread only.
+ *
+ * @author iamlotus@gmail.com
+ */
+class EmergingDetector<E> {
+
+    // smoothing factor of moving averages, the last window weighs a half
+    private static final double ALPHA = 0.5;
+
+    private static final double MIN_RATE = 1;
+
+    private final double growthFactor;
+
+    private final int minWindowCount;
+
+    private final int admitCount;
+
+    private final int capacity;
+
+    private final Map<E, Trend<E>> trends;
+
+    // new elements of the window being fed, a min-heap by count bounded by capacity
+    private final Object[] candidateElements;
+
+    private final int[] candidateCounts;
+
+    private int candidates;
+
+    // emerging entries of the window being fed, null if none
+    private Set<Entry<E>> emerging;
+
+    // number of windows fed
+    private long round;
+
+    private boolean warmedUp;
+
+    interface Factory<T> {
+        EmergingDetector<T> create();
+    }
+
+    static <T> Factory<T> factory(double growthFactor, int minWindowCount, int capacity) {
+        return () -> new EmergingDetector<>(growthFactor, minWindowCount, capacity);
+    }
+
+    EmergingDetector(double growthFactor, int minWindowCount, int capacity) {
+        if (!(growthFactor > 1)) {
+            throw new IllegalArgumentException("growthFactor:" + growthFactor);
+        }
+        if (minWindowCount <= 0) {
+            throw new IllegalArgumentException("minWindowCount:" + minWindowCount);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        this.growthFactor = growthFactor;
+        this.minWindowCount = minWindowCount;
+        this.admitCount = Math.max(1, (int) (minWindowCount / growthFactor));
+        this.capacity = capacity;
+        this.trends = new HashMap<>();
+        this.candidateElements = new Object[capacity];
+        this.candidateCounts = new int[capacity];
+    }
+
+    /**
+     * Feed count of an element in the closed window, each element at most once per window.
+     *
+     * @param element
+     * @param count   count in the window
+     */
+    void observe(E element, int count) {
+        Trend<E> trend = trends.get(element);
+        if (trend == null) {
+            if (count < admitCount) {
+                return;
+            }
+            // grows from nothing
+            if (warmedUp && count >= minWindowCount) {
+                emerging(new Entry<>(element, count, count));
+            }
+            offerCandidate(element, count);
+        } else {
+            double growth = count - trend.rate;
+            if (warmedUp && count >= minWindowCount && count >= growthFactor * trend.rate
+                && growth > trend.velocity) {
+                emerging(new Entry<>(element, count, growth));
+            }
+            trend.update(count);
+            trend.round = round;
+        }
+    }
+
+    /**
+     * Close the window fed by {@link #observe(Object, int)}, elements tracked but not observed count 0.
+     *
+     * @return emerging entries, count is the count in the window, score is the growth over rate
+     */
+    Set<Entry<E>> complete() {
+        for (Iterator<Trend<E>> it = trends.values().iterator(); it.hasNext(); ) {
+            Trend<E> trend = it.next();
+            if (trend.round != round) {
+                trend.update(0);
+                if (trend.rate < MIN_RATE) {
+                    it.remove();
+                }
+            }
+        }
+        admitCandidates();
+
+        Set<Entry<E>> result = emerging == null ? Collections.emptySet() : emerging;
+        emerging = null;
+        round++;
+        warmedUp = true;
+        return result;
+    }
+
+    /**
+     * Feed counts of a closed window, see {@link #observe(Object, int)} and {@link #complete()}.
+     *
+     * @param window entries of the closed window
+     * @return emerging entries
+     */
+    Set<Entry<E>> update(Collection<? extends Entry<E>> window) {
+        for (Entry<E> entry : window) {
+            observe(entry.getElement(), entry.getCount());
+        }
+        return complete();
+    }
+
+    int size() {
+        return trends.size();
+    }
+
+    private void emerging(Entry<E> entry) {
+        if (emerging == null) {
+            emerging = new HashSet<>();
+        }
+        emerging.add(entry);
+    }
+
+    // keep the capacity biggest new elements of the window
+    private void offerCandidate(E element, int count) {
+        if (candidates < capacity) {
+            candidateElements[candidates] = element;
+            candidateCounts[candidates] = count;
+            siftUpCandidate(candidates++);
+        } else if (count > candidateCounts[0]) {
+            candidateElements[0] = element;
+            candidateCounts[0] = count;
+            siftDownCandidate(0, candidates);
+        }
+    }
+
+    // track candidates, the slowest of tracked elements and candidates are dropped when more than capacity
+    @SuppressWarnings("unchecked")
+    private void admitCandidates() {
+        int excess = trends.size() + candidates - capacity;
+        if (excess > 0) {
+            // min-heap of tracked elements by rate, at most capacity of them
+            Trend<E>[] heap = trends.values().toArray((Trend<E>[]) new Trend<?>[trends.size()]);
+            int heapSize = heap.length;
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDownTrend(heap, i, heapSize);
+            }
+            for (; excess > 0; excess--) {
+                // a new element loses ties to a tracked one
+                if (heapSize == 0 || candidateCounts[0] <= heap[0].rate) {
+                    candidateElements[0] = candidateElements[--candidates];
+                    candidateCounts[0] = candidateCounts[candidates];
+                    candidateElements[candidates] = null;
+                    siftDownCandidate(0, candidates);
+                } else {
+                    trends.remove(heap[0].element);
+                    heap[0] = heap[--heapSize];
+                    siftDownTrend(heap, 0, heapSize);
+                }
+            }
+        }
+        for (int i = 0; i < candidates; i++) {
+            E element = (E) candidateElements[i];
+            trends.put(element, new Trend<>(element, candidateCounts[i], round));
+            candidateElements[i] = null;
+        }
+        candidates = 0;
+    }
+
+    private void siftUpCandidate(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (candidateCounts[parent] <= candidateCounts[i]) {
+                break;
+            }
+            swapCandidates(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDownCandidate(int i, int size) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && candidateCounts[left] < candidateCounts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && candidateCounts[right] < candidateCounts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swapCandidates(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swapCandidates(int i, int j) {
+        Object element = candidateElements[i];
+        candidateElements[i] = candidateElements[j];
+        candidateElements[j] = element;
+        int count = candidateCounts[i];
+        candidateCounts[i] = candidateCounts[j];
+        candidateCounts[j] = count;
+    }
+
+    private static <E> void siftDownTrend(Trend<E>[] heap, int i, int size) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left].rate < heap[smallest].rate) {
+                smallest = left;
+            }
+            if (right < size && heap[right].rate < heap[smallest].rate) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            Trend<E> trend = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = trend;
+            i = smallest;
+        }
+    }
+
+    private static class Trend<E> {
+        final E element;
+
+        double rate;
+
+        double velocity;
+
+        // the last window in which the element is observed
+        long round;
+
+        Trend(E element, int count, long round) {
+            this.element = element;
+            this.rate = count;
+            this.round = round;
+        }
+
+        void update(int count) {
+            double growth = count - rate;
+            rate += ALPHA * growth;
+            velocity += ALPHA * (ALPHA * growth - velocity);
+        }
+    }
+}
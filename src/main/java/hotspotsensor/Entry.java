@@ -1,7 +1,8 @@
 package hotspotsensor;
 
 /**
- * Element and Count, immutable.
+ * Element and Count, immutable. Score is the count weighted by {@link WindowWeighting}, it is equal to count when no
+ * weighting is configured. Score does not take part in {@link #equals(Object)}.
  *
  * @param <E> Element type
  * @author iamlotus@gmail.com
@@ -11,7 +12,13 @@ public class Entry<E> {
 
     private int count;
 
+    private double score;
+
     public Entry(E element, int count) {
+        this(element, count, count);
+    }
+
+    public Entry(E element, int count, double score) {
         if (element == null) {
             throw new NullPointerException();
         }
@@ -22,6 +29,7 @@ public class Entry<E> {
 
         this.element = element;
         this.count = count;
+        this.score = score;
     }
 
 
@@ -34,6 +42,11 @@ public class Entry<E> {
         return count;
     }
 
+
+    public double getScore() {
+        return score;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
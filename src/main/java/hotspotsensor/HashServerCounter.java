@@ -0,0 +1,99 @@
+package hotspotsensor;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Exact {@link ServerCounter} backed by a {@code HashMap}, memory grows with number of distinct elements.
+ *
+ * @author iamlotus@gmail.com
+ */
+class HashServerCounter<E> implements ServerCounter<E> {
+
+    private Map<E, MutableInt> map;
+
+    public HashServerCounter() {
+        this.map = new HashMap<>();
+    }
+
+    static <T> ServerCounter.Factory<T> factory() {
+        return new ServerCounter.Factory<T>() {
+            @Override
+            public ServerCounter<T> createWindowCounter() {
+                return new HashServerCounter<>();
+            }
+
+            @Override
+            public ServerCounter<T> createAggregateCounter() {
+                return new HashServerCounter<>();
+            }
+        };
+    }
+
+    @Override
+    public void merge(E element, int count) {
+        MutableInt i = map.get(element);
+        if (i == null) {
+            i = new MutableInt(count);
+            map.put(element, i);
+        } else {
+            i.add(count);
+        }
+
+
+    }
+
+    @Override
+    public void subtract(ServerCounter<E> other) {
+        for (Map.Entry<E, MutableInt> entry : ((HashServerCounter<E>) other).map.entrySet()) {
+            MutableInt i = map.get(entry.getKey());
+            if (i != null && i.add(-entry.getValue().value()) <= 0) {
+                map.remove(entry.getKey());
+            }
+        }
+    }
+
+    public List<Entry<E>> getElements() {
+        return map.entrySet()
+                  .stream()
+                  .map(entry -> new Entry<>(entry.getKey(), entry.getValue().value()))
+                  .collect(Collectors.toList());
+    }
+
+    @Override
+    public Set<? extends Entry<E>> filterGreaterThanOrEqualsTo(int threshold) {
+        Set<Entry<E>> result = new HashSet<>(map.size());
+        map.forEach((e, i) -> {
+            if (i.value() >= threshold) {
+                result.add(new Entry<E>(e, i.value()));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public List<Entry<E>> top(int threshold, int k) {
+        TopK<E> topK = new TopK<>(k);
+        map.forEach((e, i) -> {
+            if (i.value() >= threshold) {
+                topK.offer(e, i.value(), i.value());
+            }
+        });
+        return topK.toList();
+    }
+
+    @Override
+    public void forEach(ObjIntConsumer<? super E> action) {
+        map.forEach((e, i) -> action.accept(e, i.value()));
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+}
@@ -1,7 +1,9 @@
 package hotspotsensor;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Config params and build {@link HotspotSensor}
@@ -22,6 +24,12 @@ public class HostspotSensorBuilder<E> {
 
     private static final int DEFAULT_HOT_THRESHOLD = 100;
 
+    private static final int DEFAULT_CONSUMER_SHARDS = 1;
+
+    private static final int DEFAULT_EMERGING_CAPACITY = 1024;
+
+    private static final int DEFAULT_CHECKPOINT_REGION_SIZE = 1 << 20;
+
     private int channelSize = DEFAULT_CHANNEL_SIZE;
 
     private int windowsNumber = DEFAULT_WINDOWS_NUMBER;
@@ -32,8 +40,56 @@ public class HostspotSensorBuilder<E> {
 
     private int l2Capacity = DEFAULT_L2_CAPACITY;
 
+    private long capacityBudget;
+
     private int hotThreshold = DEFAULT_HOT_THRESHOLD;
 
+    private L1LRUType l1LRUType = L1LRUType.ARRAY;
+
+    private L2CounterType l2CounterType = L2CounterType.SIMPLE;
+
+    private int sketchWidth, sketchDepth, sketchHeavyHitters;
+
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    private int consumerShards = DEFAULT_CONSUMER_SHARDS;
+
+    private int collectorStripes;
+
+    private TimeSource timeSource = TimeSource.coarse();
+
+    private WindowWeighting windowWeighting;
+
+    private double emergingGrowthFactor;
+
+    private int emergingMinWindowCount;
+
+    private int emergingCapacity = DEFAULT_EMERGING_CAPACITY;
+
+    private int maxHotElements;
+
+    private boolean hotSetBloomFilter;
+
+    private boolean epochAlignedWindows;
+
+    private String summarySource;
+
+    private KeyCodec<E> summaryKeyCodec;
+
+    private SummaryTransport summaryTransport;
+
+    private Path checkpointFile;
+
+    private KeyCodec<E> checkpointKeyCodec;
+
+    private int checkpointIntervalWindows;
+
+    private int checkpointRegionSize = DEFAULT_CHECKPOINT_REGION_SIZE;
+
+    private String metricsMBeanName;
+
+    private Executor notificationExecutor = Runnable::run;
+
     private List<NotificationHandler<E>> notificationHandlers = new ArrayList<>();
 
     HostspotSensorBuilder() {
@@ -41,8 +97,8 @@ public class HostspotSensorBuilder<E> {
     }
 
     /**
-     * Set size of channel between {@code Collector}s and {@code HotspotSensor}, this must be bigger enough or
-     * some collector thread will be blocked, the default value is 4096
+     * Set size of channel between {@code Collector}s and {@code HotspotSensor}, rounded up to power of 2. This must be
+     * bigger enough or submissions of some collectors will be discarded, the default value is 4096
      *
      * @param channelSize
      * @return this
@@ -115,6 +171,199 @@ public class HostspotSensorBuilder<E> {
         return this;
     }
 
+    /**
+     * Let every collector resize its {@link L1LRU} and {@link L2Counter} at window boundaries, starting from
+     * {@link #setL1Capacity} and {@link #setL2Capacity}: L2Counter grows when it rejects elements, L1LRU grows when it
+     * turns over too fast to catch second accesses, both shrink when they are underused. Capacities of all collectors
+     * stay within {@code maxEntries}, see {@link HotspotSensor#getMetrics()} for the chosen ones. Capacities are fixed
+     * by default.
+     *
+     * @param maxEntries max entries of L1LRUs and L2Counters of all collectors, at least
+     *                   {@code l1Capacity + l2Capacity}
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setAdaptiveCapacity(long maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries:" + maxEntries);
+        }
+        this.capacityBudget = maxEntries;
+        return this;
+    }
+
+    /**
+     * Set implementation of {@link L1LRU} of {@link Collector}, default value is {@link L1LRUType#ARRAY}.
+     *
+     * @param l1LRUType
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setL1LRUType(L1LRUType l1LRUType) {
+        if (l1LRUType == null) {
+            throw new NullPointerException("l1LRUType");
+        }
+        this.l1LRUType = l1LRUType;
+        return this;
+    }
+
+    /**
+     * Set implementation of {@link L2Counter} of {@link Collector}, default value is {@link L2CounterType#SIMPLE}.
+     *
+     * @param l2CounterType
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setL2CounterType(L2CounterType l2CounterType) {
+        if (l2CounterType == null) {
+            throw new NullPointerException("l2CounterType");
+        }
+        this.l2CounterType = l2CounterType;
+        return this;
+    }
+
+    /**
+     * Count elements on server side by Count-Min Sketch instead of exact {@code HashMap}, so that memory of consumer is
+     * fixed to ({@code windowsNumber} + 1) * {@code width} * {@code depth} integers, no matter how many threads and
+     * distinct elements there are. Counts are over-estimated by at most e / {@code width} of total count with
+     * probability 1 - exp(-{@code depth}). Hot elements are picked from the {@code heavyHitters} elements with biggest
+     * estimated counts. Default is exact counting. Sketches of windows keep no candidates, so it does not work with
+     * window weighting, emerging detection, summary export or checkpoint, which read elements of single windows.
+     *
+     * @param width        width of sketch, rounded up to power of 2
+     * @param depth        depth of sketch
+     * @param heavyHitters max number of hot element candidates
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setServerSketch(int width, int depth, int heavyHitters) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width");
+        }
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth");
+        }
+        if (heavyHitters <= 0) {
+            throw new IllegalArgumentException("heavyHitters");
+        }
+        this.sketchWidth = width;
+        this.sketchDepth = depth;
+        this.sketchHeavyHitters = heavyHitters;
+        return this;
+    }
+
+    /**
+     * Set how the consumer thread waits on an empty channel, default value is {@link WaitStrategy#PARK}.
+     *
+     * @param waitStrategy
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setWaitStrategy(WaitStrategy waitStrategy) {
+        if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy");
+        }
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Set number of consumer shards. Elements are partitioned among shards by hash code, every shard has its own
+     * channel (of {@code channelSize}), consumer thread and windows, so that consumer throughput scales with cores.
+     * Every {@link Collector} submits to all shards in every window, default value is 1.
+     *
+     * @param consumerShards
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setConsumerShards(int consumerShards) {
+        if (consumerShards <= 0) {
+            throw new IllegalArgumentException("consumerShards");
+        }
+        this.consumerShards = consumerShards;
+        return this;
+    }
+
+    /**
+     * Share a fixed pool of {@code collectorStripes} {@link Collector}s (rounded up to power of 2) among all threads
+     * instead of one {@link Collector} per thread. A thread starts from the stripe chosen by its id and takes the first
+     * free one by CAS. Memory and submissions per window are bounded by number of stripes rather than number of
+     * threads, which suits many short-lived threads (e.g. virtual threads). Default value is 0, one collector per
+     * thread.
+     *
+     * @param collectorStripes
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setCollectorStripes(int collectorStripes) {
+        if (collectorStripes <= 0) {
+            throw new IllegalArgumentException("collectorStripes");
+        }
+        this.collectorStripes = collectorStripes;
+        return this;
+    }
+
+    /**
+     * Set source of time, default value is {@link TimeSource#coarse()} which is shared by all sensors of the JVM. Use
+     * {@link TimeSource#nanoTime()} to avoid the clock thread, or {@link ManualTimeSource} to drive time by hand.
+     *
+     * @param timeSource
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setTimeSource(TimeSource timeSource) {
+        if (timeSource == null) {
+            throw new NullPointerException("timeSource");
+        }
+        this.timeSource = timeSource;
+        return this;
+    }
+
+    /**
+     * Weight counts of windows by age, so that recent traffic counts more than the one about to expire. Hot elements
+     * are those whose weighted score is greater than or equals to {@code hotThreshold}. Default is no weighting, every
+     * window weighs 1. Does not work with {@link #setServerSketch(int, int, int)}.
+     *
+     * @param windowWeighting
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setWindowWeighting(WindowWeighting windowWeighting) {
+        if (windowWeighting == null) {
+            throw new NullPointerException("windowWeighting");
+        }
+        this.windowWeighting = windowWeighting;
+        return this;
+    }
+
+    /**
+     * Report emerging elements in {@link NotificationHandler.Notification#getEmergingSet()}: elements which are not hot
+     * yet, but whose count in the latest window is at least {@code minWindowCount} and at least {@code growthFactor}
+     * times of their moving average count per window, and still accelerating. Default is disabled. Does not work
+     * with {@link #setServerSketch(int, int, int)}.
+     *
+     * @param growthFactor   growth of count between windows, greater than 1
+     * @param minWindowCount min count in the latest window, filters noise of cold elements
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setEmergingDetection(double growthFactor, int minWindowCount) {
+        if (!(growthFactor > 1)) {
+            throw new IllegalArgumentException("growthFactor");
+        }
+        if (minWindowCount <= 0) {
+            throw new IllegalArgumentException("minWindowCount");
+        }
+        this.emergingGrowthFactor = growthFactor;
+        this.emergingMinWindowCount = minWindowCount;
+        return this;
+    }
+
+    /**
+     * Set max number of elements whose growth is tracked by every consumer shard for emerging detection, slowest
+     * elements are dropped beyond it, default value is 1024. Only works with
+     * {@link #setEmergingDetection(double, int)}.
+     *
+     * @param emergingCapacity
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setEmergingCapacity(int emergingCapacity) {
+        if (emergingCapacity <= 0) {
+            throw new IllegalArgumentException("emergingCapacity");
+        }
+        this.emergingCapacity = emergingCapacity;
+        return this;
+    }
+
     /**
      * Set the threshold which is used to filter hot element. The threshold works on global scope,
      * {@link HotspotSensor} sum requests from all {@link Collector}s, then report elements who are
@@ -131,6 +380,68 @@ public class HostspotSensorBuilder<E> {
         return this;
     }
 
+    /**
+     * Limit a notification to the {@code maxHotElements} hot elements of the biggest counts (scores if
+     * {@link #setWindowWeighting(WindowWeighting)} is set). They are selected by a bounded heap in every consumer
+     * shard, so that a low {@code hotThreshold} does not cost a huge entry set on every window. Default is 0,
+     * unlimited.
+     *
+     * @param maxHotElements
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setMaxHotElements(int maxHotElements) {
+        if (maxHotElements <= 0) {
+            throw new IllegalArgumentException("maxHotElements");
+        }
+        this.maxHotElements = maxHotElements;
+        return this;
+    }
+
+    /**
+     * Put a Bloom filter before the lookup of {@link HotspotSensor#isHot(Object)} and
+     * {@link HotspotSensor#hotCount(Object)}, so that most cold elements are rejected without probing the hot set.
+     * Worth it when the hot set is big and most queried elements are cold. Default is false.
+     *
+     * @param hotSetBloomFilter
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setHotSetBloomFilter(boolean hotSetBloomFilter) {
+        this.hotSetBloomFilter = hotSetBloomFilter;
+        return this;
+    }
+
+    /**
+     * Set the executor which runs {@link NotificationHandler}s. Default runs handlers inline on the consumer thread,
+     * where a slow handler delays hot detection and may overflow the channel. With an executor, notifications are
+     * conflated per handler: a slow handler skips to the latest notification rather than queueing up. See
+     * {@link HotspotSensor#getNotificationDispatchers()} for lag of handlers.
+     *
+     * @param notificationExecutor
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setNotificationExecutor(Executor notificationExecutor) {
+        if (notificationExecutor == null) {
+            throw new NullPointerException("notificationExecutor");
+        }
+        this.notificationExecutor = notificationExecutor;
+        return this;
+    }
+
+    /**
+     * Register {@link HotspotSensor#getMetrics()} as MBean of the platform MBean server on build, see
+     * {@link SensorMetrics#registerMBean(String)}. Not registered by default.
+     *
+     * @param metricsMBeanName name of the sensor, unique in the JVM
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setMetricsMBeanName(String metricsMBeanName) {
+        if (metricsMBeanName == null) {
+            throw new NullPointerException("metricsMBeanName");
+        }
+        this.metricsMBeanName = metricsMBeanName;
+        return this;
+    }
+
     /**
      * Set the action which handle notification on hot element detected, default action do nothing.
      *
@@ -145,6 +456,86 @@ public class HostspotSensorBuilder<E> {
         return this;
     }
 
+    /**
+     * Start windows at multiples of {@code windowSizeMills} since epoch, so that windows of sensors in different
+     * processes are aligned. It is implied by {@link #setSummaryExport} and {@link #setCheckpoint}.
+     *
+     * @param epochAlignedWindows
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setEpochAlignedWindows(boolean epochAlignedWindows) {
+        this.epochAlignedWindows = epochAlignedWindows;
+        return this;
+    }
+
+    /**
+     * Send every closed window to a {@link ClusterAggregator} as a {@link WindowSummary}, so that hot elements of the
+     * whole cluster are detected. Windows become epoch aligned. Does not work with
+     * {@link #setServerSketch(int, int, int)}.
+     *
+     * @param source    name of this process, unique in the cluster
+     * @param keyCodec  encoder of elements
+     * @param transport transport to the aggregator
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setSummaryExport(String source, KeyCodec<E> keyCodec, SummaryTransport transport) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        if (keyCodec == null) {
+            throw new NullPointerException("keyCodec");
+        }
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        this.summarySource = source;
+        this.summaryKeyCodec = keyCodec;
+        this.summaryTransport = transport;
+        return this;
+    }
+
+    /**
+     * Checkpoint windows and hot set to a memory-mapped file every {@code intervalWindows} windows, and warm up from
+     * the file on build if it is left by a former sensor of the same window size, so that hot elements are detected
+     * at once after restart. Windows become epoch aligned. Does not work with {@link #setServerSketch(int, int, int)}.
+     *
+     * @param file            checkpoint file, created if absent, owned by one sensor, the file of a run is written next
+     *                        to it with suffix {@code .tmp} and replaces it when complete
+     * @param keyCodec        encoder of elements
+     * @param intervalWindows windows between checkpoints, positive
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setCheckpoint(Path file, KeyCodec<E> keyCodec, int intervalWindows) {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (keyCodec == null) {
+            throw new NullPointerException("keyCodec");
+        }
+        if (intervalWindows <= 0) {
+            throw new IllegalArgumentException("intervalWindows:" + intervalWindows);
+        }
+        this.checkpointFile = file;
+        this.checkpointKeyCodec = keyCodec;
+        this.checkpointIntervalWindows = intervalWindows;
+        return this;
+    }
+
+    /**
+     * Bytes of file reserved for every consumer shard and for the hot set, {@code 1MB} by default. A shard rewrites
+     * its region when it is full, windows which do not fit in a whole region are not checkpointed.
+     *
+     * @param checkpointRegionSize
+     * @return this
+     */
+    public HostspotSensorBuilder<E> setCheckpointRegionSize(int checkpointRegionSize) {
+        if (checkpointRegionSize < 1024) {
+            throw new IllegalArgumentException("checkpointRegionSize:" + checkpointRegionSize);
+        }
+        this.checkpointRegionSize = checkpointRegionSize;
+        return this;
+    }
+
     /**
      * Build a
      * {@link HotspotSensor} by given parameters, the follow modification on this {@code HotSpotSensorBuilder} will
@@ -153,47 +544,271 @@ public class HostspotSensorBuilder<E> {
      * @return HotspotSensor
      */
     public HotspotSensor<E> build() {
-        Watch watch = new Watch(windowSizeMills);
+        checkWindowWeighting();
+        checkServerSketch(false);
+        Watch watch = new Watch(windowSizeMills, timeSource, epochAligned());
+
+        ServerCounter.Factory<E> serverCounterFactory = sketchWidth > 0
+            ? CountMinServerCounter.factory(sketchWidth, sketchDepth, sketchHeavyHitters)
+            : HashServerCounter.factory();
 
         HotspotSensor<E> result =
-            new HotspotSensor<>(channelSize, windowsNumber, new L1Factory<>(l1Capacity), new L2Factory<>(l2Capacity),
-                hotThreshold, notificationHandlers, watch);
+            new HotspotSensor<>(channelSize, windowsNumber, new L1Factory<>(l1LRUType, l1Capacity),
+                new L2Factory<>(l2CounterType, l2Capacity), serverCounterFactory, hotThreshold, notificationHandlers,
+                watch, waitStrategy, consumerShards, collectorStripes, windowWeighting, emergingFactory(),
+                maxHotElements, hotSetBloomFilter, notificationExecutor, summaryExporter(), checkpoint(),
+                capacityBudget());
 
+        registerMetrics(result);
         return result;
     }
 
+    /**
+     * Build a {@link HotspotSensor.OfLong} by given parameters, which counts primitive long elements without boxing
+     * on {@link HotspotSensor.OfLong#increase(long)}. {@link L1LRUType} and {@link L2CounterType} are ignored,
+     * collectors always use primitive open-addressing structures ({@link LongL1LRU} and {@link LongL2Counter}). Only
+     * valid on a {@code HostspotSensorBuilder<Long>}, e.g. the one returned by
+     * {@link HotspotSensor.OfLong#longBuilder()}.
+     *
+     * @return HotspotSensor.OfLong
+     */
+    @SuppressWarnings("unchecked")
+    public HotspotSensor.OfLong buildOfLong() {
+        checkWindowWeighting();
+        checkServerSketch(false);
+        Watch watch = new Watch(windowSizeMills, timeSource, epochAligned());
+
+        ServerCounter.Factory<Long> serverCounterFactory = sketchWidth > 0
+            ? CountMinServerCounter.factory(sketchWidth, sketchDepth, sketchHeavyHitters)
+            : LongServerCounter.factory();
+
+        HotspotSensor.OfLong result = new HotspotSensor.OfLong(channelSize, windowsNumber, l1Capacity, l2Capacity,
+            serverCounterFactory, hotThreshold, (List<NotificationHandler<Long>>) (List<?>) notificationHandlers, watch,
+            waitStrategy, consumerShards, collectorStripes, windowWeighting, emergingFactory(), maxHotElements,
+            hotSetBloomFilter, notificationExecutor, (SummaryExporter<Long>) (SummaryExporter<?>) summaryExporter(),
+            (SensorCheckpoint<Long>) (SensorCheckpoint<?>) checkpoint(), capacityBudget());
+
+        registerMetrics(result);
+        return result;
+    }
+
+    /**
+     * Build a {@link ClusterAggregator} which merges summaries sent by sensors built with
+     * {@link #setSummaryExport}, by given parameters of windows, threshold, weighting, shards and notifications.
+     * Parameters of collectors and {@link #setSummaryExport} are ignored, windows are always epoch aligned.
+     *
+     * @param keyCodec  decoder of elements
+     * @param transport transport from sensors
+     * @return ClusterAggregator
+     */
+    public ClusterAggregator<E> buildClusterAggregator(KeyCodec<E> keyCodec, SummaryTransport transport) {
+        if (keyCodec == null) {
+            throw new NullPointerException("keyCodec");
+        }
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        checkWindowWeighting();
+        checkServerSketch(true);
+        Watch watch = new Watch(windowSizeMills, timeSource, true);
+
+        ServerCounter.Factory<E> serverCounterFactory = sketchWidth > 0
+            ? CountMinServerCounter.factory(sketchWidth, sketchDepth, sketchHeavyHitters)
+            : HashServerCounter.factory();
+
+        HotspotSensor<E> sensor =
+            new HotspotSensor<>(channelSize, windowsNumber, new L1Factory<>(l1LRUType, l1Capacity),
+                new L2Factory<>(l2CounterType, l2Capacity), serverCounterFactory, hotThreshold, notificationHandlers,
+                watch, waitStrategy, consumerShards, 0, windowWeighting, emergingFactory(), maxHotElements,
+                hotSetBloomFilter, notificationExecutor, null, null, null);
+        registerMetrics(sensor);
+        return new ClusterAggregator<>(sensor, keyCodec, transport, windowsNumber);
+    }
+
+    private void registerMetrics(HotspotSensor<?> sensor) {
+        if (metricsMBeanName != null) {
+            sensor.getMetrics().registerMBean(metricsMBeanName);
+        }
+    }
+
+    private boolean epochAligned() {
+        return epochAlignedWindows || summaryTransport != null || checkpointFile != null;
+    }
 
-    private static class L1Factory<E> implements L1LRU.Factory<E> {
+    private SensorCheckpoint<E> checkpoint() {
+        return checkpointFile == null
+            ? null
+            : new SensorCheckpoint<>(checkpointFile, checkpointKeyCodec, checkpointIntervalWindows,
+                checkpointRegionSize);
+    }
+
+    private CapacityBudget capacityBudget() {
+        if (capacityBudget == 0) {
+            return null;
+        }
+        if (capacityBudget < (long) l1Capacity + l2Capacity) {
+            throw new IllegalStateException("capacity budget " + capacityBudget + " is less than l1Capacity "
+                + l1Capacity + " + l2Capacity " + l2Capacity);
+        }
+        return new CapacityBudget(capacityBudget, l1Capacity, l2Capacity);
+    }
+
+    private SummaryExporter<E> summaryExporter() {
+        return summaryTransport == null
+            ? null
+            : new SummaryExporter<>(summarySource, summaryKeyCodec, summaryTransport);
+    }
+
+
+    /**
+     * Implementations of {@link L1LRU}
+     */
+    public enum L1LRUType {
+
+        /**
+         * {@link SimpleL1LRU}, linked nodes and {@code HashMap}
+         */
+        SIMPLE,
+
+        /**
+         * {@link ArrayL1LRU}, preallocated index-linked slots, no allocation in steady state
+         */
+        ARRAY,
+
+        /**
+         * {@link DoorkeeperL1LRU}, Bloom filter of a few bits per element, remembers more distinct elements with much
+         * less memory, so {@code l1Capacity} can be set much bigger. Elements may be promoted by false positive
+         */
+        DOORKEEPER
+    }
+
+
+    private <T> EmergingDetector.Factory<T> emergingFactory() {
+        return emergingGrowthFactor > 0
+            ? EmergingDetector.factory(emergingGrowthFactor, emergingMinWindowCount, emergingCapacity)
+            : null;
+    }
+
+    private void checkWindowWeighting() {
+        if (windowWeighting == null) {
+            return;
+        }
+        if (sketchWidth > 0) {
+            throw new IllegalStateException("window weighting does not work with server sketch");
+        }
+        if (windowWeighting.getKind() == WindowWeighting.Kind.CUSTOM
+            && windowWeighting.getWeights().length != windowsNumber) {
+            throw new IllegalStateException("number of weights mismatches windowsNumber " + windowsNumber);
+        }
+    }
+
+
+    /**
+     * Sketches of windows keep no heavy hitter candidates, features reading elements of a single window would see
+     * none.
+     *
+     * @param aggregator summary export and checkpoint are ignored by a {@link ClusterAggregator}
+     */
+    private void checkServerSketch(boolean aggregator) {
+        if (sketchWidth <= 0) {
+            return;
+        }
+        if (emergingGrowthFactor > 0) {
+            throw new IllegalStateException("emerging detection does not work with server sketch");
+        }
+        if (aggregator) {
+            return;
+        }
+        if (summaryTransport != null) {
+            throw new IllegalStateException("summary export does not work with server sketch");
+        }
+        if (checkpointFile != null) {
+            throw new IllegalStateException("checkpoint does not work with server sketch");
+        }
+    }
+
+
+    static class L1Factory<E> implements L1LRU.Factory<E> {
+
+        private L1LRUType type;
 
         private int capacity;
 
-        public L1Factory(int capacity) {
+        public L1Factory(L1LRUType type, int capacity) {
+            this.type = type;
             this.capacity = capacity;
         }
 
         @Override
         public L1LRU<E> create() {
-            return new SimpleL1LRU<>(capacity);
+            return create(capacity);
+        }
+
+        @Override
+        public L1LRU<E> create(int capacity) {
+            switch (type) {
+                case SIMPLE:
+                    return new SimpleL1LRU<>(capacity);
+                case DOORKEEPER:
+                    return new DoorkeeperL1LRU<>(capacity);
+                default:
+                    return new ArrayL1LRU<>(capacity);
+            }
         }
 
 
     }
 
 
-    private static class L2Factory<E> implements L2Counter.Factory<E> {
+    /**
+     * Implementations of {@link L2Counter}
+     */
+    public enum L2CounterType {
+
+        /**
+         * {@link SimpleL2Counter}, reject new element when full
+         */
+        SIMPLE,
+
+        /**
+         * {@link OpenAddressingL2Counter}, reject new element when full
+         */
+        OPEN_ADDRESSING,
+
+        /**
+         * {@link SpaceSavingL2Counter}, replace the element with minimum count when full
+         */
+        SPACE_SAVING
+    }
+
+
+    static class L2Factory<E> implements L2Counter.Factory<E> {
+
+        private L2CounterType type;
 
         private int capacity;
 
-        public L2Factory(int capacity) {
+        public L2Factory(L2CounterType type, int capacity) {
+            this.type = type;
             this.capacity = capacity;
         }
 
         @Override
         public L2Counter<E> create() {
-            //            return new OpenAddressingL2Counter<>(capacity);
-            // SimpleL2Counter is always better than OpenAddressingL2Counter according to benchmark test （ ° △ °|||）
-            return new SimpleL2Counter<>(capacity);
+            return create(capacity);
+        }
 
+        @Override
+        public L2Counter<E> create(int capacity) {
+            switch (type) {
+                case OPEN_ADDRESSING:
+                    return new OpenAddressingL2Counter<>(capacity);
+                case SPACE_SAVING:
+                    return new SpaceSavingL2Counter<>(capacity);
+                default:
+                    // SimpleL2Counter is always better than OpenAddressingL2Counter according to benchmark test （ ° △ °|||）
+                    return new SimpleL2Counter<>(capacity);
+            }
         }
     }
 }
@@ -0,0 +1,145 @@
+package hotspotsensor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes of hot entries of a shard between two slides, found by its {@link Tracker} while the shard slides: entries
+ * which cross {@code hotThreshold} upwards (added) or downwards (removed), and those which stay hot with another
+ * count (changed). Lists are allocated only when something changes, deltas of shards are appended into the delta of
+ * a round by {@link #addAll(HotDelta)}.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class HotDelta<E> {
+
+    // timeId of the slide which the delta is based on
+    private final long baseTimeId;
+
+    private List<Entry<E>> added = Collections.emptyList();
+
+    private List<Entry<E>> removed = Collections.emptyList();
+
+    private List<Entry<E>> changed = Collections.emptyList();
+
+    // some entry keeps its count but not its score
+    private boolean rescored;
+
+    HotDelta(long baseTimeId) {
+        this.baseTimeId = baseTimeId;
+    }
+
+    long getBaseTimeId() {
+        return baseTimeId;
+    }
+
+    List<Entry<E>> getAdded() {
+        return added;
+    }
+
+    List<Entry<E>> getRemoved() {
+        return removed;
+    }
+
+    List<Entry<E>> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return true if neither entries nor scores change
+     */
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && !rescored;
+    }
+
+    /**
+     * Append changes of another shard, elements of shards are disjoint.
+     *
+     * @param other
+     */
+    void addAll(HotDelta<E> other) {
+        added = addAll(added, other.added);
+        removed = addAll(removed, other.removed);
+        changed = addAll(changed, other.changed);
+        rescored |= other.rescored;
+    }
+
+    private static <E> List<Entry<E>> add(List<Entry<E>> list, Entry<E> entry) {
+        if (list.isEmpty()) {
+            list = new ArrayList<>();
+        }
+        list.add(entry);
+        return list;
+    }
+
+    private static <E> List<Entry<E>> addAll(List<Entry<E>> list, List<Entry<E>> entries) {
+        if (entries.isEmpty()) {
+            return list;
+        }
+        if (list.isEmpty()) {
+            list = new ArrayList<>(entries.size());
+        }
+        list.addAll(entries);
+        return list;
+    }
+
+
+    /**
+     * Hot entries reported by the last slide of a shard, updated in place by the next one, owned by the consumer
+     * thread of the shard.
+     */
+    static final class Tracker<E> {
+
+        private final Map<E, Reported<E>> reported = new HashMap<>();
+
+        private long timeId = Long.MIN_VALUE;
+
+        /**
+         * @param timeId  of the slide
+         * @param entries hot entries of the slide
+         * @return changes since the last slide
+         */
+        HotDelta<E> update(long timeId, Collection<? extends Entry<E>> entries) {
+            HotDelta<E> delta = new HotDelta<>(this.timeId);
+            for (Entry<E> entry : entries) {
+                Reported<E> last = reported.get(entry.getElement());
+                if (last == null) {
+                    last = new Reported<>();
+                    reported.put(entry.getElement(), last);
+                    delta.added = add(delta.added, entry);
+                } else if (last.entry.getCount() != entry.getCount()) {
+                    delta.changed = add(delta.changed, entry);
+                } else if (last.entry.getScore() != entry.getScore()) {
+                    delta.rescored = true;
+                }
+                last.entry = entry;
+                last.timeId = timeId;
+            }
+            // the others are not reported by this slide
+            if (reported.size() > entries.size()) {
+                for (Iterator<Reported<E>> it = reported.values().iterator(); it.hasNext(); ) {
+                    Reported<E> last = it.next();
+                    if (last.timeId != timeId) {
+                        delta.removed = add(delta.removed, last.entry);
+                        it.remove();
+                    }
+                }
+            }
+            this.timeId = timeId;
+            return delta;
+        }
+    }
+
+    private static final class Reported<E> {
+
+        private Entry<E> entry;
+
+        // timeId of the slide which reports the entry last
+        private long timeId;
+    }
+}
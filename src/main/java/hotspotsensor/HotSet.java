@@ -0,0 +1,244 @@
+package hotspotsensor;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of hot entries of a notification, along with an open-addressing table of them (linear probing,
+ * at most half full) which also backs the element and entry set views of the notification. It is built by the
+ * consumer after every calculation and published by a single volatile write. Lookups allocate nothing and never
+ * wait. An optional Bloom filter of 8 bits per element and 3 hashes answers most negative lookups with a few array
+ * reads, before the table is probed. A snapshot of {@link HotspotSensor.OfLong} carries a {@link LongHotSet} of the
+ * same entries as well, so that boxed and primitive lookups read the same snapshot.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class HotSet<E> {
+
+    static final HotSet<?> EMPTY =
+        new HotSet<>(Collections.emptyList(), new Object[1], new int[1], new double[1], null, null);
+
+    static final HotSet<Long> EMPTY_OF_LONG =
+        new HotSet<>(Collections.emptyList(), new Object[1], new int[1], new double[1], null, LongHotSet.EMPTY);
+
+    // of descending count, unmodifiable
+    private final List<Entry<E>> entries;
+
+    private final Object[] elements;
+
+    // 0 marks an empty entry
+    private final int[] counts;
+
+    private final double[] scores;
+
+    private final int mask;
+
+    // null if Bloom filter is disabled
+    private final long[] bloom;
+
+    private final Set<E> elementSet;
+
+    private final Set<Entry<E>> entrySet;
+
+    // primitive view of the same entries, null unless built by ofLong
+    private final LongHotSet longHotSet;
+
+    private HotSet(List<Entry<E>> entries, Object[] elements, int[] counts, double[] scores, long[] bloom,
+        LongHotSet longHotSet) {
+        this.entries = entries;
+        this.elements = elements;
+        this.counts = counts;
+        this.scores = scores;
+        this.mask = counts.length - 1;
+        this.bloom = bloom;
+        this.elementSet = new ElementSet();
+        this.entrySet = new EntrySet();
+        this.longHotSet = longHotSet;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> HotSet<E> empty() {
+        return (HotSet<E>) EMPTY;
+    }
+
+    /**
+     * @param entries     hot entries of descending count, unmodifiable
+     * @param bloomFilter
+     * @return snapshot
+     */
+    static <E> HotSet<E> of(List<Entry<E>> entries, boolean bloomFilter) {
+        return entries.isEmpty() ? empty() : build(entries, bloomFilter, null);
+    }
+
+    /**
+     * @param entries     hot entries of descending count, unmodifiable
+     * @param bloomFilter
+     * @return snapshot with a {@link LongHotSet} of the same entries
+     */
+    static HotSet<Long> ofLong(List<Entry<Long>> entries, boolean bloomFilter) {
+        return entries.isEmpty()
+            ? EMPTY_OF_LONG
+            : build(entries, bloomFilter, LongHotSet.of(entries, bloomFilter));
+    }
+
+    private static <E> HotSet<E> build(List<Entry<E>> entries, boolean bloomFilter, LongHotSet longHotSet) {
+        int tableSize = tableSizeFor(entries.size() * 2);
+        Object[] elements = new Object[tableSize];
+        int[] counts = new int[tableSize];
+        double[] scores = new double[tableSize];
+        long[] bloom = bloomFilter ? new long[Math.max(1, tableSizeFor(entries.size() * 8) >>> 6)] : null;
+
+        for (Entry<E> entry : entries) {
+            int h = hash(entry.getElement());
+            int i = h & (tableSize - 1);
+            while (counts[i] != 0) {
+                i = (i + 1) & (tableSize - 1);
+            }
+            elements[i] = entry.getElement();
+            counts[i] = entry.getCount();
+            scores[i] = entry.getScore();
+            if (bloom != null) {
+                addToBloom(bloom, h);
+            }
+        }
+        return new HotSet<>(entries, elements, counts, scores, bloom, longHotSet);
+    }
+
+    List<Entry<E>> entries() {
+        return entries;
+    }
+
+    /**
+     * @return primitive view of the same entries, null unless built by {@link #ofLong(List, boolean)}
+     */
+    LongHotSet longHotSet() {
+        return longHotSet;
+    }
+
+    /**
+     * @return view of hot elements, in order of {@link #entries()}
+     */
+    Set<E> elementSet() {
+        return elementSet;
+    }
+
+    /**
+     * @return view of {@link #entries()}
+     */
+    Set<Entry<E>> entrySet() {
+        return entrySet;
+    }
+
+    /**
+     * @param element
+     * @return count of element, 0 if it is not hot
+     */
+    int get(Object element) {
+        int i = indexOf(element);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    /**
+     * @param element
+     * @return score of element, 0 if it is not hot
+     */
+    double getScore(Object element) {
+        int i = indexOf(element);
+        return i < 0 ? 0 : scores[i];
+    }
+
+    private int indexOf(Object element) {
+        int h = hash(element);
+        if (bloom != null && !mightContain(bloom, h)) {
+            return -1;
+        }
+        for (int i = h & mask; counts[i] != 0; i = (i + 1) & mask) {
+            if (element.equals(elements[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int tableSizeFor(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    static void addToBloom(long[] bloom, int h) {
+        int bits = bloom.length << 6;
+        int h2 = Integer.rotateLeft(h * 0x9e3779b9, 16) | 1;
+        for (int i = 0; i < 3; i++) {
+            int bit = (h + i * h2) & (bits - 1);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    static boolean mightContain(long[] bloom, int h) {
+        int bits = bloom.length << 6;
+        int h2 = Integer.rotateLeft(h * 0x9e3779b9, 16) | 1;
+        for (int i = 0; i < 3; i++) {
+            int bit = (h + i * h2) & (bits - 1);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(Object element) {
+        int h = element.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private class ElementSet extends AbstractSet<E> {
+        @Override
+        public Iterator<E> iterator() {
+            Iterator<Entry<E>> it = entries.iterator();
+            return new Iterator<E>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    return it.next().getElement();
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o != null && get(o) > 0;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Entry<E>> {
+        @Override
+        public Iterator<Entry<E>> iterator() {
+            return entries.iterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?> entry = (Entry<?>) o;
+            return get(entry.getElement()) == entry.getCount();
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+}
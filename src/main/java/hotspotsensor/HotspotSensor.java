@@ -3,14 +3,22 @@ package hotspotsensor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -22,23 +30,46 @@ import java.util.stream.Collectors;
 public class HotspotSensor<T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(HotspotSensor.class);
+
+    // max time consumer parks on an empty channel, in case of missing a wake up
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
     private L1LRU.Factory<T> l1Factory;
     private L2Counter.Factory<T> l2Factory;
     private int hotThreshold;
-    private ServerWindow[] windows;
-    private int firstWindowNo;
-    private long firstWindowTimeId;
-    private List<NotificationHandler<T>> notificationHandlers;
-    private ServerCounter<T> serverCounter;
-    private Set<T> hotElementSet;
-    private Set<? extends Entry<T>> hotEntrySet;
-    private BlockingQueue<ClientMessage<T>> channel;
-    private Thread consumer;
+    // max number of hot elements of a notification, 0 is unlimited
+    private int maxHotElements;
+    // put a Bloom filter before lookups of hotSet
+    private boolean hotSetBloomFilter;
+    // hot entries of the latest notification, replaced as a whole by the consumer
+    private volatile HotSet<T> hotSet = HotSet.empty();
+    // one per handler
+    private List<NotificationDispatcher<T>> notificationDispatchers;
+    private Shard[] shards;
+    private List<Thread> consumers;
+    private volatile boolean stopped;
+    private Coordinator coordinator;
     private Watch watch;
+    // send closed windows to a ClusterAggregator, null if disabled
+    private SummaryExporter<T> summaryExporter;
+    // checkpoint of windows and hot set, null if disabled
+    private SensorCheckpoint<T> checkpoint;
+    private SensorMetrics metrics;
+    // resize L1LRU and L2Counter of collectors within budget, null if capacities are fixed
+    private CapacityBudget capacityBudget;
     private ThreadLocal<Collector<T>> clients;
+    // shared by threads instead of clients if not null, length is power of 2
+    private Collector<T>[] stripes;
+    // all collectors, so that windows of idle ones are flushed by consumer
+    private Queue<CollectorReference> collectors;
+    // dense indexes of collectors, to tell duplicated submissions
+    private CollectorIndexes collectorIndexes;
 
     HotspotSensor(int channelSize, int windowsNumber, L1LRU.Factory<T> l1Factory, L2Counter.Factory<T> l2Factory,
-        int hotThreshold, List<NotificationHandler<T>> notificationHandlers, Watch watch) {
+        ServerCounter.Factory<T> serverCounterFactory, int hotThreshold, List<NotificationHandler<T>> notificationHandlers,
+        Watch watch, WaitStrategy waitStrategy, int shardsNumber, int collectorStripes,
+        WindowWeighting windowWeighting, EmergingDetector.Factory<T> emergingFactory, int maxHotElements,
+        boolean hotSetBloomFilter, Executor notificationExecutor, SummaryExporter<T> summaryExporter,
+        SensorCheckpoint<T> checkpoint, CapacityBudget capacityBudget) {
         if (channelSize <= 0) {
             throw new IllegalArgumentException("channelSize:" + channelSize);
         }
@@ -51,6 +82,10 @@ public class HotspotSensor<T> {
             throw new NullPointerException("l2Factory");
         }
 
+        if (serverCounterFactory == null) {
+            throw new NullPointerException("serverCounterFactory");
+        }
+
         if (windowsNumber <= 0) {
             throw new IllegalArgumentException("windowsNumber:" + windowsNumber);
         }
@@ -64,62 +99,381 @@ public class HotspotSensor<T> {
             throw new NullPointerException("watch");
         }
 
+        if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy");
+        }
+
+        if (shardsNumber <= 0) {
+            throw new IllegalArgumentException("shardsNumber:" + shardsNumber);
+        }
+
+        if (collectorStripes < 0) {
+            throw new IllegalArgumentException("collectorStripes:" + collectorStripes);
+        }
+
+        if (maxHotElements < 0) {
+            throw new IllegalArgumentException("maxHotElements:" + maxHotElements);
+        }
+
+        if (notificationExecutor == null) {
+            throw new NullPointerException("notificationExecutor");
+        }
 
 
-        this.channel = new ArrayBlockingQueue<>(channelSize);
         this.l1Factory = l1Factory;
         this.l2Factory = l2Factory;
 
         this.hotThreshold = hotThreshold;
+        this.maxHotElements = maxHotElements;
+        this.hotSetBloomFilter = hotSetBloomFilter;
         this.watch = watch;
-
-        windows = new ServerWindow[windowsNumber];
-        for (int i = 0; i < windowsNumber; i++) {
-            windows[i] = new ServerWindow();
+        this.summaryExporter = summaryExporter;
+        this.checkpoint = checkpoint;
+        this.capacityBudget = capacityBudget;
+        this.metrics = new SensorMetrics(this::channelDepth, capacityBudget);
+
+        List<NotificationDispatcher<T>> dispatchers = new ArrayList<>();
+        if (notificationHandlers != null) {
+            for (NotificationHandler<T> handler : notificationHandlers) {
+                dispatchers.add(new NotificationDispatcher<>(handler, notificationExecutor));
+            }
         }
+        this.notificationDispatchers = Collections.unmodifiableList(dispatchers);
 
+        clients = new ThreadLocal<>();
+        collectors = new ConcurrentLinkedQueue<>();
+        collectorIndexes = new CollectorIndexes();
+        if (collectorStripes > 0) {
+            // generic array can only be created raw
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Collector<T>[] newStripes = new Collector[roundUpToPowerOf2(collectorStripes)];
+            stripes = newStripes;
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Collector<>(this, watch, l1Factory.create(), l2Factory.create());
+                stripes[i].setShared(true);
+                register(stripes[i]);
+            }
+        }
 
-        firstWindowNo = 0;
-        firstWindowTimeId = watch.currentTimeId();
-        serverCounter = new ServerCounter<>();
-
-        this.notificationHandlers = notificationHandlers;
+        // load before shards take their regions
+        SensorCheckpoint.Restored<T> restored =
+            checkpoint == null ? null : checkpoint.open(watch.getWindowSizeMills(), shardsNumber);
+
+        coordinator = new Coordinator(shardsNumber);
+        // Shard is an inner class of a generic class, its array can only be created raw
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Shard[] newShards = new HotspotSensor.Shard[shardsNumber];
+        shards = newShards;
+        for (int i = 0; i < shardsNumber; i++) {
+            shards[i] = new Shard(i, channelSize, waitStrategy, windowsNumber, serverCounterFactory, windowWeighting,
+                emergingFactory);
+        }
 
-        clients = new ThreadLocal<>();
+        if (restored != null) {
+            restore(restored, windowsNumber);
+        }
 
-        consumer = new Thread(new ConsumeTask(), "hotspot-sensor-consumer-thread");
-        consumer.setDaemon(true);
-        consumer.start();
+        consumers = new ArrayList<>(shardsNumber);
+        for (Shard shard : shards) {
+            String name = shardsNumber == 1
+                ? "hotspot-sensor-consumer-thread"
+                : "hotspot-sensor-consumer-thread-" + shard.index;
+            Thread consumer = new Thread(shard, name);
+            consumer.setDaemon(true);
+            consumers.add(consumer);
+            consumer.start();
+        }
     }
 
     public static <T> HostspotSensorBuilder<T> builder() {
         return new HostspotSensorBuilder<>();
     }
 
+    /**
+     * Warm up with the checkpoint of the last run before consumers start. Windows within the horizon of now are
+     * merged into rings realigned to the current time, so the first calculation happens once the current window is
+     * complete, as if the sensor had never stopped. The hot set is published at once if it is not older than the
+     * horizon, scores of the restored hot set are counts.
+     */
+    @SuppressWarnings("unchecked")
+    private void restore(SensorCheckpoint.Restored<T> restored, int windowsNumber) {
+        long now = watch.currentTimeId();
+
+        if (restored.hotSet != null && watch.timeIdOf(restored.hotSet.getWindowStartMillis()) >= now - windowsNumber) {
+            hotSet = newHotSet(restored.hotSet.getEntries());
+        }
+
+        List<WindowSummary<T>> windows = new ArrayList<>();
+        for (WindowSummary<T> window : restored.windows) {
+            long timeId = watch.timeIdOf(window.getWindowStartMillis());
+            if (timeId > now - windowsNumber && timeId <= now) {
+                windows.add(window);
+            }
+        }
+        if (windows.isEmpty()) {
+            return;
+        }
+
+        for (Shard shard : shards) {
+            shard.realign(now);
+        }
+        // shard of the last run -> index
+        Map<Integer, Integer> indexes = new HashMap<>();
+        for (WindowSummary<T> window : windows) {
+            int index = indexes.computeIfAbsent(window.getPartition(), p -> collectorIndexes.allocate(now));
+            ClientMessage message = new ClientMessage(null, false);
+            message.reset(index, watch.timeIdOf(window.getWindowStartMillis()), window.getTotalCount());
+            for (Entry<T> entry : window.getEntries()) {
+                message.add(entry.getElement(), entry.getCount());
+            }
+            if (shards.length == 1) {
+                shards[0].restore(message);
+                continue;
+            }
+            for (int i = 0; i < shards.length; i++) {
+                ClientMessage part = message.newPart();
+                for (int j = 0; j < message.size(); j++) {
+                    if (shardOf((T) message.elementAt(j)) == i) {
+                        part.add(message.elementAt(j), message.countAt(j));
+                    }
+                }
+                part.setTotalCount(i == 0 ? message.getTotalCount() : 0);
+                shards[i].restore(part);
+            }
+        }
+        // restored windows are not younger than now, new owners of these indexes submit after the quarantine
+        for (int index : indexes.values()) {
+            collectorIndexes.release(index, now);
+        }
+        LOG.info("restore {} windows from checkpoint", windows.size());
+    }
+
+    /**
+     * Get the hot elements of the biggest counts, or scores if {@link WindowWeighting} is configured, of the latest
+     * notification. It reads a published snapshot and costs nothing, but only {@code maxHotElements} elements are
+     * kept if {@link HostspotSensorBuilder#setMaxHotElements(int)} is set.
+     *
+     * @param k max number of elements, positive
+     * @return entries of descending score (count when unweighted), unmodifiable
+     */
+    public List<Entry<T>> topK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k:" + k);
+        }
+        List<Entry<T>> entries = hotSet.entries();
+        return entries.size() <= k ? entries : entries.subList(0, k);
+    }
+
+    /**
+     * Whether element is hot in the latest notification. It reads an immutable snapshot, allocates nothing and never
+     * waits, so it is cheap enough to be called on every request.
+     *
+     * @param element
+     * @return true if hot
+     */
+    public boolean isHot(T element) {
+        return hotCount(element) > 0;
+    }
+
+    /**
+     * Count of a hot element in the latest notification, see {@link #isHot(Object)}.
+     *
+     * @param element
+     * @return count, 0 if element is not hot
+     */
+    public int hotCount(T element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        return hotSet.get(element);
+    }
+
+    /**
+     * Build the snapshot of hot entries of a calculation, also called by the constructor on restore.
+     *
+     * @param entries of descending score, unmodifiable
+     * @return snapshot
+     */
+    HotSet<T> newHotSet(List<Entry<T>> entries) {
+        return HotSet.of(entries, hotSetBloomFilter);
+    }
+
+    /**
+     * Publish hot entries of a calculation by a single volatile write, called by the consumer thread.
+     *
+     * @param current snapshot of hot entries
+     */
+    void publish(HotSet<T> current) {
+        hotSet = current;
+    }
+
+    /**
+     * Dispatchers of notification handlers, in order of handlers, to monitor delivery and lag of notifications.
+     *
+     * @return dispatchers, unmodifiable
+     */
+    public List<NotificationDispatcher<T>> getNotificationDispatchers() {
+        return notificationDispatchers;
+    }
+
+    /**
+     * Stop consumer threads and wait for them to exit. Windows are checkpointed for the last time and the checkpoint
+     * is closed, windows not submitted yet are lost. A stopped sensor detects nothing, and can not be restarted.
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            for (Thread consumer : consumers) {
+                consumer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("interrupted while waiting for consumers to stop");
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Counters and latencies of the detection pipeline: submissions, drops by reason, L1 promotions, L2 rejections,
+     * consumer lag, merge and notify time.
+     *
+     * @return metrics of this sensor
+     */
+    public SensorMetrics getMetrics() {
+        return metrics;
+    }
+
+    private long channelDepth() {
+        Shard[] current = shards;
+        long depth = 0;
+        if (current != null) {
+            for (Shard shard : current) {
+                if (shard != null) {
+                    depth += shard.channel.size();
+                }
+            }
+        }
+        return depth;
+    }
+
     // for test purpose
     protected Watch getWatch() {
         return watch;
     }
 
-    boolean submit(Collector.CollectorId collectorId, long timeId, List<Entry<T>> l2Counter, long totalCount) {
-        ClientMessage<T> clientMessage = new ClientMessage(collectorId, timeId, l2Counter, totalCount);
-        if (!channel.add(clientMessage)) {
-            LOG.warn("hot detect, server channel overflow, discard client {}, timeId {}", collectorId, timeId);
-            return false;
+    /**
+     * Submit a window of a collector, the message is recycled once it is merged or discarded.
+     *
+     * @param message elements and counts of the window, counts include the access recorded by L1LRU
+     * @return false if discarded by a full channel
+     */
+    @SuppressWarnings("unchecked")
+    boolean submit(ClientMessage message) {
+        metrics.recordSubmission(message);
+        if (shards.length == 1) {
+            return shards[0].submit(message);
         }
-        return true;
+
+        // split by element, every shard receives a message (may be empty) so that all shards slide together, total
+        // count goes to the first shard only
+        int size = message.size();
+        int[] shardOfElements = message.shards();
+        for (int j = 0; j < size; j++) {
+            shardOfElements[j] = message.isOfLong()
+                ? shardOf(message.longElementAt(j))
+                : shardOf((T) message.elementAt(j));
+        }
+
+        boolean result = true;
+        for (int i = 0; i < shards.length; i++) {
+            ClientMessage part = message.newPart();
+            for (int j = 0; j < size; j++) {
+                if (shardOfElements[j] == i) {
+                    if (message.isOfLong()) {
+                        part.add(message.longElementAt(j), message.countAt(j));
+                    } else {
+                        part.add(message.elementAt(j), message.countAt(j));
+                    }
+                }
+            }
+            part.setTotalCount(i == 0 ? message.getTotalCount() : 0);
+            result &= shards[i].submit(part);
+        }
+        message.recycle();
+        return result;
     }
 
-    private ServerWindow<T> getWindow(int offset) {
-        if (offset < 0 || offset > windows.length) {
-            throw new IllegalArgumentException();
+    void register(AbstractCollector collector) {
+        int index = collectorIndexes.allocate(watch.currentTimeId());
+        collector.setIndex(index);
+        if (capacityBudget != null) {
+            collector.setTuner(capacityBudget.newTuner());
         }
-        int i = getIndex(offset);
-        return windows[i];
+        collectors.add(new CollectorReference(collector, index));
     }
 
-    private int getIndex(int offset) {
-        return (firstWindowNo + offset) % windows.length;
+    void deregister(AbstractCollector collector) {
+        collectors.removeIf(reference -> {
+            if (reference.get() == collector) {
+                reference.release(watch.currentTimeId());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @param capacity chosen by {@link CapacityBudget}
+     * @return L1LRU of a resized collector
+     */
+    L1LRU<T> createL1LRU(int capacity) {
+        return l1Factory.create(capacity);
+    }
+
+    /**
+     * @param capacity chosen by {@link CapacityBudget}
+     * @return L2Counter of a resized collector
+     */
+    L2Counter<T> createL2Counter(int capacity) {
+        return l2Factory.create(capacity);
+    }
+
+    /**
+     * Submit elapsed windows of idle collectors, collectors of dead threads are removed.
+     *
+     * @param timeId current timeId
+     */
+    private void flushCollectors(long timeId) {
+        for (Iterator<CollectorReference> it = collectors.iterator(); it.hasNext(); ) {
+            CollectorReference reference = it.next();
+            AbstractCollector collector = reference.get();
+            if (collector == null) {
+                it.remove();
+                reference.release(timeId);
+            } else if (collector.flush(timeId)) {
+                LOG.debug("flush idle client {} at timeId {}", collector.getId(), timeId);
+            }
+        }
+    }
+
+    private int shardOf(T element) {
+        return shardOfHash(element.hashCode());
+    }
+
+    // same as shardOf(Long.valueOf(element))
+    private int shardOf(long element) {
+        return shardOfHash(Long.hashCode(element));
+    }
+
+    private int shardOfHash(int h) {
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % shards.length;
     }
 
     /**
@@ -130,59 +484,307 @@ public class HotspotSensor<T> {
      * @param element element to increase
      */
     public void increase(T element) {
-        Collector collector = clients.get();
+        if (stripes != null) {
+            stripedAccess(element, 1);
+        } else {
+            collector().access(element);
+        }
+    }
+
+    /**
+     * Access element {@code delta} times, it is the same as invoking {@link #increase(Object)} {@code delta} times but
+     * costs one invocation.
+     *
+     * @param element element to increase
+     * @param delta   times, positive
+     */
+    public void increase(T element, int delta) {
+        if (delta <= 0) {
+            throw new IllegalArgumentException("delta:" + delta);
+        }
+        if (stripes != null) {
+            stripedAccess(element, delta);
+        } else {
+            collector().access(element, delta);
+        }
+    }
+
+    /**
+     * Access every element once, window of this thread is looked up and checked once for all elements.
+     *
+     * @param elements elements to increase
+     */
+    public void increaseAll(Iterable<? extends T> elements) {
+        if (stripes != null) {
+            stripes[probe() & (stripes.length - 1)].accessAll(elements);
+        } else {
+            collector().accessAll(elements);
+        }
+    }
+
+    /**
+     * Access every element once, see {@link #increaseAll(Iterable)}.
+     *
+     * @param elements elements to increase
+     */
+    public void increaseAll(T[] elements) {
+        if (stripes != null) {
+            stripes[probe() & (stripes.length - 1)].accessAll(elements);
+        } else {
+            collector().accessAll(elements);
+        }
+    }
+
+    /**
+     * Open a collector which is bound to current thread, {@link CollectorHandle#increase(Object)} goes to the
+     * collector directly without looking up {@code ThreadLocal}. The collector is independent from the one used by
+     * {@link #increase(Object)} of the same thread. Close it when the thread is done with it.
+     *
+     * @return handle of collector
+     */
+    public CollectorHandle<T> openCollector() {
+        Collector<T> collector = new Collector<>(this, this.watch, l1Factory.create(), l2Factory.create());
+        register(collector);
+        return new CollectorHandle<>(this, collector);
+    }
+
+    // start from the stripe of current thread, take the first free one, wait for the own one if all are busy
+    private void stripedAccess(T element, int delta) {
+        int mask = stripes.length - 1;
+        int h = probe();
+        for (int i = 0; i <= mask; i++) {
+            if (stripes[(h + i) & mask].tryAccess(element, delta)) {
+                return;
+            }
+        }
+        stripes[h & mask].access(element, delta);
+    }
+
+    /**
+     * Spread id of current thread, which is unique among live threads (virtual ones as well)
+     */
+    static int probe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    static int roundUpToPowerOf2(int i) {
+        int rounded = Integer.highestOneBit(i);
+        return rounded < i ? rounded << 1 : rounded;
+    }
+
+    private Collector<T> collector() {
+        Collector<T> collector = clients.get();
         if (collector == null) {
             collector = new Collector<>(this, this.watch, l1Factory.create(), l2Factory.create());
             clients.set(collector);
+            register(collector);
         }
-        collector.access(element);
+        return collector;
     }
 
 
+    /**
+     * {@link HotspotSensor} of primitive long elements (user IDs, item IDs ...). {@link #increase(long)} goes through
+     * primitive open-addressing L1LRU and L2Counter and allocates nothing, windows are submitted in primitive
+     * arrays, and counted by primitive table on server side unless server sketch or window weighting is
+     * configured. Build by {@link HostspotSensorBuilder#buildOfLong()}.
+     */
+    public static class OfLong extends HotspotSensor<Long> {
+
+        private final int l1Capacity;
+
+        private final int l2Capacity;
 
-    static class ServerCounter<E> {
+        private final ThreadLocal<LongCollector> longClients;
 
-        private Map<E, MutableInt> map;
+        private final LongCollector[] longStripes;
 
-        public ServerCounter() {
-            this.map = new HashMap<>();
+        OfLong(int channelSize, int windowsNumber, int l1Capacity, int l2Capacity,
+            ServerCounter.Factory<Long> serverCounterFactory, int hotThreshold,
+            List<NotificationHandler<Long>> notificationHandlers, Watch watch, WaitStrategy waitStrategy,
+            int shardsNumber, int collectorStripes, WindowWeighting windowWeighting,
+            EmergingDetector.Factory<Long> emergingFactory, int maxHotElements, boolean hotSetBloomFilter,
+            Executor notificationExecutor, SummaryExporter<Long> summaryExporter, SensorCheckpoint<Long> checkpoint,
+            CapacityBudget capacityBudget) {
+            super(channelSize, windowsNumber,
+                new HostspotSensorBuilder.L1Factory<>(HostspotSensorBuilder.L1LRUType.SIMPLE, l1Capacity),
+                new HostspotSensorBuilder.L2Factory<>(HostspotSensorBuilder.L2CounterType.SIMPLE, l2Capacity),
+                serverCounterFactory, hotThreshold, notificationHandlers, watch, waitStrategy, shardsNumber, 0,
+                windowWeighting, emergingFactory, maxHotElements, hotSetBloomFilter, notificationExecutor,
+                summaryExporter, checkpoint, capacityBudget);
+
+            if (l1Capacity <= 0) {
+                throw new IllegalArgumentException("l1Capacity:" + l1Capacity);
+            }
+
+            if (l2Capacity <= 0) {
+                throw new IllegalArgumentException("l2Capacity:" + l2Capacity);
+            }
+
+            this.l1Capacity = l1Capacity;
+            this.l2Capacity = l2Capacity;
+            this.longClients = new ThreadLocal<>();
+            if (collectorStripes > 0) {
+                longStripes = new LongCollector[roundUpToPowerOf2(collectorStripes)];
+                for (int i = 0; i < longStripes.length; i++) {
+                    longStripes[i] = newLongCollector();
+                    longStripes[i].setShared(true);
+                    register(longStripes[i]);
+                }
+            } else {
+                longStripes = null;
+            }
         }
 
-        public void merge(E element, int count) {
-            MutableInt i = map.get(element);
-            if (i == null) {
-                i = new MutableInt(count);
-                map.put(element, i);
+        /**
+         * @return builder of {@code OfLong}, build by {@link HostspotSensorBuilder#buildOfLong()}
+         */
+        public static HostspotSensorBuilder<Long> longBuilder() {
+            return new HostspotSensorBuilder<>();
+        }
+
+        /**
+         * Access element once, see {@link HotspotSensor#increase(Object)}
+         *
+         * @param element element to increase
+         */
+        public void increase(long element) {
+            if (longStripes != null) {
+                stripedAccess(element, 1);
             } else {
-                i.add(count);
+                longCollector().access(element);
             }
+        }
+
+        /**
+         * Access element {@code delta} times, see {@link HotspotSensor#increase(Object, int)}
+         *
+         * @param element element to increase
+         * @param delta   times, positive
+         */
+        public void increase(long element, int delta) {
+            if (delta <= 0) {
+                throw new IllegalArgumentException("delta:" + delta);
+            }
+            if (longStripes != null) {
+                stripedAccess(element, delta);
+            } else {
+                longCollector().access(element, delta);
+            }
+        }
+
+        /**
+         * Access every element once, see {@link HotspotSensor#increaseAll(Iterable)}
+         *
+         * @param elements elements to increase
+         */
+        public void increaseAll(long[] elements) {
+            if (longStripes != null) {
+                longStripes[probe() & (longStripes.length - 1)].accessAll(elements);
+            } else {
+                longCollector().accessAll(elements);
+            }
+        }
+
+        @Override
+        public void increase(Long element) {
+            increase(element.longValue());
+        }
+
+        @Override
+        public void increase(Long element, int delta) {
+            increase(element.longValue(), delta);
+        }
+
+        @Override
+        public void increaseAll(Iterable<? extends Long> elements) {
+            for (Long element : elements) {
+                increase(element.longValue());
+            }
+        }
+
+        @Override
+        public void increaseAll(Long[] elements) {
+            for (Long element : elements) {
+                increase(element.longValue());
+            }
+        }
+
+        /**
+         * Whether element is hot in the latest notification, without boxing, see {@link HotspotSensor#isHot(Object)}.
+         *
+         * @param element
+         * @return true if hot
+         */
+        public boolean isHot(long element) {
+            return hotCount(element) > 0;
+        }
 
+        /**
+         * Count of a hot element in the latest notification, without boxing, see {@link #isHot(long)}.
+         *
+         * @param element
+         * @return count, 0 if element is not hot
+         */
+        public int hotCount(long element) {
+            // one read of the snapshot which carries both views
+            LongHotSet hotSet = ((HotspotSensor<Long>) this).hotSet.longHotSet();
+            return hotSet == null ? 0 : hotSet.get(element);
+        }
 
+        @Override
+        public int hotCount(Long element) {
+            return hotCount(element.longValue());
+        }
+
+        // called by the super constructor as well, uses fields of super only
+        @Override
+        HotSet<Long> newHotSet(List<Entry<Long>> entries) {
+            return HotSet.ofLong(entries, ((HotspotSensor<Long>) this).hotSetBloomFilter);
         }
 
-        public List<Entry<E>> getElements() {
-            return map.entrySet()
-                      .stream()
-                      .map(entry -> new Entry<>(entry.getKey(), entry.getValue().value()))
-                      .collect(Collectors.toList());
+        /**
+         * Open a collector of long elements which is bound to current thread, see
+         * {@link HotspotSensor#openCollector()}
+         *
+         * @return handle of collector
+         */
+        public LongCollectorHandle openLongCollector() {
+            LongCollector collector = newLongCollector();
+            register(collector);
+            return new LongCollectorHandle(this, collector);
         }
 
-        public Set<? extends Entry<E>> filterGreaterThanOrEqualsTo(int threshold) {
-            Set<Entry<E>> result = new HashSet<>(map.size());
-            map.forEach((e, i) -> {
-                if (i.value() >= threshold) {
-                    result.add(new Entry<E>(e, i.value()));
+        private void stripedAccess(long element, int delta) {
+            int mask = longStripes.length - 1;
+            int h = probe();
+            for (int i = 0; i <= mask; i++) {
+                if (longStripes[(h + i) & mask].tryAccess(element, delta)) {
+                    return;
                 }
-            });
-            return result;
+            }
+            longStripes[h & mask].access(element, delta);
         }
 
-        public void clear() {
-            map.clear();
+        private LongCollector newLongCollector() {
+            return new LongCollector(this, getWatch(), new LongL1LRU(l1Capacity), new LongL2Counter(l2Capacity));
+        }
+
+        private LongCollector longCollector() {
+            LongCollector collector = longClients.get();
+            if (collector == null) {
+                collector = newLongCollector();
+                longClients.set(collector);
+                register(collector);
+            }
+            return collector;
         }
     }
 
 
+
     /**
      * HotspotSensor maintains N sequential StatWindows: w(0) to w(N-1). w(0) is closed
      * when the first ClientMessage of T(N) is met, and w(N) will be created as well.
@@ -190,36 +792,60 @@ public class HotspotSensor<T> {
      */
     static class ServerWindow<E> {
 
-        private Set<Collector.CollectorId> collectorIds;
+        // bitset of indexes of collectors which have submitted
+        private long[] submitted;
+
+        // number of words of submitted in use
+        private int submittedWords;
 
         private ServerCounter<E> serverCounter;
 
         private long totalCount;
 
+        // changed since the last checkpoint
+        private boolean dirty;
+
         public ServerWindow() {
-            collectorIds = new HashSet<>(256);
-            serverCounter = new ServerCounter<>();
-            totalCount = 0;
+            this(new HashServerCounter<>());
         }
 
-        public boolean merge(Collector.CollectorId collectorId, long timeId, List<Entry<E>> clientCounter,
-            long totalCount) {
-            if (collectorIds.contains(collectorId)) {
+        public ServerWindow(ServerCounter<E> serverCounter) {
+            this.submitted = new long[4];
+            this.serverCounter = serverCounter;
+            this.totalCount = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean merge(ClientMessage message) {
+            int index = message.getCollectorIndex();
+            int word = index >>> 6;
+            long bit = 1L << index;
+            if (word >= submitted.length) {
+                submitted = Arrays.copyOf(submitted, Math.max(word + 1, submitted.length * 2));
+            }
+            if ((submitted[word] & bit) != 0) {
                 // one client should not submit twice;
-                LOG.warn("client {} submits duplicated packet on timeId {}", collectorId, timeId);
+                LOG.warn("client {} submits duplicated packet on timeId {}", index, message.getTimeId());
                 return false;
+            }
+            submitted[word] |= bit;
+            submittedWords = Math.max(submittedWords, word + 1);
+
+            int size = message.size();
+            if (message.isOfLong() && serverCounter instanceof LongServerCounter) {
+                LongServerCounter longCounter = (LongServerCounter) serverCounter;
+                for (int j = 0; j < size; j++) {
+                    longCounter.merge(message.longElementAt(j), message.countAt(j));
+                }
             } else {
-                collectorIds.add(collectorId);
-
-                for (Entry<E> entry : clientCounter) {
-                    // plus the one from L1Counter
-                    int count = entry.getCount() + 1;
-                    serverCounter.merge(entry.getElement(), count);
+                for (int j = 0; j < size; j++) {
+                    serverCounter.merge((E) message.elementAt(j), message.countAt(j));
                 }
-
-                this.totalCount += totalCount;
-                return true;
             }
+
+            this.totalCount += message.getTotalCount();
+            this.dirty = true;
+            return true;
         }
 
         public ServerCounter<E> getServerCounter() {
@@ -230,90 +856,166 @@ public class HotspotSensor<T> {
             return totalCount;
         }
 
+        boolean isDirty() {
+            return dirty;
+        }
+
+        void markClean() {
+            dirty = false;
+        }
+
+        /**
+         * @param source    name of sender
+         * @param partition index of shard
+         * @param watch     watch of windows
+         * @param timeId    timeId of this window
+         * @return summary of this window, null if it is empty
+         */
+        WindowSummary<E> toSummary(String source, int partition, Watch watch, long timeId) {
+            Set<? extends Entry<E>> entries = serverCounter.filterGreaterThanOrEqualsTo(1);
+            if (entries.isEmpty() && totalCount == 0) {
+                return null;
+            }
+            return new WindowSummary<>(source, partition, watch.getWindowSizeMills(), watch.startTimeMillisOf(timeId),
+                totalCount, new ArrayList<>(entries));
+        }
+
         /**
          * Clear for reuse;
          */
         public void clear() {
             totalCount = 0;
-            collectorIds.clear();
+            dirty = false;
+            Arrays.fill(submitted, 0, submittedWords, 0L);
+            submittedWords = 0;
             serverCounter.clear();
         }
 
     }
 
 
-    private static class ClientMessage<T> {
-        private Collector.CollectorId collectorId;
-
-        private long timeId;
-
-        private List<Entry<T>> l2Counter;
-
-        private long totalCount;
-
-        public ClientMessage(Collector.CollectorId collectorId, long timeId, List<Entry<T>> l2Counter,
-            long totalCount) {
-            this.collectorId = collectorId;
-            this.timeId = timeId;
-            this.l2Counter = l2Counter;
-            this.totalCount = totalCount;
-        }
-
-        public Collector.CollectorId getCollectorId() {
-            return collectorId;
-        }
+    /**
+     * Weak reference to a registered collector, keeps its index to be released after the collector is collected.
+     */
+    private class CollectorReference extends WeakReference<AbstractCollector> {
+        final int index;
 
-        public long getTimeId() {
-            return timeId;
-        }
+        // null if capacities are fixed
+        final CapacityBudget.Tuner tuner;
 
-        public List<Entry<T>> getL2Counter() {
-            return l2Counter;
+        CollectorReference(AbstractCollector collector, int index) {
+            super(collector);
+            this.index = index;
+            this.tuner = collector.getTuner();
         }
 
-        public long getTotalCount() {
-            return totalCount;
+        // give back index and capacities of a closed or collected collector
+        void release(long timeId) {
+            collectorIndexes.release(index, timeId);
+            if (tuner != null) {
+                tuner.release();
+            }
         }
     }
 
 
+    /**
+     * Notification backed by {@link HotSet} snapshots, deltas are calculated by looking up elements of one snapshot
+     * in the other, no set is copied.
+     */
     static class NotificationImpl<T> implements NotificationHandler.Notification<T> {
 
-        private boolean elementSetChanged, entrySetChanged;
+        // snapshot which deltas are based on, the one of the last handled notification
+        private HotSet<T> previous;
 
-        private Set<? extends T> elementSet;
+        private HotSet<T> current;
 
-        private Set<Entry<T>> entrySet;
+        private List<Entry<T>> added, removed, changed;
 
         private long totalCount;
 
-        public NotificationImpl(boolean elementSetChanged, Set<? extends T> elementSet, boolean entrySetChanged,
-            Set<Entry<T>> entrySet, long totalCount) {
-            this.elementSetChanged = elementSetChanged;
-            this.entrySetChanged = entrySetChanged;
-            this.elementSet = elementSet;
-            this.entrySet = entrySet;
+        private Set<Entry<T>> emergingSet;
+
+        /**
+         * Notification with changes of shards, which are based on {@code previous}.
+         */
+        NotificationImpl(HotSet<T> previous, HotSet<T> current, HotDelta<T> delta, Set<Entry<T>> emergingSet,
+            long totalCount) {
+            this.previous = previous;
+            this.current = current;
+            this.emergingSet = emergingSet;
             this.totalCount = totalCount;
+            this.added = delta.getAdded();
+            this.removed = delta.getRemoved();
+            this.changed = delta.getChanged();
+        }
+
+        /**
+         * Notification with changes looked up in both snapshots.
+         */
+        NotificationImpl(HotSet<T> previous, HotSet<T> current, Set<Entry<T>> emergingSet, long totalCount) {
+            this.previous = previous;
+            this.current = current;
+            this.emergingSet = emergingSet;
+            this.totalCount = totalCount;
+
+            added = removed = changed = Collections.emptyList();
+            for (Entry<T> entry : current.entries()) {
+                int count = previous.get(entry.getElement());
+                if (count == 0) {
+                    added = addTo(added, entry);
+                } else if (count != entry.getCount()) {
+                    changed = addTo(changed, entry);
+                }
+            }
+            for (Entry<T> entry : previous.entries()) {
+                if (current.get(entry.getElement()) == 0) {
+                    removed = addTo(removed, entry);
+                }
+            }
+        }
+
+        private static <T> List<Entry<T>> addTo(List<Entry<T>> list, Entry<T> entry) {
+            if (list.isEmpty()) {
+                list = new ArrayList<>();
+            }
+            list.add(entry);
+            return list;
         }
 
         @Override
         public boolean isElementSetChanged() {
-            return elementSetChanged;
+            return !added.isEmpty() || !removed.isEmpty();
         }
 
         @Override
         public boolean isEntrySetChanged() {
-            return entrySetChanged;
+            return isElementSetChanged() || !changed.isEmpty();
         }
 
         @Override
         public Set<? extends T> getElementSet() {
-            return elementSet;
+            return current.elementSet();
         }
 
         @Override
         public Set<Entry<T>> getEntrySet() {
-            return entrySet;
+            return current.entrySet();
+        }
+
+        @Override
+        public List<Entry<T>> getAdded() {
+            return Collections.unmodifiableList(added);
+        }
+
+        @Override
+        public List<Entry<T>> getRemoved() {
+            return Collections.unmodifiableList(removed);
+        }
+
+        @Override
+        public List<Entry<T>> getChanged() {
+            return Collections.unmodifiableList(changed);
         }
 
         @Override
@@ -321,120 +1023,498 @@ public class HotspotSensor<T> {
             return totalCount;
         }
 
+        @Override
+        public double getScore(T element) {
+            return current.getScore(element);
+        }
+
+        @Override
+        public Set<Entry<T>> getEmergingSet() {
+            return emergingSet;
+        }
+
+        /**
+         * Conflate a notification which is not handled yet into a newer one.
+         *
+         * @return the newer one, with deltas rebased on the snapshot of the older one
+         */
+        static <T> NotificationHandler.Notification<T> conflate(NotificationHandler.Notification<T> older,
+            NotificationHandler.Notification<T> newer) {
+            if (!(older instanceof NotificationImpl) || !(newer instanceof NotificationImpl)) {
+                return newer;
+            }
+            NotificationImpl<T> o = (NotificationImpl<T>) older;
+            NotificationImpl<T> n = (NotificationImpl<T>) newer;
+            return new NotificationImpl<>(o.previous, n.current, n.emergingSet, n.totalCount);
+        }
+
 
         @Override
         public String toString() {
             return "[" +
-                "elementSetChanged=" + elementSetChanged +
-                ", entrySetChanged=" + entrySetChanged +
-                ", elementSet=" + elementSet +
-                ", entrySet=" + entrySet +
+                "added=" + added +
+                ", removed=" + removed +
+                ", changed=" + changed +
+                ", entrySet=" + current.entries() +
+                ", emergingSet=" + emergingSet +
                 ", getTotalCount=" + totalCount +
                 ']';
         }
     }
 
 
-    // the only consumer thread pull form channel and do hot detection
-    private class ConsumeTask implements Runnable {
+    /**
+     * Elements are partitioned among shards by hash, each shard owns a channel, a consumer thread and a ring of
+     * {@link ServerWindow}s, and calculates hot elements of its partition. {@link Coordinator} combines results of all
+     * shards into one notification.
+     */
+    private class Shard implements Runnable {
+
+        private final int index;
+        private final RingBufferChannel<ClientMessage> channel;
+        private final ServerWindow<T>[] windows;
+        private int firstWindowNo;
+        private long firstWindowTimeId;
+        // sum of all windows, maintained incrementally: packets are added on arriving and windows are subtracted on
+        // expiring
+        private final ServerCounter<T> serverCounter;
+        private long totalCount;
+        // weighted scores of serverCounter, null if windows are not weighted
+        private final WeightedScores<T> scores;
+        // growth of elements between windows, null if emerging detection is disabled
+        private final EmergingDetector<T> emergingDetector;
+        // hot entries of the last slide, to tell changes of the next one
+        private final HotDelta.Tracker<T> hotTracker = new HotDelta.Tracker<>();
+        // timeId of the youngest window sent to summaryExporter
+        private long lastExportedTimeId;
+        // region of checkpoint, null if disabled
+        private final SensorCheckpoint<T>.Region checkpointRegion;
+        private long ticks;
+
+        private final Consumer<ClientMessage> packetConsumer = this::consume;
+
+        // timeId of the last tick of this consumer
+        private long lastTimeId;
+
+        Shard(int index, int channelSize, WaitStrategy waitStrategy, int windowsNumber,
+            ServerCounter.Factory<T> serverCounterFactory, WindowWeighting windowWeighting,
+            EmergingDetector.Factory<T> emergingFactory) {
+            this.index = index;
+            this.channel = new RingBufferChannel<>(channelSize, waitStrategy);
+
+            // generic array can only be created raw
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ServerWindow<T>[] newWindows = new ServerWindow[windowsNumber];
+            this.windows = newWindows;
+            for (int i = 0; i < windowsNumber; i++) {
+                windows[i] = new ServerWindow<>(serverCounterFactory.createWindowCounter());
+            }
 
-        @Override
-        public void run() {
-            while (true) {
+            this.firstWindowNo = 0;
+            this.firstWindowTimeId = watch.currentTimeId();
+            this.serverCounter = serverCounterFactory.createAggregateCounter();
+            this.totalCount = 0;
+            this.scores = windowWeighting == null ? null : new WeightedScores<>(windowWeighting, windowsNumber);
+            this.emergingDetector = emergingFactory == null ? null : emergingFactory.create();
+            this.lastTimeId = firstWindowTimeId;
+            this.lastExportedTimeId = firstWindowTimeId - 1;
+            this.checkpointRegion = checkpoint == null ? null : checkpoint.region(index);
+        }
 
-                try {
-                    ClientMessage<T> packet = channel.take();
-                    long timeId = packet.getTimeId();
-                    Collector.CollectorId collectorId = packet.getCollectorId();
-
-                    int offset = (int) (timeId - firstWindowTimeId);
-
-                    if (offset < 0) {
-                        // out-of-date package, discard
-                        LOG.debug("discard out-of-date package of timeId {}, oldest timeId is {} ", timeId,
-                            firstWindowTimeId);
-                    } else if (offset < windows.length) {
-                        // package of existed window, merge
-                        ServerWindow<T> currentWindow = getWindow(offset);
-                        currentWindow.merge(collectorId, timeId, packet.getL2Counter(), packet.getTotalCount());
-                    } else {
-                        // package of new timeId
-                        calculateHotElementsAndNotify(offset);
+        /**
+         * Move windows so that the youngest one is {@code timeId} instead of the oldest one, for windows restored
+         * from checkpoint. Called before the consumer starts.
+         */
+        void realign(long timeId) {
+            firstWindowTimeId = timeId - windows.length + 1;
+            lastTimeId = timeId;
+            // complete windows were sent by the last run
+            lastExportedTimeId = timeId - 2;
+        }
 
-                        //evict obsolete windows, initialize new windows
-                        int interval = Math.min(windows.length, offset);
+        /**
+         * Merge a restored window, called before the consumer starts.
+         */
+        void restore(ClientMessage message) {
+            merge(message);
+        }
 
-                        for (int i = 0; i < interval; i++) {
-                            ServerWindow window = getWindow(i);
-                            window.clear();
-                        }
+        boolean submit(ClientMessage clientMessage) {
+            if (!channel.offer(clientMessage)) {
+                metrics.recordOverflowDrop();
+                LOG.warn("hot detect, server channel overflow, discard client {}, timeId {}",
+                    clientMessage.getCollectorIndex(), clientMessage.getTimeId());
+                clientMessage.recycle();
+                return false;
+            }
+            return true;
+        }
 
-                        firstWindowNo = getIndex(interval);
-                        firstWindowTimeId = timeId;
+        private ServerWindow<T> getWindow(int offset) {
+            if (offset < 0 || offset > windows.length) {
+                throw new IllegalArgumentException();
+            }
+            int i = getIndex(offset);
+            return windows[i];
+        }
 
+        private int getIndex(int offset) {
+            return (firstWindowNo + offset) % windows.length;
+        }
 
-                    }
+        // the consumer thread of this shard pulls from channel and does hot detection
+        @Override
+        public void run() {
+            while (!stopped) {
 
+                try {
+                    if (channel.drain(packetConsumer, channel.capacity()) == 0) {
+                        channel.await(PARK_NANOS);
+                    }
 
+                    long timeId = watch.currentTimeId();
+                    if (timeId > lastTimeId) {
+                        lastTimeId = timeId;
+                        tick(timeId);
+                    }
                 } catch (Throwable t) {
                     LOG.error("meet error in server consumer task", t);
 
                 }
             }
 
+            if (checkpointRegion != null) {
+                checkpoint();
+            }
         }
 
-        private void calculateHotElementsAndNotify(int offset) {
+        private void consume(ClientMessage packet) {
+            long start = System.nanoTime();
+            try {
+                metrics.recordConsumerLag(lastTimeId - packet.getTimeId());
+                merge(packet);
+            } finally {
+                packet.recycle();
+                metrics.recordMerge(System.nanoTime() - start);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void merge(ClientMessage packet) {
+            long timeId = packet.getTimeId();
 
-            Set<T> newHotElementSet;
-            Set<Entry<T>> newHotEntrySet;
-            long totalCount = 0;
+            long offset = timeId - firstWindowTimeId;
 
-            if (offset >= windows.length * 2) {
-                // It has been too long since last packet arrived, all windows are invalid now
+            if (offset < 0) {
+                // out-of-date package, discard
+                metrics.recordOutOfDateDrop();
+                LOG.debug("discard out-of-date package of timeId {}, oldest timeId is {} ", timeId,
+                    firstWindowTimeId);
+                return;
+            }
 
-                newHotEntrySet = Collections.emptySet();
+            if (offset >= windows.length) {
+                // package of new timeId, windows before it are closed
+                slide(timeId);
+                offset = timeId - firstWindowTimeId;
+            }
+
+            ServerWindow<T> currentWindow = getWindow((int) offset);
+            if (currentWindow.merge(packet)) {
+                int size = packet.size();
+                if (packet.isOfLong() && scores == null && serverCounter instanceof LongServerCounter) {
+                    // nothing is boxed
+                    LongServerCounter longCounter = (LongServerCounter) serverCounter;
+                    for (int j = 0; j < size; j++) {
+                        longCounter.merge(packet.longElementAt(j), packet.countAt(j));
+                    }
+                } else {
+                    for (int j = 0; j < size; j++) {
+                        T element = (T) packet.elementAt(j);
+                        serverCounter.merge(element, packet.countAt(j));
+                        if (scores != null) {
+                            scores.add(element, packet.countAt(j), timeId);
+                        }
+                    }
+                }
+                totalCount += packet.getTotalCount();
             } else {
-                serverCounter.clear();
-                //TODO: calculate hot element by weight of interval
-                int length = 2 * windows.length - offset;
+                metrics.recordDuplicatedDrop();
+            }
+        }
+
+        /**
+         * Called once per window. The first shard flushes idle collectors, so that their windows arrive about one
+         * window late at most. Windows are slid by time if no packet did it, windows before {@code timeId - 1} are
+         * complete since collectors were flushed in the last tick, so they are sent to {@code summaryExporter}.
+         * Changed windows are checkpointed every {@code intervalWindows} ticks.
+         */
+        private void tick(long timeId) {
+            if (index == 0) {
+                flushCollectors(timeId);
+            }
+
+            if (summaryExporter != null) {
+                export(timeId - 2);
+            }
+
+            if (timeId - 1 - firstWindowTimeId >= windows.length) {
+                slide(timeId - 1);
+            }
+
+            if (checkpointRegion != null && ++ticks % checkpoint.getIntervalWindows() == 0) {
+                checkpoint();
+            }
+        }
+
+        /**
+         * Slide the windows so that {@code timeId} becomes the youngest one. Hot elements are calculated on the
+         * {@code windows.length} windows just before {@code timeId}, then the oldest of them expires to make room for
+         * {@code timeId}.
+         */
+        private void slide(long timeId) {
+            if (summaryExporter != null) {
+                // windows expiring in this slide, in case they are not complete by tick yet
+                export(timeId - windows.length);
+            }
 
+            // windows older than (timeId - windows.length) are out of the range of this calculation
+            expire(timeId - windows.length - firstWindowTimeId);
 
-                // from old to young
-                for (int i = 0; i < length; i++) {
-                    int index = getIndex(i);
-                    ServerWindow<T> window = windows[index];
-                    totalCount += window.getTotalCount();
+            Collection<? extends Entry<T>> hotEntries;
+            if (maxHotElements > 0) {
+                hotEntries = scores == null
+                    ? serverCounter.top(hotThreshold, maxHotElements)
+                    : scores.top(hotThreshold, timeId - 1, maxHotElements);
+            } else {
+                hotEntries = scores == null
+                    ? serverCounter.filterGreaterThanOrEqualsTo(hotThreshold)
+                    : scores.filterGreaterThanOrEqualsTo(hotThreshold, timeId - 1);
+            }
+            Set<Entry<T>> emergingEntries = Collections.emptySet();
+            if (emergingDetector != null) {
+                // the youngest window is timeId - 1, windows between it and the last slide (if any) are skipped
+                getWindow(windows.length - 1).getServerCounter().forEach(emergingDetector::observe);
+                emergingEntries = emergingDetector.complete();
+                if (!emergingEntries.isEmpty() && !hotEntries.isEmpty()) {
+                    Set<T> hotElements = hotEntries.stream().map(Entry<T>::getElement).collect(Collectors.toSet());
+                    emergingEntries.removeIf(entry -> hotElements.contains(entry.getElement()));
+                }
+            }
+            coordinator.complete(timeId, hotEntries, hotTracker.update(timeId, hotEntries), emergingEntries,
+                totalCount);
+            if (checkpoint != null) {
+                // written under the lock of coordinator, forced out of it
+                checkpoint.flushHotSet();
+            }
+
+            expire(1);
+            firstWindowTimeId = timeId - windows.length + 1;
+        }
+
+        /**
+         * Append windows changed since the last checkpoint, rewrite the region with live windows if it is full.
+         */
+        private void checkpoint() {
+            if (!writeCheckpoint(false)) {
+                checkpointRegion.reset();
+                if (!writeCheckpoint(true)) {
+                    LOG.warn("windows of shard {} overflow checkpoint region", index);
+                }
+            }
+            checkpointRegion.flush();
+        }
 
-                    for (Entry<T> entry : window.getServerCounter().getElements()) {
-                        serverCounter.merge(entry.getElement(), entry.getCount());
+        private boolean writeCheckpoint(boolean all) {
+            for (int i = 0; i < windows.length; i++) {
+                ServerWindow<T> window = getWindow(i);
+                if (window.isDirty() || all) {
+                    WindowSummary<T> summary = window.toSummary("", index, watch, firstWindowTimeId + i);
+                    if (summary != null && !checkpointRegion.append(summary)) {
+                        return false;
                     }
+                    window.markClean();
                 }
+            }
+            return true;
+        }
 
-                newHotEntrySet = Collections.unmodifiableSet(serverCounter.filterGreaterThanOrEqualsTo(hotThreshold));
+        /**
+         * Send windows up to {@code timeId} which are not sent yet, windows already expired are skipped.
+         */
+        private void export(long timeId) {
+            long from = Math.max(lastExportedTimeId + 1, firstWindowTimeId);
+            long to = Math.min(timeId, firstWindowTimeId + windows.length - 1);
+            for (long t = from; t <= to; t++) {
+                summaryExporter.export(index, watch, t, getWindow((int) (t - firstWindowTimeId)));
+            }
+            lastExportedTimeId = Math.max(lastExportedTimeId, timeId);
+        }
 
+        /**
+         * Evict the oldest {@code number} windows and subtract them from {@code serverCounter}, the cost is
+         * proportional to size of evicted windows rather than all windows.
+         */
+        private void expire(long number) {
+            if (number >= windows.length) {
+                // all windows are invalid now
+                for (ServerWindow<T> window : windows) {
+                    window.clear();
+                }
+                serverCounter.clear();
+                if (scores != null) {
+                    scores.clear();
+                }
+                totalCount = 0;
+                firstWindowTimeId += number;
+                return;
+            }
 
+            for (int i = 0; i < number; i++) {
+                ServerWindow<T> window = getWindow(0);
+                serverCounter.subtract(window.getServerCounter());
+                if (scores != null) {
+                    for (Entry<T> entry : window.getServerCounter().filterGreaterThanOrEqualsTo(0)) {
+                        scores.subtract(entry.getElement(), entry.getCount(), firstWindowTimeId);
+                    }
+                }
+                totalCount -= window.getTotalCount();
+                window.clear();
+
+                firstWindowNo = getIndex(1);
+                firstWindowTimeId++;
             }
+        }
+    }
+
+
+    /**
+     * Combine hot elements of all shards of the same timeId and notify. A round which is not completed by all shards
+     * before a newer round starts is discarded.
+     */
+    private class Coordinator {
+
+        private final int shardsNumber;
+
+        private long roundTimeId;
+
+        private int completed;
+
+        private List<Entry<T>> roundEntrySet;
+
+        private long roundTotalCount;
+
+        private Set<Entry<T>> roundEmergingSet;
 
+        // number of calculations, to checkpoint hot set every some ones
+        private long rounds;
 
-            newHotElementSet = newHotEntrySet.stream().map(Entry::getElement).collect(Collectors.toSet());
-            boolean isHotElementSetChanged = !newHotElementSet.equals(hotElementSet);
-            boolean isHotEntrySetChanged = !newHotEntrySet.equals(hotEntrySet);
-            NotificationHandler.Notification<T> notification =
-                new NotificationImpl<>(isHotElementSetChanged, newHotElementSet, isHotEntrySetChanged, newHotEntrySet,
-                    totalCount);
+        // changes of all shards in the round, null if some shard is not based on the last notified round
+        private HotDelta<T> roundDelta;
 
-            if (isHotElementSetChanged) {
-                LOG.debug("hot elements set changed at time {}: {} ", firstWindowTimeId, hotEntrySet);
+        // round and snapshot of the last notification, which deltas of shards are based on
+        private long notifiedTimeId = Long.MIN_VALUE;
+
+        private HotSet<T> notifiedHotSet;
+
+        Coordinator(int shardsNumber) {
+            this.shardsNumber = shardsNumber;
+            this.roundTimeId = Long.MIN_VALUE;
+            this.completed = 0;
+        }
+
+        synchronized void complete(long timeId, Collection<? extends Entry<T>> entrySet, HotDelta<T> delta,
+            Set<Entry<T>> emergingSet, long totalCount) {
+            if (timeId < roundTimeId) {
+                LOG.debug("discard result of timeId {}, current round is {}", timeId, roundTimeId);
+                return;
+            }
+
+            if (timeId > roundTimeId) {
+                if (completed > 0) {
+                    LOG.debug("discard incomplete round of timeId {}, {} of {} shards completed", roundTimeId,
+                        completed, shardsNumber);
+                }
+                roundTimeId = timeId;
+                completed = 0;
+                // shards own disjoint elements
+                roundEntrySet = shardsNumber == 1 ? null : new ArrayList<>();
+                roundEmergingSet = shardsNumber == 1 ? null : new HashSet<>();
+                roundTotalCount = 0;
+                roundDelta = shardsNumber == 1 ? null : new HotDelta<>(notifiedTimeId);
+            }
+
+            completed++;
+            roundTotalCount += totalCount;
+
+            if (shardsNumber == 1) {
+                calculateHotElementsAndNotify(entrySet, delta.getBaseTimeId() == notifiedTimeId ? delta : null,
+                    emergingSet, roundTotalCount);
+            } else {
+                roundEntrySet.addAll(entrySet);
+                roundEmergingSet.addAll(emergingSet);
+                if (roundDelta != null && delta.getBaseTimeId() == notifiedTimeId) {
+                    roundDelta.addAll(delta);
+                } else {
+                    roundDelta = null;
+                }
+                if (completed == shardsNumber) {
+                    calculateHotElementsAndNotify(roundEntrySet, roundDelta, roundEmergingSet, roundTotalCount);
+                }
             }
+        }
 
-            if (notificationHandlers != null) {
-                notificationHandlers.forEach(handler -> handler.handleNotification(notification));
+        private void calculateHotElementsAndNotify(Collection<? extends Entry<T>> entrySet, HotDelta<T> delta,
+            Set<Entry<T>> emergingSet, long totalCount) {
+            long start = System.nanoTime();
+            try {
+                calculateAndNotify(entrySet, delta, emergingSet, totalCount);
+            } finally {
+                metrics.recordNotify(System.nanoTime() - start);
             }
+        }
 
-            hotEntrySet = newHotEntrySet;
-            hotElementSet = newHotElementSet;
+        /**
+         * @param delta changes of shards since the last notification, null if unknown (a round is discarded or hot
+         *              set is restored from checkpoint since then)
+         */
+        private void calculateAndNotify(Collection<? extends Entry<T>> entrySet, HotDelta<T> delta,
+            Set<Entry<T>> emergingSet, long totalCount) {
+            HotSet<T> previous = hotSet;
+            if (previous != notifiedHotSet) {
+                delta = null;
+            }
+            HotSet<T> current;
+            if (delta != null && delta.isEmpty()) {
+                // no entry crosses the threshold or changes, so neither does a top k of them
+                current = previous;
+            } else {
+                // select (or sort only if not limited) hot entries of all shards
+                TopK<T> topK = new TopK<>(maxHotElements > 0 ? maxHotElements : Math.max(1, entrySet.size()));
+                for (Entry<T> entry : entrySet) {
+                    topK.offer(entry.getElement(), entry.getCount(), entry.getScore());
+                }
+                current = newHotSet(topK.toList());
+                publish(current);
+            }
+            notifiedTimeId = roundTimeId;
+            notifiedHotSet = current;
+
+            if (checkpoint != null && ++rounds % checkpoint.getIntervalWindows() == 0) {
+                checkpoint.writeHotSet(new WindowSummary<>("", 0, watch.getWindowSizeMills(),
+                    watch.startTimeMillisOf(roundTimeId - 1), totalCount, current.entries()));
+            }
+
+            // a limited hot set is not the union of hot entries of shards, deltas are looked up in snapshots
+            NotificationImpl<T> notification = delta != null && (maxHotElements <= 0 || delta.isEmpty())
+                ? new NotificationImpl<>(previous, current, delta, Collections.unmodifiableSet(emergingSet), totalCount)
+                : new NotificationImpl<>(previous, current, Collections.unmodifiableSet(emergingSet), totalCount);
+
+            if (notification.isElementSetChanged()) {
+                LOG.debug("hot elements set changed at time {}: {} ", roundTimeId, current.entries());
+            }
 
+            notificationDispatchers.forEach(dispatcher -> dispatcher.dispatch(notification));
         }
     }
 
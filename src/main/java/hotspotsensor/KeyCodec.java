@@ -0,0 +1,35 @@
+package hotspotsensor;
+
+/**
+ * Convert elements to bytes and back, so that windows of a {@link HotspotSensor} can be shipped to a
+ * {@link ClusterAggregator} as {@link WindowSummary}s. Equal elements must be encoded to equal bytes.
+ *
+ * @author iamlotus@gmail.com
+ */
+public interface KeyCodec<T> {
+
+    byte[] encode(T element);
+
+    /**
+     * @param bytes
+     * @param offset start of the element in {@code bytes}
+     * @param length length of the element
+     * @return element
+     * @throws IllegalArgumentException if bytes are not a valid element
+     */
+    T decode(byte[] bytes, int offset, int length);
+
+    /**
+     * @return codec of {@code String} in UTF-8
+     */
+    static KeyCodec<String> ofString() {
+        return StringKeyCodec.INSTANCE;
+    }
+
+    /**
+     * @return codec of {@code Long} in zig-zag varint, 1 byte for small IDs and 10 bytes at most
+     */
+    static KeyCodec<Long> ofLong() {
+        return LongKeyCodec.INSTANCE;
+    }
+}
@@ -38,6 +38,12 @@ public interface L1LRU<E> {
 
     interface Factory<T> {
         L1LRU<T> create();
+
+        /**
+         * @param capacity capacity instead of the configured one, chosen by adaptive capacity
+         * @return L1LRU of the same type
+         */
+        L1LRU<T> create(int capacity);
     }
 
 }
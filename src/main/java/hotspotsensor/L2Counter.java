@@ -1,6 +1,7 @@
 package hotspotsensor;
 
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 /**
  * L2 Counter
@@ -11,6 +12,12 @@ public interface L2Counter<E> {
 
     interface Factory<T> {
         L2Counter<T> create();
+
+        /**
+         * @param capacity capacity instead of the configured one, chosen by adaptive capacity
+         * @return L2Counter of the same type
+         */
+        L2Counter<T> create(int capacity);
     }
 
     /**
@@ -21,6 +28,23 @@ public interface L2Counter<E> {
      */
     boolean incIfPresent(E element);
 
+    /**
+     * add delta to counter of element if present
+     *
+     * @param element
+     * @param delta   positive
+     * @return true if present, false else
+     */
+    default boolean incIfPresent(E element, int delta) {
+        if (!incIfPresent(element)) {
+            return false;
+        }
+        for (int i = 1; i < delta; i++) {
+            incIfPresent(element);
+        }
+        return true;
+    }
+
 
     /**
      * counter is full (a full counter can not accept new element)
@@ -30,13 +54,32 @@ public interface L2Counter<E> {
     boolean isFull();
 
     /**
-     * add element and set counter to 1 if element is absent and counter is not full.
+     * add element and set counter to 1 if element is absent and counter is not full. A counter which evicts (see
+     * {@link SpaceSavingL2Counter}) may also add element when it is full.
      *
      * @param element
-     * @return true if element is absent  and counter is not full, false else
+     * @return true if element is absent and counted by this counter, false if element is present or not counted
      */
     boolean addIfAbsentAndNotFull(E element);
 
+    /**
+     * add element and set counter to count if element is absent and counter is not full. A counter which evicts (see
+     * {@link SpaceSavingL2Counter}) may also add element when it is full.
+     *
+     * @param element
+     * @param count   positive
+     * @return true if element is absent and counted by this counter, false if element is present or not counted
+     */
+    default boolean addIfAbsentAndNotFull(E element, int count) {
+        if (!addIfAbsentAndNotFull(element)) {
+            return false;
+        }
+        if (count > 1) {
+            incIfPresent(element, count - 1);
+        }
+        return true;
+    }
+
     /**
      * clear all elements
      */
@@ -49,6 +92,17 @@ public interface L2Counter<E> {
      */
     List<Entry<E>> getElements();
 
+    /**
+     * Visit all elements and counts, with random order. Unlike {@link #getElements()}, nothing needs to be allocated.
+     *
+     * @param action
+     */
+    default void forEach(ObjIntConsumer<? super E> action) {
+        for (Entry<E> entry : getElements()) {
+            action.accept(entry.getElement(), entry.getCount());
+        }
+    }
+
 
 
 }
@@ -0,0 +1,181 @@
+package hotspotsensor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Collector} of primitive long elements for {@link HotspotSensor.OfLong}, backed by {@link LongL1LRU} and
+ * {@link LongL2Counter} so that {@link #access(long)} allocates nothing. Windows are submitted in primitive arrays of
+ * pooled {@link ClientMessage}s, so submission allocates nothing either.
+ *
+ * @author iamlotus@gmail.com
+ */
+class LongCollector extends AbstractCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LongCollector.class);
+
+    private LongL1LRU l1LRU;
+    private LongL2Counter l2Counter;
+
+    // accesses deferred while the collector is flushed, see Collector
+    private final long[] deferredElements = new long[DEFER_CAPACITY];
+    private final int[] deferredDeltas = new int[DEFER_CAPACITY];
+
+    LongCollector(HotspotSensor<Long> hotspotSensor, Watch watch, LongL1LRU l1LRU, LongL2Counter l2Counter) {
+        super(hotspotSensor, watch, true);
+        this.l1LRU = l1LRU;
+        this.l2Counter = l2Counter;
+    }
+
+    public void access(long element) {
+        access(element, 1);
+    }
+
+    /**
+     * Access element {@code delta} times, see {@link Collector#access(Object, int)}
+     *
+     * @param element
+     * @param delta   positive
+     */
+    public void access(long element, int delta) {
+        if (!enter()) {
+            defer(element, delta);
+            return;
+        }
+        try {
+            put(element, delta);
+
+            totalCount += delta;
+
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * see {@link Collector#tryAccess(Object, int)}
+     *
+     * @param element
+     * @param delta   positive
+     * @return false if the collector is held by another thread, nothing is done
+     */
+    public boolean tryAccess(long element, int delta) {
+        if (!tryAcquire()) {
+            return false;
+        }
+        try {
+            put(element, delta);
+
+            totalCount += delta;
+
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+        return true;
+    }
+
+    /**
+     * Access every element once, see {@link Collector#accessAll(Iterable)}
+     *
+     * @param elements
+     */
+    public void accessAll(long[] elements) {
+        if (!enter()) {
+            for (long element : elements) {
+                defer(element, 1);
+            }
+            return;
+        }
+        try {
+            for (long element : elements) {
+                put(element, 1);
+            }
+            totalCount += elements.length;
+
+            rotateIfElapsed();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    protected void submitWindow(long timeId, long totalCount) {
+        ClientMessage message = pool.take();
+        message.reset(getIndex(), timeId, totalCount);
+        message.setCollectorCounts(l1Promotions, l2Rejections);
+        l2Counter.copyTo(message);
+        hotspotSensor.submit(message);
+    }
+
+    private void defer(long element, int delta) {
+        int slot = deferSlot();
+        if (slot < 0) {
+            // full, wait for the flusher instead of losing the access
+            enterWaiting();
+            try {
+                put(element, delta);
+                totalCount += delta;
+            } finally {
+                release();
+            }
+            return;
+        }
+        deferredElements[slot] = element;
+        deferredDeltas[slot] = delta;
+        publishDeferred();
+    }
+
+    @Override
+    protected void replayDeferred(int slot) {
+        put(deferredElements[slot], deferredDeltas[slot]);
+        totalCount += deferredDeltas[slot];
+    }
+
+    @Override
+    protected void clearWindow() {
+        l1LRU.clear();
+        l2Counter.clear();
+    }
+
+    @Override
+    protected void resize(int l1Capacity, int l2Capacity) {
+        if (l1Capacity > 0) {
+            l1LRU = new LongL1LRU(l1Capacity);
+        } else {
+            l1LRU.clear();
+        }
+        if (l2Capacity > 0) {
+            l2Counter = new LongL2Counter(l2Capacity);
+        } else {
+            l2Counter.clear();
+        }
+        LOG.debug("client {} resizes L1LRU to {}, L2Counter to {}", getId(), getTuner().getL1Capacity(),
+            getTuner().getL2Capacity());
+    }
+
+    private void put(long element, int delta) {
+        if (!l2Counter.incIfPresent(element, delta)) {
+            boolean twice = l1LRU.put(element);
+            int count = delta;
+            if (!twice && delta > 1) {
+                // the second access is in this batch too
+                twice = l1LRU.put(element);
+                count = delta - 1;
+            }
+            if (!twice) {
+                l1Misses++;
+            } else {
+                if (l2Counter.addIfAbsentAndNotFull(element, count)) {
+                    l1Promotions++;
+                } else {
+                    l2Rejections++;
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("client {} discard element {} because of overflow", getId(), element);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package hotspotsensor;
+
+/**
+ * Handle of a {@link LongCollector} which is bound to the thread opening it, see {@link CollectorHandle}. Created by
+ * {@link HotspotSensor.OfLong#openLongCollector()}.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class LongCollectorHandle implements AutoCloseable {
+
+    private final HotspotSensor<Long> hotspotSensor;
+
+    private final LongCollector collector;
+
+    private final Thread owner;
+
+    private boolean closed;
+
+    LongCollectorHandle(HotspotSensor<Long> hotspotSensor, LongCollector collector) {
+        this.hotspotSensor = hotspotSensor;
+        this.collector = collector;
+        this.owner = Thread.currentThread();
+        this.closed = false;
+    }
+
+    /**
+     * see {@link HotspotSensor.OfLong#increase(long)}
+     *
+     * @param element element to increase
+     */
+    public void increase(long element) {
+        checkOwner();
+        collector.access(element);
+    }
+
+    /**
+     * see {@link HotspotSensor.OfLong#increase(long, int)}
+     *
+     * @param element element to increase
+     * @param delta   times, positive
+     */
+    public void increase(long element, int delta) {
+        checkOwner();
+        if (delta <= 0) {
+            throw new IllegalArgumentException("delta:" + delta);
+        }
+        collector.access(element, delta);
+    }
+
+    /**
+     * see {@link HotspotSensor.OfLong#increaseAll(long[])}
+     *
+     * @param elements elements to increase
+     */
+    public void increaseAll(long[] elements) {
+        checkOwner();
+        collector.accessAll(elements);
+    }
+
+    /**
+     * Submit the current window and deregister the collector, further increase is not allowed. Closing twice has no
+     * effect.
+     */
+    @Override
+    public void close() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("collector is owned by " + owner.getName());
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        collector.flushCurrent();
+        hotspotSensor.deregister(collector);
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("collector is owned by " + owner.getName());
+        }
+        if (closed) {
+            throw new IllegalStateException("collector is closed");
+        }
+    }
+}
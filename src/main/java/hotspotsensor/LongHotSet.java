@@ -0,0 +1,72 @@
+package hotspotsensor;
+
+import java.util.List;
+
+/**
+ * {@link HotSet} of primitive long elements for {@link HotspotSensor.OfLong}, lookups do not box.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class LongHotSet {
+
+    static final LongHotSet EMPTY = new LongHotSet(new long[1], new int[1], null);
+
+    private final long[] elements;
+
+    // 0 marks an empty entry
+    private final int[] counts;
+
+    private final int mask;
+
+    // null if Bloom filter is disabled
+    private final long[] bloom;
+
+    private LongHotSet(long[] elements, int[] counts, long[] bloom) {
+        this.elements = elements;
+        this.counts = counts;
+        this.mask = counts.length - 1;
+        this.bloom = bloom;
+    }
+
+    static LongHotSet of(List<Entry<Long>> entries, boolean bloomFilter) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+        int tableSize = HotSet.tableSizeFor(entries.size() * 2);
+        long[] elements = new long[tableSize];
+        int[] counts = new int[tableSize];
+        long[] bloom = bloomFilter ? new long[Math.max(1, HotSet.tableSizeFor(entries.size() * 8) >>> 6)] : null;
+
+        for (Entry<Long> entry : entries) {
+            long element = entry.getElement();
+            int h = LongL2Counter.hash(element);
+            int i = h & (tableSize - 1);
+            while (counts[i] != 0) {
+                i = (i + 1) & (tableSize - 1);
+            }
+            elements[i] = element;
+            counts[i] = entry.getCount();
+            if (bloom != null) {
+                HotSet.addToBloom(bloom, h);
+            }
+        }
+        return new LongHotSet(elements, counts, bloom);
+    }
+
+    /**
+     * @param element
+     * @return count of element, 0 if it is not hot
+     */
+    int get(long element) {
+        int h = LongL2Counter.hash(element);
+        if (bloom != null && !HotSet.mightContain(bloom, h)) {
+            return 0;
+        }
+        for (int i = h & mask; counts[i] != 0; i = (i + 1) & mask) {
+            if (elements[i] == element) {
+                return counts[i];
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,40 @@
+package hotspotsensor;
+
+/**
+ * {@link KeyCodec} of {@code Long} in zig-zag varint, see {@link KeyCodec#ofLong()}.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class LongKeyCodec implements KeyCodec<Long> {
+
+    static final LongKeyCodec INSTANCE = new LongKeyCodec();
+
+    private LongKeyCodec() {
+    }
+
+    @Override
+    public byte[] encode(Long element) {
+        long v = element;
+        long zigzag = (v << 1) ^ (v >> 63);
+        byte[] result = new byte[WindowSummary.varLongSize(zigzag)];
+        WindowSummary.putVarLong(result, 0, zigzag);
+        return result;
+    }
+
+    @Override
+    public Long decode(byte[] bytes, int offset, int length) {
+        if (length <= 0 || length > 10) {
+            throw new IllegalArgumentException("length of long key:" + length);
+        }
+        long zigzag = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[offset + i];
+            // all bytes but the last one have the continuation bit
+            if ((b < 0) != (i < length - 1)) {
+                throw new IllegalArgumentException("malformed long key");
+            }
+            zigzag |= (long) (b & 0x7F) << (7 * i);
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,189 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+
+/**
+ * {@link L1LRU} of primitive long elements for {@link HotspotSensor.OfLong}, nothing is allocated after
+ * construction.
+ * <p>
+ * Elements are kept in preallocated slots which are linked by index in access order, an open-addressing table
+ * (linear probing, backward-shift deletion) maps element to slot. Entries of the table are stamped with a
+ * generation, {@link #clear()} just starts a new generation so it is O(1).
+ *
+ * @author iamlotus@gmail.com
+ */
+class LongL1LRU {
+
+    private static final int NIL = -1;
+
+    private final int capacity;
+
+    // slots, linked in access order
+    private final long[] elements;
+    private final int[] pre;
+    private final int[] next;
+    private int first;
+    private int last;
+    private int size;
+
+    // slots released by second hit, and slots never used in this generation
+    private final int[] freeSlots;
+    private int freeCount;
+    private int nextUnused;
+
+    // index: element -> slot
+    private final int mask;
+    private final long[] tableElements;
+    private final int[] tableSlots;
+    private final int[] tableGenerations;
+    private int generation;
+
+    LongL1LRU(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        this.capacity = capacity;
+        this.elements = new long[capacity];
+        this.pre = new int[capacity];
+        this.next = new int[capacity];
+        this.freeSlots = new int[capacity];
+
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.tableElements = new long[tableSize];
+        this.tableSlots = new int[tableSize];
+        this.tableGenerations = new int[tableSize];
+        // generation 0 marks never used entries
+        this.generation = 1;
+
+        clear();
+    }
+
+    /**
+     * put element into l1 LRU-cache, see {@link L1LRU#put(Object)}
+     *
+     * @param element
+     * @return true if element already exists (and it is removed), false else
+     */
+    boolean put(long element) {
+        int position = indexOf(element);
+        if (position >= 0) {
+            // If element already exists, remove from queue and return it
+            int slot = tableSlots[position];
+            unlink(slot);
+            freeSlots[freeCount++] = slot;
+            delete(position);
+            return true;
+        }
+
+        int slot;
+        if (size == capacity) {
+            // If element does not exists and queue is full, remove last , add it to first
+            slot = last;
+            unlink(slot);
+            delete(indexOf(elements[slot]));
+            // entries may be shifted by deletion
+            position = indexOf(element);
+        } else if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = nextUnused++;
+        }
+
+        elements[slot] = element;
+        linkFirst(slot);
+
+        position = -position - 1;
+        tableElements[position] = element;
+        tableSlots[position] = slot;
+        tableGenerations[position] = generation;
+        return false;
+    }
+
+    void clear() {
+        generation++;
+        if (generation == 0) {
+            // wrapped, stamps of old generations may collide
+            Arrays.fill(tableGenerations, 0);
+            generation = 1;
+        }
+        first = last = NIL;
+        size = 0;
+        freeCount = 0;
+        nextUnused = 0;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long element) {
+        return indexOf(element) >= 0;
+    }
+
+    // position of element in table, or (-insertion point - 1) if absent. There is always an empty entry since load
+    // factor is at most 0.5
+    private int indexOf(long element) {
+        int i = LongL2Counter.hash(element) & mask;
+        while (tableGenerations[i] == generation) {
+            if (tableElements[i] == element) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -i - 1;
+    }
+
+    // backward-shift deletion, keep every entry reachable from its home position
+    private void delete(int position) {
+        int hole = position;
+        int i = position;
+        while (true) {
+            i = (i + 1) & mask;
+            if (tableGenerations[i] != generation) {
+                break;
+            }
+            int home = LongL2Counter.hash(tableElements[i]) & mask;
+            // move entry i to hole if its home is not in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                tableElements[hole] = tableElements[i];
+                tableSlots[hole] = tableSlots[i];
+                hole = i;
+            }
+        }
+        tableGenerations[hole] = 0;
+    }
+
+    private void linkFirst(int slot) {
+        pre[slot] = NIL;
+        next[slot] = first;
+        if (first != NIL) {
+            pre[first] = slot;
+        }
+        first = slot;
+        if (last == NIL) {
+            last = slot;
+        }
+        size++;
+    }
+
+    private void unlink(int slot) {
+        int p = pre[slot];
+        int n = next[slot];
+        if (p != NIL) {
+            next[p] = n;
+        } else {
+            first = n;
+        }
+        if (n != NIL) {
+            pre[n] = p;
+        } else {
+            last = p;
+        }
+        size--;
+    }
+}
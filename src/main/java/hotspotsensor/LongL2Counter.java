@@ -0,0 +1,178 @@
+package hotspotsensor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link L2Counter} of primitive long elements for {@link HotspotSensor.OfLong}, an open-addressing table (linear
+ * probing) of long elements and int counts, nothing is allocated except by {@link #getElements()}.
+ * <p>
+ * A count of 0 marks an empty entry, occupied positions are also recorded in insertion order so that
+ * {@link #clear()} and {@link #getElements()} cost is proportional to size rather than table size.
+ *
+ * @author iamlotus@gmail.com
+ */
+class LongL2Counter {
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final long[] elements;
+
+    private final int[] counts;
+
+    // occupied positions of table
+    private final int[] positions;
+
+    private int size;
+
+    LongL2Counter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        this.capacity = capacity;
+
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.elements = new long[tableSize];
+        this.counts = new int[tableSize];
+        this.positions = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * increase counter of element if present
+     *
+     * @param element
+     * @return true if present, false else
+     */
+    boolean incIfPresent(long element) {
+        return incIfPresent(element, 1);
+    }
+
+    /**
+     * add delta to counter of element if present
+     *
+     * @param element
+     * @param delta
+     * @return true if present, false else
+     */
+    boolean incIfPresent(long element, int delta) {
+        int i = indexOf(element);
+        if (i < 0) {
+            return false;
+        }
+        counts[i] += delta;
+        return true;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * add element and set counter to 1 if element is absent and counter is not full.
+     *
+     * @param element
+     * @return true if element is absent and counter is not full, false else
+     */
+    boolean addIfAbsentAndNotFull(long element) {
+        return addIfAbsentAndNotFull(element, 1);
+    }
+
+    /**
+     * add element and set counter to count if element is absent and counter is not full.
+     *
+     * @param element
+     * @param count   positive
+     * @return true if element is absent and counter is not full, false else
+     */
+    boolean addIfAbsentAndNotFull(long element, int count) {
+        if (isFull()) {
+            return false;
+        }
+        int i = indexOf(element);
+        if (i >= 0) {
+            return false;
+        }
+        i = -i - 1;
+        elements[i] = element;
+        counts[i] = count;
+        positions[size++] = i;
+        return true;
+    }
+
+    /**
+     * @param element
+     * @return count of element, 0 if absent
+     */
+    int get(long element) {
+        int i = indexOf(element);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            counts[positions[i]] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * get all element and count number, in insertion order. Elements are boxed here, once per window.
+     *
+     * @return entries
+     */
+    List<Entry<Long>> getElements() {
+        List<Entry<Long>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int position = positions[i];
+            result.add(new Entry<>(elements[position], counts[position]));
+        }
+        return result;
+    }
+
+    /**
+     * Add all elements to message, counts are plus the one recorded by L1LRU, nothing is allocated.
+     *
+     * @param message
+     */
+    void copyTo(ClientMessage message) {
+        for (int i = 0; i < size; i++) {
+            int position = positions[i];
+            message.add(elements[position], counts[position] + 1);
+        }
+    }
+
+    // position of element, or (-insertion point - 1) if absent. load factor is at most 0.5
+    private int indexOf(long element) {
+        int i = hash(element) & mask;
+        while (counts[i] != 0) {
+            if (elements[i] == element) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -i - 1;
+    }
+
+    // murmur3 fmix64, consecutive ids spread over the whole table
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(getElements());
+    }
+}
@@ -0,0 +1,185 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Exact {@link ServerCounter} of long elements for {@link HotspotSensor.OfLong}, an open-addressing table (linear
+ * probing, backward-shift deletion) of long elements and int counts which doubles when half full. No object is
+ * allocated per element, unlike {@link HashServerCounter}.
+ *
+ * @author iamlotus@gmail.com
+ */
+class LongServerCounter implements ServerCounter<Long> {
+
+    private static final int INITIAL_TABLE_SIZE = 256;
+
+    private long[] elements;
+
+    // 0 marks an empty entry
+    private int[] counts;
+
+    private int mask;
+
+    private int size;
+
+    LongServerCounter() {
+        this.elements = new long[INITIAL_TABLE_SIZE];
+        this.counts = new int[INITIAL_TABLE_SIZE];
+        this.mask = INITIAL_TABLE_SIZE - 1;
+        this.size = 0;
+    }
+
+    static ServerCounter.Factory<Long> factory() {
+        return new ServerCounter.Factory<Long>() {
+            @Override
+            public ServerCounter<Long> createWindowCounter() {
+                return new LongServerCounter();
+            }
+
+            @Override
+            public ServerCounter<Long> createAggregateCounter() {
+                return new LongServerCounter();
+            }
+        };
+    }
+
+    @Override
+    public void merge(Long element, int count) {
+        merge(element.longValue(), count);
+    }
+
+    void merge(long element, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int i = indexOf(element);
+        if (i >= 0) {
+            counts[i] += count;
+            return;
+        }
+
+        i = -i - 1;
+        elements[i] = element;
+        counts[i] = count;
+        if (++size * 2 > counts.length) {
+            resize(counts.length * 2);
+        }
+    }
+
+    /**
+     * @param element
+     * @return count of element, 0 if absent
+     */
+    int get(long element) {
+        int i = indexOf(element);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public void subtract(ServerCounter<Long> other) {
+        LongServerCounter that = (LongServerCounter) other;
+        for (int j = 0; j < that.counts.length; j++) {
+            if (that.counts[j] != 0) {
+                int i = indexOf(that.elements[j]);
+                if (i >= 0 && (counts[i] -= that.counts[j]) <= 0) {
+                    delete(i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Set<? extends Entry<Long>> filterGreaterThanOrEqualsTo(int threshold) {
+        Set<Entry<Long>> result = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0 && counts[i] >= threshold) {
+                result.add(new Entry<>(elements[i], counts[i]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Entry<Long>> top(int threshold, int k) {
+        TopK<Long> topK = new TopK<>(k);
+        for (int i = 0; i < counts.length; i++) {
+            int count = counts[i];
+            // box admitted elements only
+            if (count != 0 && count >= threshold && topK.accepts(count, count)) {
+                topK.offer(elements[i], count, count);
+            }
+        }
+        return topK.toList();
+    }
+
+    @Override
+    public void forEach(ObjIntConsumer<? super Long> action) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                action.accept(elements[i], counts[i]);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(counts, 0);
+            size = 0;
+        }
+    }
+
+    private int indexOf(long element) {
+        int i = LongL2Counter.hash(element) & mask;
+        while (counts[i] != 0) {
+            if (elements[i] == element) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -i - 1;
+    }
+
+    // keep every entry reachable from its home position
+    private void delete(int position) {
+        int hole = position;
+        int i = position;
+        while (true) {
+            i = (i + 1) & mask;
+            if (counts[i] == 0) {
+                break;
+            }
+            int home = LongL2Counter.hash(elements[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                elements[hole] = elements[i];
+                counts[hole] = counts[i];
+                hole = i;
+            }
+        }
+        counts[hole] = 0;
+        size--;
+    }
+
+    private void resize(int tableSize) {
+        long[] oldElements = elements;
+        int[] oldCounts = counts;
+        elements = new long[tableSize];
+        counts = new int[tableSize];
+        mask = tableSize - 1;
+        for (int j = 0; j < oldCounts.length; j++) {
+            if (oldCounts[j] != 0) {
+                int i = -indexOf(oldElements[j]) - 1;
+                elements[i] = oldElements[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package hotspotsensor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link SummaryTransport} in the same process, see {@link SummaryTransport#loopback()}.
+ *
+ * @author iamlotus@gmail.com
+ */
+class LoopbackSummaryTransport implements SummaryTransport {
+
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void send(byte[] summary) {
+        for (Consumer<byte[]> receiver : receivers) {
+            receiver.accept(summary);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        if (receiver == null) {
+            throw new NullPointerException("receiver");
+        }
+        receivers.add(receiver);
+    }
+}
@@ -35,6 +35,8 @@ public class MBeanNotificationHandler<E> implements NotificationHandler<E> {
 
         Map<T, Integer> getEntrySet();
 
+        Map<T, Integer> getEmergingSet();
+
         long getTotalCount();
     }
 
@@ -63,6 +65,13 @@ public class MBeanNotificationHandler<E> implements NotificationHandler<E> {
                 : notification.getEntrySet().stream().collect(Collectors.toMap(e -> e.getElement(), e -> e.getCount()));
         }
 
+        @Override
+        public Map<E, Integer> getEmergingSet() {
+            return notification == null
+                ? Collections.emptyMap()
+                : notification.getEmergingSet().stream().collect(Collectors.toMap(Entry::getElement, Entry::getCount));
+        }
+
         @Override
         public long getTotalCount() {
             return notification == null ? 0 : notification.getTotalCount();
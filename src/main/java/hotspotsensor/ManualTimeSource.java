@@ -0,0 +1,36 @@
+package hotspotsensor;
+
+/**
+ * {@link TimeSource} which only moves when it is told to, for tests and simulations.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class ManualTimeSource implements TimeSource {
+
+    private volatile long currentTimeMillis;
+
+    public ManualTimeSource() {
+        this(0);
+    }
+
+    public ManualTimeSource(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * Move time forward
+     *
+     * @param millis milliseconds, not negative
+     */
+    public synchronized void advance(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis:" + millis);
+        }
+        currentTimeMillis += millis;
+    }
+}
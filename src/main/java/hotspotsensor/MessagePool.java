@@ -0,0 +1,59 @@
+package hotspotsensor;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pool of {@link ClientMessage}s of a collector. Messages are taken by the holder of the collector only, and released
+ * by consumer threads to a lock-free stack which the owner grabs as a whole when its private free list is empty, so
+ * taking never races with another taker.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class MessagePool {
+
+    private final boolean ofLong;
+
+    // owned by the taker
+    private ClientMessage free;
+
+    // pushed by consumers
+    private final AtomicReference<ClientMessage> released;
+
+    private int created;
+
+    MessagePool(boolean ofLong) {
+        this.ofLong = ofLong;
+        this.released = new AtomicReference<>();
+    }
+
+    ClientMessage take() {
+        if (free == null) {
+            free = released.getAndSet(null);
+        }
+        if (free == null) {
+            created++;
+            return new ClientMessage(this, ofLong);
+        }
+        ClientMessage message = free;
+        free = message.next;
+        message.next = null;
+        return message;
+    }
+
+    void release(ClientMessage message) {
+        while (true) {
+            ClientMessage head = released.get();
+            message.next = head;
+            if (released.compareAndSet(head, message)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of messages created by this pool, for test purpose
+     */
+    int created() {
+        return created;
+    }
+}
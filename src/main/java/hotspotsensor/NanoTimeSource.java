@@ -0,0 +1,25 @@
+package hotspotsensor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TimeSource} derived from {@link System#nanoTime()}, see {@link TimeSource#nanoTime()}.
+ *
+ * @author iamlotus@gmail.com
+ */
+class NanoTimeSource implements TimeSource {
+
+    private final long originMillis;
+
+    private final long originNanos;
+
+    NanoTimeSource() {
+        this.originMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return originMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - originNanos);
+    }
+}
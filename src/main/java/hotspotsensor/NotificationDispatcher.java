@@ -0,0 +1,197 @@
+package hotspotsensor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Deliver notifications to one {@link NotificationHandler} on an {@link Executor}, so that a slow handler does not
+ * stall the consumer thread. Notifications are conflated: at most one is pending per handler, a newer one replaces
+ * it, so a slow handler skips to the latest notification instead of building a backlog. Deltas of the latest one
+ * are rebased on the last handled one, so that skipped changes are not lost. At most one task of a handler runs at a
+ * time, notifications are handled in order.
+ * <p>
+ * Lag of a notification is the time from its dispatch (the dispatch of the oldest skipped one, if conflated) to the
+ * start of its handling, it includes waiting in the executor and for the previous notification.
+ *
+ * @author iamlotus@gmail.com
+ */
+public final class NotificationDispatcher<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final NotificationHandler<T> handler;
+
+    private final Executor executor;
+
+    private final AtomicReference<Pending<T>> pending;
+
+    // a drain task is submitted or running
+    private final AtomicBoolean scheduled;
+
+    private final Runnable drainTask = this::drain;
+
+    // written by consumer threads under the lock of coordinator
+    private volatile long dispatchedCount, conflatedCount, rejectedCount;
+
+    // written by the draining thread only, one at a time
+    private volatile long handledCount, failedCount, lastLagNanos, maxLagNanos;
+
+    NotificationDispatcher(NotificationHandler<T> handler, Executor executor) {
+        if (handler == null) {
+            throw new NullPointerException("handler");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.handler = handler;
+        this.executor = executor;
+        this.pending = new AtomicReference<>();
+        this.scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Called by consumer threads under the lock of coordinator.
+     *
+     * @param notification
+     */
+    void dispatch(NotificationHandler.Notification<T> notification) {
+        dispatchedCount++;
+        long now = System.nanoTime();
+        while (true) {
+            Pending<T> older = pending.get();
+            Pending<T> next = older == null
+                ? new Pending<>(notification, now)
+                // deltas are rebased on the older one, lag counts from the older one
+                : new Pending<>(HotspotSensor.NotificationImpl.conflate(older.notification, notification),
+                    older.dispatchNanos);
+            if (pending.compareAndSet(older, next)) {
+                if (older != null) {
+                    conflatedCount++;
+                }
+                break;
+            }
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RuntimeException e) {
+                // e.g. executor is shutdown or saturated, retry on next dispatch
+                scheduled.set(false);
+                rejectedCount++;
+                LOG.warn("notification executor rejects handler {}", handler, e);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Pending<T> next = pending.getAndSet(null);
+            if (next == null) {
+                scheduled.set(false);
+                // a notification may have arrived before the flag is reset
+                if (pending.get() == null || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            long lag = System.nanoTime() - next.dispatchNanos;
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+            try {
+                handler.handleNotification(next.notification);
+                handledCount++;
+            } catch (Throwable t) {
+                failedCount++;
+                LOG.error("notification handler {} fails", handler, t);
+            }
+        }
+    }
+
+    public NotificationHandler<T> getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return number of notifications dispatched to the handler
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * @return number of notifications replaced by a newer one before handled
+     */
+    public long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    /**
+     * @return number of times the executor rejects the task
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return number of notifications handled, including failed ones
+     */
+    public long getHandledCount() {
+        return handledCount + failedCount;
+    }
+
+    /**
+     * @return number of notifications whose handling throws
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return lag of the last handled notification in nanoseconds
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    /**
+     * @return max lag of all handled notifications in nanoseconds
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "[" +
+            "handler=" + handler +
+            ", dispatched=" + dispatchedCount +
+            ", conflated=" + conflatedCount +
+            ", handled=" + getHandledCount() +
+            ", failed=" + failedCount +
+            ", lastLagNanos=" + lastLagNanos +
+            ", maxLagNanos=" + maxLagNanos +
+            ']';
+    }
+
+    private static class Pending<T> {
+        final NotificationHandler.Notification<T> notification;
+
+        final long dispatchNanos;
+
+        Pending(NotificationHandler.Notification<T> notification, long dispatchNanos) {
+            this.notification = notification;
+            this.dispatchNanos = dispatchNanos;
+        }
+    }
+}
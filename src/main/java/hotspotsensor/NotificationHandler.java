@@ -1,5 +1,6 @@
 package hotspotsensor;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -44,6 +45,29 @@ public interface NotificationHandler<E> {
          */
         Set<Entry<T>> getEntrySet();
 
+        /**
+         * Entries which become hot since the last notification handled by the same handler.
+         *
+         * @return entries, unmodifiable, empty if none
+         */
+        List<Entry<T>> getAdded();
+
+        /**
+         * Entries which are not hot any more since the last notification handled by the same handler, with their last
+         * counts.
+         *
+         * @return entries, unmodifiable, empty if none
+         */
+        List<Entry<T>> getRemoved();
+
+        /**
+         * Entries which are still hot but whose count changes since the last notification handled by the same
+         * handler, with new counts.
+         *
+         * @return entries, unmodifiable, empty if none
+         */
+        List<Entry<T>> getChanged();
+
         /**
          * Total count
          * {@link HotspotSensor#increase(Object)} is invoked since last {@link NotificationHandler#handleNotification(Notification)}
@@ -51,5 +75,24 @@ public interface NotificationHandler<E> {
          * @return total count
          */
         long getTotalCount();
+
+        /**
+         * Score of a hot element, it is the count weighted by {@link WindowWeighting} or the count itself if no
+         * weighting is configured. See {@link Entry#getScore()}.
+         *
+         * @param element
+         * @return score, 0 if element is not hot
+         */
+        double getScore(T element);
+
+        /**
+         * Elements which are not hot yet but whose count is growing fast between the latest windows, see
+         * {@link HostspotSensorBuilder#setEmergingDetection(double, int)}. Count of an {@link Entry} is the count in
+         * the latest window, score is the growth of that count over its moving average. Empty if emerging detection is
+         * disabled.
+         *
+         * @return set
+         */
+        Set<Entry<T>> getEmergingSet();
     }
 }
@@ -3,6 +3,7 @@ package hotspotsensor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 /**
  *
@@ -80,13 +81,18 @@ public class OpenAddressingL2Counter<E> implements L2Counter<E> {
 
     @Override
     public boolean incIfPresent(E element) {
+        return incIfPresent(element, 1);
+    }
+
+    @Override
+    public boolean incIfPresent(E element, int delta) {
         int hashCode = element.hashCode();
         int pos = indexOf(element, hashCode);
 
         if (pos < 0) {
             return false;
         } else {
-            counters[pos]++;
+            counters[pos] += delta;
             return true;
         }
 
@@ -100,6 +106,11 @@ public class OpenAddressingL2Counter<E> implements L2Counter<E> {
 
     @Override
     public boolean addIfAbsentAndNotFull(E element) {
+        return addIfAbsentAndNotFull(element, 1);
+    }
+
+    @Override
+    public boolean addIfAbsentAndNotFull(E element, int count) {
         if (isFull()) {
             return false;
         } else {
@@ -111,7 +122,7 @@ public class OpenAddressingL2Counter<E> implements L2Counter<E> {
                 pos = -pos - 1;
                 hashCodes[pos] = hashCode;
                 elements[pos] = element;
-                counters[pos]++;
+                counters[pos] = count;
                 size++;
                 return true;
             }
@@ -131,6 +142,19 @@ public class OpenAddressingL2Counter<E> implements L2Counter<E> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super E> action) {
+        int sum = 0;
+        for (int i = 0; i < tableSize && sum < size; i++) {
+            if (elements[i] != null) {
+                action.accept((E) elements[i], counters[i]);
+                sum++;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public List<Entry<E>> getElements() {
         List<Entry<E>> result = new ArrayList<>(size);
 
@@ -0,0 +1,179 @@
+package hotspotsensor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer ring buffer, used as channel between {@link Collector}s and
+ * consumer thread of {@link HotspotSensor}.
+ * <p>
+ * Every slot has a sequence number (Vyukov's bounded queue): producers claim a position by CAS on {@code tail} and
+ * publish the slot by advancing its sequence, the only consumer drains published slots in batch and hands them back
+ * by advancing sequence one lap further. Producers never block, {@link #offer(Object)} fails when buffer is full.
+ * With {@link WaitStrategy#PARK} producers publish by a volatile write rather than a lazy one, which is what makes
+ * the check of a parked consumer reliable.
+ *
+ * @author iamlotus@gmail.com
+ */
+class RingBufferChannel<E> {
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail;
+
+    private final WaitStrategy waitStrategy;
+
+    // written and read by consumer only
+    private long head;
+
+    // head after the last drain, for size() read by other threads
+    private volatile long drained;
+
+    // consumer thread when it is parked
+    private volatile Thread waiter;
+
+    RingBufferChannel(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+
+        if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy");
+        }
+
+        int roundedCapacity = Integer.highestOneBit(capacity);
+        if (roundedCapacity < capacity) {
+            roundedCapacity <<= 1;
+        }
+
+        this.capacity = roundedCapacity;
+        this.mask = roundedCapacity - 1;
+        this.buffer = new AtomicReferenceArray<>(roundedCapacity);
+        this.sequences = new AtomicLongArray(roundedCapacity);
+        for (int i = 0; i < roundedCapacity; i++) {
+            sequences.set(i, i);
+        }
+        this.tail = new AtomicLong(0);
+        this.head = 0;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Append element, never blocks.
+     *
+     * @param element
+     * @return true if appended, false if channel is full
+     */
+    boolean offer(E element) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // the slot of previous lap has not been consumed yet
+                return false;
+            }
+            // else another producer has claimed the position, retry
+        }
+
+        buffer.lazySet(index, element);
+        if (waitStrategy == WaitStrategy.PARK) {
+            // a volatile write orders the publish before reading waiter, as await() orders setting waiter before
+            // checking isEmpty(), so either the consumer sees the element or the producer sees the consumer parked
+            sequences.set(index, position + 1);
+        } else {
+            sequences.lazySet(index, position + 1);
+        }
+
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Consume at most {@code limit} published elements, called by the consumer thread only.
+     *
+     * @param consumer
+     * @param limit
+     * @return number of consumed elements
+     */
+    int drain(Consumer<? super E> consumer, int limit) {
+        int count = 0;
+        while (count < limit) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                // empty, or the producer of head has not published yet
+                break;
+            }
+
+            E element = buffer.get(index);
+            buffer.lazySet(index, null);
+            // hand the slot back to producers of next lap
+            sequences.lazySet(index, head + capacity);
+            head++;
+            count++;
+
+            consumer.accept(element);
+        }
+        if (count > 0) {
+            drained = head;
+        }
+        return count;
+    }
+
+    /**
+     * Wait for elements by {@link WaitStrategy}, called by the consumer thread only when {@link #drain} returns 0.
+     * It may return before any element is available.
+     *
+     * @param timeoutNanos max time to park
+     */
+    void await(long timeoutNanos) {
+        switch (waitStrategy) {
+            case SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                // a volatile write, ordered before reading the sequence in isEmpty(), see offer()
+                waiter = Thread.currentThread();
+                if (isEmpty()) {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+                waiter = null;
+        }
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * @return number of elements claimed by producers but not drained, approximate if called by other threads
+     */
+    int size() {
+        long size = tail.get() - drained;
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
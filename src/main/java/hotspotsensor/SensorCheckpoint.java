@@ -0,0 +1,361 @@
+package hotspotsensor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint of {@link HotspotSensor.ServerWindow}s and the hot set in a memory-mapped file, so that a restarted
+ * sensor is warm at once instead of blind for a whole horizon.
+ * <p>
+ * The file is a header followed by one region per shard and one region of the hot set. A shard region is a log owned
+ * by the consumer thread of the shard, windows changed since the last checkpoint are appended as
+ * {@link WindowSummary} records, a newer record of a window supersedes the older ones. When a region is full it is
+ * rewritten with the live windows only. The hot set region holds one record which is rewritten every time. Every
+ * record is framed by its length and CRC32, loading stops at the first torn record of a region.
+ * <p>
+ * A run writes a new file next to the checkpoint, and moves it over the checkpoint of the last run atomically once
+ * every region is flushed, so a run which crashes before that leaves the last checkpoint intact. Every region is
+ * mapped on its own, so that flushing a region forces only its pages to the storage device. The hot set is written
+ * under the lock of coordinator, it is flushed later by the consumer thread of a shard, outside of the lock.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class SensorCheckpoint<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SensorCheckpoint.class);
+
+    private static final int MAGIC = 0x48535043;
+
+    private static final int VERSION = 1;
+
+    // magic, version, windowSizeMills, regions, regionSize
+    private static final int HEADER_SIZE = 20;
+
+    // length and CRC32 of a record, a length of 0 ends a region
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path file;
+
+    // file of this run until it is complete
+    private final Path newFile;
+
+    private final KeyCodec<T> keyCodec;
+
+    private final int intervalWindows;
+
+    private final int regionSize;
+
+    private List<Region> regions;
+
+    // null until opened
+    private MappedByteBuffer header;
+
+    // hot set is written but not flushed
+    private volatile boolean hotSetPending;
+
+    private boolean closed;
+
+    // regions not flushed yet, the new file replaces the checkpoint when none is left
+    private final AtomicInteger unflushed;
+
+    private volatile boolean installed;
+
+    SensorCheckpoint(Path file, KeyCodec<T> keyCodec, int intervalWindows, int regionSize) {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (keyCodec == null) {
+            throw new NullPointerException("keyCodec");
+        }
+        if (intervalWindows <= 0) {
+            throw new IllegalArgumentException("intervalWindows:" + intervalWindows);
+        }
+        if (regionSize <= RECORD_HEADER_SIZE + 4) {
+            throw new IllegalArgumentException("regionSize:" + regionSize);
+        }
+        this.file = file;
+        this.newFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.keyCodec = keyCodec;
+        this.intervalWindows = intervalWindows;
+        this.regionSize = regionSize;
+        this.unflushed = new AtomicInteger();
+    }
+
+    int getIntervalWindows() {
+        return intervalWindows;
+    }
+
+    /**
+     * Load the checkpoint of the last run, then create a new file for {@code shardsNumber} shards of this run. The
+     * checkpoint is replaced once every region of the new file is flushed. A file of another format or window size is
+     * ignored.
+     *
+     * @param windowSizeMills
+     * @param shardsNumber
+     * @return records of the last run, the last one of every window of every shard, and the hot set if any
+     * @throws UncheckedIOException if the file can not be mapped
+     */
+    Restored<T> open(int windowSizeMills, int shardsNumber) {
+        Restored<T> restored = new Restored<>();
+        try {
+            if (Files.exists(file)) {
+                load(Files.readAllBytes(file), windowSizeMills, restored);
+            }
+
+            int regionsNumber = shardsNumber + 1;
+            long fileSize = HEADER_SIZE + (long) regionsNumber * regionSize;
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("size of checkpoint:" + fileSize);
+            }
+            MappedByteBuffer buffer;
+            List<Region> newRegions = new ArrayList<>(regionsNumber);
+            // a file left by a run which crashed before its checkpoint is complete is overwritten
+            try (FileChannel channel = FileChannel.open(newFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                for (int i = 0; i < regionsNumber; i++) {
+                    newRegions.add(new Region(
+                        channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (long) i * regionSize, regionSize)));
+                }
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, windowSizeMills);
+            buffer.putInt(12, regionsNumber);
+            buffer.putInt(16, regionSize);
+
+            regions = newRegions;
+            header = buffer;
+            unflushed.set(regionsNumber);
+        } catch (IOException e) {
+            throw new UncheckedIOException("fail to open checkpoint " + file, e);
+        }
+        return restored;
+    }
+
+    /**
+     * @param shard index of shard
+     * @return region of the shard, written by its consumer thread only
+     */
+    Region region(int shard) {
+        return regions.get(shard);
+    }
+
+    /**
+     * Replace the hot set of the checkpoint, called under the lock of coordinator. It is flushed by
+     * {@link #flushHotSet()}.
+     *
+     * @param summary hot entries, window start is the one of the youngest window of the calculation
+     */
+    void writeHotSet(WindowSummary<T> summary) {
+        Region region = regions.get(regions.size() - 1);
+        region.reset();
+        if (!region.append(summary)) {
+            LOG.warn("hot set of {} entries overflows checkpoint region", summary.getEntries().size());
+        }
+        hotSetPending = true;
+    }
+
+    /**
+     * Flush the hot set if it is written since the last flush, called by consumer threads out of the lock of
+     * coordinator.
+     */
+    void flushHotSet() {
+        if (hotSetPending) {
+            hotSetPending = false;
+            regions.get(regions.size() - 1).flush();
+        }
+    }
+
+    /**
+     * Flush every region and release the file, called on stop, so that the file of this run replaces the checkpoint
+     * even if the hot set is never written. Regions are not installed by later flushes. The mappings are unmapped when
+     * they are collected.
+     */
+    synchronized void close() {
+        if (header == null || closed) {
+            return;
+        }
+        for (Region region : regions) {
+            region.flush();
+        }
+        closed = true;
+        header = null;
+    }
+
+    private synchronized void install() {
+        if (installed || closed) {
+            return;
+        }
+        try {
+            header.force();
+            // the mapping follows the file
+            Files.move(newFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            installed = true;
+        } catch (IOException e) {
+            LOG.warn("fail to replace checkpoint {}, retry on next flush", file, e);
+        }
+    }
+
+    private void load(byte[] bytes, int windowSizeMills, Restored<T> restored) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            LOG.warn("ignore checkpoint {} of unknown format", file);
+            return;
+        }
+        if (buffer.getInt(8) != windowSizeMills) {
+            LOG.warn("ignore checkpoint {} of windowSizeMills {}", file, buffer.getInt(8));
+            return;
+        }
+
+        int regionsNumber = buffer.getInt(12);
+        int oldRegionSize = buffer.getInt(16);
+        if (regionsNumber <= 0 || oldRegionSize <= 0
+            || HEADER_SIZE + (long) regionsNumber * oldRegionSize > bytes.length) {
+            LOG.warn("ignore truncated checkpoint {}", file);
+            return;
+        }
+
+        for (int i = 0; i < regionsNumber; i++) {
+            int start = HEADER_SIZE + i * oldRegionSize;
+            List<WindowSummary<T>> records = readRegion(bytes, start, start + oldRegionSize);
+            if (i == regionsNumber - 1) {
+                restored.hotSet = records.isEmpty() ? null : records.get(records.size() - 1);
+            } else {
+                // the last record of a window wins
+                Map<Long, WindowSummary<T>> windows = new LinkedHashMap<>();
+                for (WindowSummary<T> record : records) {
+                    windows.put(record.getWindowStartMillis(), record);
+                }
+                restored.windows.addAll(windows.values());
+            }
+        }
+    }
+
+    private List<WindowSummary<T>> readRegion(byte[] bytes, int start, int end) {
+        List<WindowSummary<T>> result = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        int position = start;
+        while (position + RECORD_HEADER_SIZE <= end) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > end - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, position + RECORD_HEADER_SIZE, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LOG.warn("torn record at {} of checkpoint {}", position, file);
+                break;
+            }
+            try {
+                byte[] record = new byte[length];
+                System.arraycopy(bytes, position + RECORD_HEADER_SIZE, record, 0, length);
+                result.add(WindowSummary.decode(record, keyCodec));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("malformed record at {} of checkpoint {}", position, file, e);
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return result;
+    }
+
+
+    /**
+     * Append-only log of records in a slice of the file.
+     */
+    final class Region {
+
+        private final MappedByteBuffer buffer;
+
+        private final CRC32 crc = new CRC32();
+
+        private int position;
+
+        private boolean flushed;
+
+        Region(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            buffer.putInt(0, 0);
+        }
+
+        /**
+         * @param summary
+         * @return false if the region is full
+         */
+        boolean append(WindowSummary<T> summary) {
+            byte[] bytes = summary.encode(keyCodec);
+            // keep room for the end mark
+            if ((long) position + RECORD_HEADER_SIZE + bytes.length + 4 > buffer.capacity()) {
+                return false;
+            }
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+
+            ByteBuffer target = buffer.duplicate();
+            target.position(position + RECORD_HEADER_SIZE);
+            target.put(bytes);
+            int next = position + RECORD_HEADER_SIZE + bytes.length;
+            buffer.putInt(next, 0);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            // length at last, so a reader never sees a record before it is complete
+            buffer.putInt(position, bytes.length);
+            position = next;
+            return true;
+        }
+
+        /**
+         * Drop all records.
+         */
+        void reset() {
+            buffer.putInt(0, 0);
+            position = 0;
+        }
+
+        /**
+         * Force records of this region to the storage device, the file of this run replaces the checkpoint of the last
+         * run when every region is flushed once.
+         */
+        void flush() {
+            buffer.force();
+            boolean first;
+            // the hot set region is flushed by consumer threads of all shards
+            synchronized (this) {
+                first = !flushed;
+                flushed = true;
+            }
+            if (first) {
+                unflushed.decrementAndGet();
+            }
+            if (!installed && unflushed.get() == 0) {
+                install();
+            }
+        }
+    }
+
+
+    static class Restored<T> {
+        // the last record of every window of every shard of the last run
+        final List<WindowSummary<T>> windows = new ArrayList<>();
+
+        // null if none
+        WindowSummary<T> hotSet;
+    }
+}
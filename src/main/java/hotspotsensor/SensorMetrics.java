@@ -0,0 +1,394 @@
+package hotspotsensor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of the detection pipeline of a {@link HotspotSensor}, read by
+ * {@link HotspotSensor#getMetrics()} or by JMX after {@link #registerMBean(String)}.
+ * <p>
+ * Nothing is recorded per access: collectors count L1 promotions and L2 rejections in plain fields of their window
+ * and report them with the submitted {@link ClientMessage}, the rest is recorded by consumer threads once per message
+ * or calculation. Counters are {@link LongAdder}s, so submitting threads do not contend on a shared cache line.
+ *
+ * @author iamlotus@gmail.com
+ */
+public final class SensorMetrics implements SensorMetricsMBean {
+
+    private final LongAdder submittedWindows = new LongAdder();
+
+    private final LongAdder submittedElements = new LongAdder();
+
+    private final LongAdder l1Promotions = new LongAdder();
+
+    private final LongAdder l2Rejections = new LongAdder();
+
+    private final LongAdder overflowDrops = new LongAdder();
+
+    private final LongAdder outOfDateDrops = new LongAdder();
+
+    private final LongAdder duplicatedDrops = new LongAdder();
+
+    private final Histogram consumerLagWindows = new Histogram();
+
+    private final Histogram mergeNanos = new Histogram();
+
+    private final Histogram notifyNanos = new Histogram();
+
+    // messages in channels of all shards
+    private final LongSupplier channelDepth;
+
+    // capacities of collectors, null if they are fixed
+    private final CapacityBudget capacityBudget;
+
+    SensorMetrics(LongSupplier channelDepth, CapacityBudget capacityBudget) {
+        if (channelDepth == null) {
+            throw new NullPointerException("channelDepth");
+        }
+        this.channelDepth = channelDepth;
+        this.capacityBudget = capacityBudget;
+    }
+
+    /**
+     * Register as MBean {@code hotspotsensor:type=SensorMetrics,name=<name>} of the platform MBean server.
+     *
+     * @param name name of the sensor, unique in the JVM
+     * @return name of the MBean
+     * @throws IllegalStateException if the name is invalid or registered
+     */
+    public ObjectName registerMBean(String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(SensorMetrics.class.getPackage().getName()
+                + ":type=" + SensorMetrics.class.getSimpleName() + ",name=" + ObjectName.quote(name));
+            mbs.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("fail to register metrics of " + name, e);
+        }
+    }
+
+    /**
+     * Record a window submitted by a collector, before it is split among shards.
+     */
+    void recordSubmission(ClientMessage message) {
+        submittedWindows.increment();
+        submittedElements.add(message.size());
+        if (message.getL1Promotions() > 0) {
+            l1Promotions.add(message.getL1Promotions());
+        }
+        if (message.getL2Rejections() > 0) {
+            l2Rejections.add(message.getL2Rejections());
+        }
+    }
+
+    void recordOverflowDrop() {
+        overflowDrops.increment();
+    }
+
+    void recordOutOfDateDrop() {
+        outOfDateDrops.increment();
+    }
+
+    void recordDuplicatedDrop() {
+        duplicatedDrops.increment();
+    }
+
+    void recordConsumerLag(long windows) {
+        consumerLagWindows.record(windows);
+    }
+
+    void recordMerge(long nanos) {
+        mergeNanos.record(nanos);
+    }
+
+    void recordNotify(long nanos) {
+        notifyNanos.record(nanos);
+    }
+
+    /**
+     * @return number of windows submitted by collectors, including dropped ones
+     */
+    @Override
+    public long getSubmittedWindows() {
+        return submittedWindows.sum();
+    }
+
+    /**
+     * @return number of elements of submitted windows
+     */
+    @Override
+    public long getSubmittedElements() {
+        return submittedElements.sum();
+    }
+
+    /**
+     * @return number of elements moved from L1LRU to L2Counter on their second access in a window
+     */
+    @Override
+    public long getL1Promotions() {
+        return l1Promotions.sum();
+    }
+
+    /**
+     * @return number of elements accessed twice in a window but not counted because L2Counter is full
+     */
+    @Override
+    public long getL2Rejections() {
+        return l2Rejections.sum();
+    }
+
+    /**
+     * @return number of messages dropped because the channel of a shard is full
+     */
+    @Override
+    public long getOverflowDrops() {
+        return overflowDrops.sum();
+    }
+
+    /**
+     * @return number of messages dropped because their window is older than all windows of the shard
+     */
+    @Override
+    public long getOutOfDateDrops() {
+        return outOfDateDrops.sum();
+    }
+
+    /**
+     * @return number of messages dropped because their collector has submitted the window
+     */
+    @Override
+    public long getDuplicatedDrops() {
+        return duplicatedDrops.sum();
+    }
+
+    /**
+     * @return number of messages waiting in channels of all shards, approximate
+     */
+    @Override
+    public long getChannelDepth() {
+        return channelDepth.getAsLong();
+    }
+
+    /**
+     * @return capacity of L1LRUs of all live collectors chosen by adaptive capacity, 0 if capacities are fixed
+     */
+    @Override
+    public long getL1Capacity() {
+        return capacityBudget == null ? 0 : capacityBudget.getL1Entries();
+    }
+
+    /**
+     * @return capacity of L2Counters of all live collectors chosen by adaptive capacity, 0 if capacities are fixed
+     */
+    @Override
+    public long getL2Capacity() {
+        return capacityBudget == null ? 0 : capacityBudget.getL2Entries();
+    }
+
+    /**
+     * @return max entries of L1LRUs and L2Counters of all collectors, 0 if capacities are fixed
+     */
+    @Override
+    public long getCapacityBudget() {
+        return capacityBudget == null ? 0 : capacityBudget.getMaxEntries();
+    }
+
+    /**
+     * @return number of times a collector changes its capacities
+     */
+    @Override
+    public long getResizes() {
+        return capacityBudget == null ? 0 : capacityBudget.getResizes();
+    }
+
+    @Override
+    public long getMaxConsumerLagWindows() {
+        return consumerLagWindows.getMax();
+    }
+
+    @Override
+    public long getConsumerLagWindowsP99() {
+        return consumerLagWindows.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMergeCount() {
+        return mergeNanos.getCount();
+    }
+
+    @Override
+    public double getMergeMeanNanos() {
+        return mergeNanos.getMean();
+    }
+
+    @Override
+    public long getMergeP99Nanos() {
+        return mergeNanos.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMergeMaxNanos() {
+        return mergeNanos.getMax();
+    }
+
+    @Override
+    public long getNotifyCount() {
+        return notifyNanos.getCount();
+    }
+
+    @Override
+    public double getNotifyMeanNanos() {
+        return notifyNanos.getMean();
+    }
+
+    @Override
+    public long getNotifyP99Nanos() {
+        return notifyNanos.getPercentile(0.99);
+    }
+
+    @Override
+    public long getNotifyMaxNanos() {
+        return notifyNanos.getMax();
+    }
+
+    /**
+     * @return windows between the tick of a consumer and the window of a message it consumes, 1 if collectors submit
+     * on time
+     */
+    public Histogram getConsumerLagWindows() {
+        return consumerLagWindows;
+    }
+
+    /**
+     * @return time to merge a message into windows of a shard, including windows slid by the message, in
+     * nanoseconds
+     */
+    public Histogram getMergeNanos() {
+        return mergeNanos;
+    }
+
+    /**
+     * @return time to calculate hot elements and dispatch a notification, in nanoseconds
+     */
+    public Histogram getNotifyNanos() {
+        return notifyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "[" +
+            "submittedWindows=" + getSubmittedWindows() +
+            ", l1Promotions=" + getL1Promotions() +
+            ", l2Rejections=" + getL2Rejections() +
+            ", overflowDrops=" + getOverflowDrops() +
+            ", outOfDateDrops=" + getOutOfDateDrops() +
+            ", duplicatedDrops=" + getDuplicatedDrops() +
+            ", channelDepth=" + getChannelDepth() +
+            ", l1Capacity=" + getL1Capacity() +
+            ", l2Capacity=" + getL2Capacity() +
+            ", consumerLagWindows=" + consumerLagWindows +
+            ", mergeNanos=" + mergeNanos +
+            ", notifyNanos=" + notifyNanos +
+            ']';
+    }
+
+
+    /**
+     * Histogram of non-negative values in power-of-2 buckets, so that a percentile is exact to a factor of 2. Bucket
+     * {@code i} holds values in {@code [2^(i-1), 2^i)}, bucket 0 holds 0.
+     */
+    public static final class Histogram {
+
+        private final LongAdder[] buckets;
+
+        private final LongAdder sum;
+
+        private final AtomicLong max;
+
+        Histogram() {
+            this.buckets = new LongAdder[Long.SIZE + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+            this.sum = new LongAdder();
+            this.max = new AtomicLong();
+        }
+
+        /**
+         * @param value negative values are recorded as 0
+         */
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+            sum.add(value);
+            long current;
+            // written only when max grows, which is rare
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            }
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public double getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param quantile in {@code [0, 1]}
+         * @return upper bound of the bucket of the quantile, not bigger than max, 0 if empty
+         */
+        public long getPercentile(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("quantile:" + quantile);
+            }
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long upper = i == 0 ? 0 : i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, getMax());
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "[" +
+                "count=" + getCount() +
+                ", mean=" + getMean() +
+                ", p99=" + getPercentile(0.99) +
+                ", max=" + getMax() +
+                ']';
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package hotspotsensor;
+
+/**
+ * JMX view of {@link SensorMetrics}, registered by {@link SensorMetrics#registerMBean(String)}.
+ *
+ * @author iamlotus@gmail.com
+ */
+public interface SensorMetricsMBean {
+
+    long getSubmittedWindows();
+
+    long getSubmittedElements();
+
+    long getL1Promotions();
+
+    long getL2Rejections();
+
+    long getOverflowDrops();
+
+    long getOutOfDateDrops();
+
+    long getDuplicatedDrops();
+
+    long getChannelDepth();
+
+    long getL1Capacity();
+
+    long getL2Capacity();
+
+    long getCapacityBudget();
+
+    long getResizes();
+
+    long getMaxConsumerLagWindows();
+
+    long getConsumerLagWindowsP99();
+
+    long getMergeCount();
+
+    double getMergeMeanNanos();
+
+    long getMergeP99Nanos();
+
+    long getMergeMaxNanos();
+
+    long getNotifyCount();
+
+    double getNotifyMeanNanos();
+
+    long getNotifyP99Nanos();
+
+    long getNotifyMaxNanos();
+}
@@ -0,0 +1,83 @@
+package hotspotsensor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counter of elements on server side (consumer thread of {@link HotspotSensor}), it backs every
+ * {@link HotspotSensor.ServerWindow} as well as the sum of all windows.
+ *
+ * @author iamlotus@gmail.com
+ */
+interface ServerCounter<E> {
+
+    interface Factory<T> {
+
+        /**
+         * @return counter of one {@link HotspotSensor.ServerWindow}
+         */
+        ServerCounter<T> createWindowCounter();
+
+        /**
+         * @return counter of the sum of all {@link HotspotSensor.ServerWindow}s, hot elements are filtered from it
+         */
+        ServerCounter<T> createAggregateCounter();
+    }
+
+    /**
+     * add count to element
+     *
+     * @param element
+     * @param count
+     */
+    void merge(E element, int count);
+
+    /**
+     * Subtract counts of another counter which is created by the same {@link Factory}, elements whose count drops to
+     * 0 are removed.
+     *
+     * @param other counter to subtract, its elements should have been merged to this one
+     */
+    void subtract(ServerCounter<E> other);
+
+    /**
+     * get elements whose count is greater than or equals to threshold
+     *
+     * @param threshold
+     * @return entries
+     */
+    Set<? extends Entry<E>> filterGreaterThanOrEqualsTo(int threshold);
+
+    /**
+     * get the {@code k} elements of biggest count among those whose count is greater than or equals to threshold
+     *
+     * @param threshold
+     * @param k
+     * @return entries of descending count, unmodifiable
+     */
+    default List<Entry<E>> top(int threshold, int k) {
+        TopK<E> topK = new TopK<>(k);
+        for (Entry<E> entry : filterGreaterThanOrEqualsTo(threshold)) {
+            topK.offer(entry.getElement(), entry.getCount(), entry.getCount());
+        }
+        return topK.toList();
+    }
+
+    /**
+     * Visit elements which can be enumerated and their counts, with random order. Unlike
+     * {@link #filterGreaterThanOrEqualsTo(int)}, counters which can enumerate elements allocate nothing.
+     *
+     * @param action
+     */
+    default void forEach(ObjIntConsumer<? super E> action) {
+        for (Entry<E> entry : filterGreaterThanOrEqualsTo(1)) {
+            action.accept(entry.getElement(), entry.getCount());
+        }
+    }
+
+    /**
+     * clear all elements
+     */
+    void clear();
+}
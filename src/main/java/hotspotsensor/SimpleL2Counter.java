@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 
 
@@ -38,6 +39,17 @@ public class SimpleL2Counter<E> implements L2Counter<E> {
         }
     }
 
+    @Override
+    public boolean incIfPresent(E element, int delta) {
+        MutableInt value = map.get(element);
+        if (value == null) {
+            return false;
+        } else {
+            value.add(delta);
+            return true;
+        }
+    }
+
     @Override
     public boolean isFull() {
         return map.size() == this.capacity;
@@ -54,6 +66,16 @@ public class SimpleL2Counter<E> implements L2Counter<E> {
 
     }
 
+    @Override
+    public boolean addIfAbsentAndNotFull(E element, int count) {
+        if (!map.containsKey(element) && !isFull()) {
+            map.put(element, new MutableInt(count));
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     @Override
     public void clear() {
         map.clear();
@@ -67,6 +89,13 @@ public class SimpleL2Counter<E> implements L2Counter<E> {
                   .collect(Collectors.toList());
     }
 
+    @Override
+    public void forEach(ObjIntConsumer<? super E> action) {
+        for (Map.Entry<E, MutableInt> e : map.entrySet()) {
+            action.accept(e.getKey(), e.getValue().value());
+        }
+    }
+
     @Override
     public int hashCode() {
         int result = map != null ? map.hashCode() : 0;
@@ -0,0 +1,308 @@
+package hotspotsensor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * {@link L2Counter} based on Space-Saving algorithm (Metwally, Agrawal and El Abbadi, "Efficient Computation of
+ * Frequent and Top-k Elements in Data Streams").
+ * <p>
+ * Unlike other {@link L2Counter}s, a full {@code SpaceSavingL2Counter} still accepts new element: the element with
+ * minimum count is replaced, the new element inherits its count plus one, and the inherited part is recorded as
+ * error of the new element. So {@link #addIfAbsentAndNotFull(Object)} returns true whenever element is absent, an
+ * element which becomes hot late in a window is never rejected because the counter is filled by early noise.
+ * <p>
+ * The over-estimated count only decides which element is replaced next, {@link #getElements()} and
+ * {@link #forEach(ObjIntConsumer)} report the guaranteed part {@code count - error}, so a replaced element never
+ * submits counts it inherits from the evicted one.
+ * <p>
+ * Counts are organized in a Stream-Summary: counters with the same count share a bucket and buckets are linked in
+ * ascending order of count, so both increasing and finding the minimum are O(1). Counters and buckets are allocated
+ * up front and recycled.
+ *
+ * @author iamlotus@gmail.com
+ */
+public class SpaceSavingL2Counter<E> implements L2Counter<E> {
+
+    private final int capacity;
+
+    private final Map<E, Counter<E>> map;
+
+    private final Counter<E>[] counters;
+
+    private int size;
+
+    // bucket with minimum count
+    private Bucket<E> head;
+
+    // recycled buckets, linked by next
+    private Bucket<E> freeBuckets;
+
+    @SuppressWarnings("unchecked")
+    public SpaceSavingL2Counter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new HashMap<>(capacity * 2);
+        this.counters = (Counter<E>[]) new Counter<?>[capacity];
+        for (int i = 0; i < capacity; i++) {
+            counters[i] = new Counter<>();
+            Bucket<E> bucket = new Bucket<>();
+            bucket.next = freeBuckets;
+            freeBuckets = bucket;
+        }
+        this.size = 0;
+    }
+
+    @Override
+    public boolean incIfPresent(E element) {
+        return incIfPresent(element, 1);
+    }
+
+    @Override
+    public boolean incIfPresent(E element, int delta) {
+        Counter<E> counter = map.get(element);
+        if (counter == null) {
+            return false;
+        } else {
+            increase(counter, delta);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Add element if absent, when counter is full the element with minimum count is replaced.
+     *
+     * @param element
+     * @return true if element is absent, false else
+     */
+    @Override
+    public boolean addIfAbsentAndNotFull(E element) {
+        return addIfAbsentAndNotFull(element, 1);
+    }
+
+    @Override
+    public boolean addIfAbsentAndNotFull(E element, int count) {
+        if (map.containsKey(element)) {
+            return false;
+        }
+
+        if (!isFull()) {
+            Counter<E> counter = counters[size++];
+            counter.element = element;
+            counter.count = count;
+            counter.error = 0;
+
+            // the last bucket whose count is not bigger than count
+            Bucket<E> pre = null;
+            for (Bucket<E> b = head; b != null && b.count <= count; b = b.next) {
+                pre = b;
+            }
+            if (pre == null || pre.count != count) {
+                pre = insertAfter(pre, count);
+            }
+            pre.attach(counter);
+            map.put(element, counter);
+        } else {
+            // replace the minimum
+            Counter<E> counter = head.first;
+            map.remove(counter.element);
+            counter.element = element;
+            counter.error = counter.count;
+            map.put(element, counter);
+            increase(counter, count);
+        }
+
+        return true;
+    }
+
+    /**
+     * Over-estimation of count of element, the real count is in [count - error, count].
+     *
+     * @param element
+     * @return error of element, 0 if element is absent
+     */
+    public int getError(E element) {
+        Counter<E> counter = map.get(element);
+        return counter == null ? 0 : counter.error;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        for (int i = 0; i < size; i++) {
+            counters[i].element = null;
+            counters[i].bucket = null;
+            counters[i].pre = counters[i].next = null;
+        }
+        size = 0;
+
+        while (head != null) {
+            Bucket<E> next = head.next;
+            recycle(head);
+            head = next;
+        }
+    }
+
+    /**
+     * get all element and count number, count is the guaranteed one (see {@link #getError(Object)}).
+     *
+     * @return
+     */
+    @Override
+    public List<Entry<E>> getElements() {
+        List<Entry<E>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new Entry<>(counters[i].element, counters[i].count - counters[i].error));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEach(ObjIntConsumer<? super E> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(counters[i].element, counters[i].count - counters[i].error);
+        }
+    }
+
+    // move counter to the bucket of (count + delta)
+    private void increase(Counter<E> counter, int delta) {
+        Bucket<E> bucket = counter.bucket;
+        int newCount = counter.count + delta;
+
+        // the last bucket whose count is not bigger than newCount, it is the next one when delta is 1
+        Bucket<E> pre = bucket;
+        while (pre.next != null && pre.next.count <= newCount) {
+            pre = pre.next;
+        }
+
+        bucket.detach(counter);
+        counter.count = newCount;
+
+        if (pre.count == newCount) {
+            pre.attach(counter);
+            if (bucket.first == null) {
+                remove(bucket);
+            }
+            return;
+        }
+
+        if (bucket.first == null) {
+            if (pre == bucket) {
+                // reuse the empty bucket, order of buckets does not change
+                bucket.count = newCount;
+                bucket.attach(counter);
+                return;
+            }
+            // recycle before allocating, there are at most capacity buckets
+            remove(bucket);
+        }
+
+        insertAfter(pre, newCount).attach(counter);
+    }
+
+    // insert a new bucket after pre, or as head if pre is null
+    private Bucket<E> insertAfter(Bucket<E> pre, int count) {
+        Bucket<E> bucket = newBucket(count);
+        Bucket<E> next = pre == null ? head : pre.next;
+        bucket.pre = pre;
+        bucket.next = next;
+        if (next != null) {
+            next.pre = bucket;
+        }
+        if (pre == null) {
+            head = bucket;
+        } else {
+            pre.next = bucket;
+        }
+        return bucket;
+    }
+
+    private void remove(Bucket<E> bucket) {
+        if (bucket.pre != null) {
+            bucket.pre.next = bucket.next;
+        } else {
+            head = bucket.next;
+        }
+
+        if (bucket.next != null) {
+            bucket.next.pre = bucket.pre;
+        }
+
+        recycle(bucket);
+    }
+
+    private Bucket<E> newBucket(int count) {
+        // there are at most capacity buckets in use
+        Bucket<E> bucket = freeBuckets;
+        freeBuckets = bucket.next;
+        bucket.count = count;
+        bucket.pre = bucket.next = null;
+        bucket.first = null;
+        return bucket;
+    }
+
+    private void recycle(Bucket<E> bucket) {
+        bucket.pre = null;
+        bucket.first = null;
+        bucket.next = freeBuckets;
+        freeBuckets = bucket;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(getElements());
+    }
+
+
+    static class Counter<K> {
+        K element;
+        int count;
+        int error;
+        Bucket<K> bucket;
+        Counter<K> pre;
+        Counter<K> next;
+    }
+
+
+    static class Bucket<K> {
+        int count;
+        Counter<K> first;
+        Bucket<K> pre;
+        Bucket<K> next;
+
+        void attach(Counter<K> counter) {
+            counter.bucket = this;
+            counter.pre = null;
+            counter.next = first;
+            if (first != null) {
+                first.pre = counter;
+            }
+            first = counter;
+        }
+
+        void detach(Counter<K> counter) {
+            if (counter.pre != null) {
+                counter.pre.next = counter.next;
+            } else {
+                first = counter.next;
+            }
+
+            if (counter.next != null) {
+                counter.next.pre = counter.pre;
+            }
+
+            counter.pre = counter.next = null;
+            counter.bucket = null;
+        }
+    }
+}
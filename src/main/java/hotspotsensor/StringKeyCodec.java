@@ -0,0 +1,26 @@
+package hotspotsensor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link KeyCodec} of {@code String} in UTF-8, see {@link KeyCodec#ofString()}.
+ *
+ * @author iamlotus@gmail.com
+ */
+final class StringKeyCodec implements KeyCodec<String> {
+
+    static final StringKeyCodec INSTANCE = new StringKeyCodec();
+
+    private StringKeyCodec() {
+    }
+
+    @Override
+    public byte[] encode(String element) {
+        return element.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package hotspotsensor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Send closed {@link HotspotSensor.ServerWindow}s of a {@link HotspotSensor} to a {@link ClusterAggregator} as
+ * {@link WindowSummary}s. Called by consumer threads, failures of encoding or sending are logged and the window is
+ * skipped, hot detection of the sensor itself is never affected.
+ *
+ * @author iamlotus@gmail.com
+ */
+class SummaryExporter<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SummaryExporter.class);
+
+    private final String source;
+
+    private final KeyCodec<T> keyCodec;
+
+    private final SummaryTransport transport;
+
+    SummaryExporter(String source, KeyCodec<T> keyCodec, SummaryTransport transport) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        if (keyCodec == null) {
+            throw new NullPointerException("keyCodec");
+        }
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        this.source = source;
+        this.keyCodec = keyCodec;
+        this.transport = transport;
+    }
+
+    /**
+     * @param partition index of shard
+     * @param watch     watch of the sensor, windows are expected to be epoch aligned
+     * @param timeId    timeId of window
+     * @param window    closed window, nothing is sent if it is empty
+     */
+    void export(int partition, Watch watch, long timeId, HotspotSensor.ServerWindow<T> window) {
+        WindowSummary<T> summary = window.toSummary(source, partition, watch, timeId);
+        if (summary == null) {
+            return;
+        }
+        try {
+            transport.send(summary.encode(keyCodec));
+        } catch (RuntimeException e) {
+            LOG.warn("fail to export summary {}", summary, e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package hotspotsensor;
+
+import java.util.function.Consumer;
+
+/**
+ * Carry encoded {@link WindowSummary}s from {@link HotspotSensor}s to a {@link ClusterAggregator}, which may run in
+ * another process (a sidecar or a dedicated service). Implementations wrap whatever messaging the deployment has.
+ * {@link #send(byte[])} is called by consumer threads of the sensor, it should hand the bytes over without blocking.
+ *
+ * @author iamlotus@gmail.com
+ */
+public interface SummaryTransport {
+
+    /**
+     * @param summary encoded summary, not modified after sent
+     */
+    void send(byte[] summary);
+
+    /**
+     * Receive summaries sent by all senders.
+     *
+     * @param receiver called for every summary, may be called by multiple threads
+     */
+    void subscribe(Consumer<byte[]> receiver);
+
+    /**
+     * @return transport which delivers summaries to receivers in the same process synchronously, in sending thread
+     */
+    static SummaryTransport loopback() {
+        return new LoopbackSummaryTransport();
+    }
+}
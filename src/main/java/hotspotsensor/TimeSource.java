@@ -0,0 +1,35 @@
+package hotspotsensor;
+
+/**
+ * Source of current time in milliseconds for {@link Watch}, it is read by every
+ * {@link HotspotSensor#increase(Object)} so it should be cheap.
+ *
+ * @author iamlotus@gmail.com
+ */
+public interface TimeSource {
+
+    /**
+     * @return current time in milliseconds, never goes backward
+     */
+    long currentTimeMillis();
+
+    /**
+     * A clock shared by the whole JVM, one daemon thread updates a volatile field every millisecond no matter how many
+     * {@link HotspotSensor}s there are, reading it is a volatile read. It is the default one.
+     *
+     * @return shared coarse clock
+     */
+    static TimeSource coarse() {
+        return CoarseTimeSource.INSTANCE;
+    }
+
+    /**
+     * A clock based on {@link System#nanoTime()}, no thread is started, reading costs a {@code nanoTime} call
+     * (about 20ns on most platforms).
+     *
+     * @return nanoTime based clock
+     */
+    static TimeSource nanoTime() {
+        return new NanoTimeSource();
+    }
+}
@@ -0,0 +1,134 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Select k elements of the biggest score by a bounded min-heap in O(n log k), {@link Entry}s are created for the
+ * selected elements only. Ties of score are broken by count. Not thread safe.
+ *
+ * @author iamlotus@gmail.com
+ */
+class TopK<E> {
+
+    private final int k;
+
+    private Object[] heapElements;
+
+    private int[] heapCounts;
+
+    private double[] heapScores;
+
+    private int size;
+
+    TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k:" + k);
+        }
+        this.k = k;
+        // grow on demand, k may be much bigger than the number of candidates
+        int initialCapacity = Math.min(k, 16);
+        this.heapElements = new Object[initialCapacity];
+        this.heapCounts = new int[initialCapacity];
+        this.heapScores = new double[initialCapacity];
+    }
+
+    /**
+     * @param count
+     * @param score
+     * @return false if an element of {@code count} and {@code score} would be rejected by {@link #offer}
+     */
+    boolean accepts(int count, double score) {
+        return size < k || greater(score, count, 0);
+    }
+
+    void offer(E element, int count, double score) {
+        if (size < k) {
+            if (size == heapElements.length) {
+                int capacity = (int) Math.min((long) k, (long) size * 2);
+                heapElements = Arrays.copyOf(heapElements, capacity);
+                heapCounts = Arrays.copyOf(heapCounts, capacity);
+                heapScores = Arrays.copyOf(heapScores, capacity);
+            }
+            set(size, element, count, score);
+            siftUp(size++);
+        } else if (greater(score, count, 0)) {
+            set(0, element, count, score);
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Drain the heap.
+     *
+     * @return selected entries of descending score, unmodifiable
+     */
+    @SuppressWarnings("unchecked")
+    List<Entry<E>> toList() {
+        // heapElements holds only E, and a generic array can only be created raw
+        Entry<E>[] result = (Entry<E>[]) new Entry<?>[size];
+        while (size > 0) {
+            result[size - 1] = new Entry<>((E) heapElements[0], heapCounts[0], heapScores[0]);
+            size--;
+            if (size > 0) {
+                set(0, heapElements[size], heapCounts[size], heapScores[size]);
+                siftDown(0);
+            }
+            heapElements[size] = null;
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    private boolean greater(double score, int count, int i) {
+        return score > heapScores[i] || (score == heapScores[i] && count > heapCounts[i]);
+    }
+
+    private void set(int i, Object element, int count, double score) {
+        heapElements[i] = element;
+        heapCounts[i] = count;
+        heapScores[i] = score;
+    }
+
+    private void swap(int i, int j) {
+        Object element = heapElements[i];
+        int count = heapCounts[i];
+        double score = heapScores[i];
+        set(i, heapElements[j], heapCounts[j], heapScores[j]);
+        set(j, element, count, score);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!greater(heapScores[parent], heapCounts[parent], i)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && greater(heapScores[smallest], heapCounts[smallest], left)) {
+                smallest = left;
+            }
+            if (right < size && greater(heapScores[smallest], heapCounts[smallest], right)) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
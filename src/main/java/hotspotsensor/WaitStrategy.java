@@ -0,0 +1,25 @@
+package hotspotsensor;
+
+/**
+ * How the consumer thread of {@link HotspotSensor} waits when channel is empty.
+ *
+ * @author iamlotus@gmail.com
+ */
+public enum WaitStrategy {
+
+    /**
+     * Busy spin, lowest latency, burns a whole core.
+     */
+    SPIN,
+
+    /**
+     * {@code Thread.yield()} between polls, low latency, still burns CPU when idle.
+     */
+    YIELD,
+
+    /**
+     * Park until a {@link Collector} submits (or a short timeout elapses), no CPU when idle. Collectors pay an
+     * {@code unpark} only when the consumer is actually parked.
+     */
+    PARK
+}
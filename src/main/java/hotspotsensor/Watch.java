@@ -1,55 +1,44 @@
 package hotspotsensor;
 
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
- * Update time every milli second.
+ * Map time of {@link TimeSource} to sequential windows (timeId) of {@code windowSizeMills}.
  *
  * @author lotus.jzx
  */
 public class Watch {
-    private static final AtomicInteger INSTANCE_ID = new AtomicInteger();
     private final long startTimeMillis;
-    private int instanceId;
 
-    private int windowSizeMills;
+    private final int windowSizeMills;
 
-    private volatile long currentTimeMillis;
+    private final TimeSource timeSource;
 
     public Watch(int windowSizeMills) {
+        this(windowSizeMills, TimeSource.coarse());
+    }
+
+    public Watch(int windowSizeMills, TimeSource timeSource) {
+        this(windowSizeMills, timeSource, false);
+    }
+
+    /**
+     * @param windowSizeMills
+     * @param timeSource
+     * @param epochAligned if true, windows start at multiples of {@code windowSizeMills} since epoch, so that windows
+     *                     of watches of the same size are aligned across processes
+     */
+    public Watch(int windowSizeMills, TimeSource timeSource, boolean epochAligned) {
         if (windowSizeMills <= 0) {
             throw new IllegalArgumentException("windowsSizeMills: " + windowSizeMills);
         }
 
-        this.instanceId = INSTANCE_ID.getAndIncrement();
-        this.windowSizeMills = windowSizeMills;
-        this.startTimeMillis = System.currentTimeMillis();
-
-        Thread setTickThread = new Thread() {
-            public void run() {
-                while (true) {
-                    try {
-                        TimeUnit.MILLISECONDS.sleep(1);
-                    } catch (InterruptedException e) {
-                        //unreachable
-                        e.printStackTrace();
-                    }
-                    currentTimeMillis = System.currentTimeMillis();
-                }
-            }
-        };
-
-        setTickThread.setDaemon(true);
-        setTickThread.setName("hot-detect-time-ticket-thread-" + instanceId);
-        setTickThread.start();
-
-        while (setTickThread.getState() != Thread.State.RUNNABLE) {
-            //wait until thread has been ready, so it update currentTimeMillis ASAP
+        if (timeSource == null) {
+            throw new NullPointerException("timeSource");
         }
 
-        currentTimeMillis = System.currentTimeMillis();
-
+        this.windowSizeMills = windowSizeMills;
+        this.timeSource = timeSource;
+        long now = timeSource.currentTimeMillis();
+        this.startTimeMillis = epochAligned ? now - Math.floorMod(now, windowSizeMills) : now;
     }
 
     /**
@@ -58,8 +47,33 @@ public class Watch {
      * @return TimeId, 0-based
      */
     public long currentTimeId() {
-        return (currentTimeMillis - startTimeMillis) / windowSizeMills;
+        return (timeSource.currentTimeMillis() - startTimeMillis) / windowSizeMills;
     }
 
+    int getWindowSizeMills() {
+        return windowSizeMills;
+    }
+
+    /**
+     * @param timeMillis
+     * @return timeId of the window which contains {@code timeMillis}
+     */
+    long timeIdOf(long timeMillis) {
+        return Math.floorDiv(timeMillis - startTimeMillis, windowSizeMills);
+    }
+
+    /**
+     * @return current time of {@link TimeSource}
+     */
+    long currentTimeMillis() {
+        return timeSource.currentTimeMillis();
+    }
 
+    /**
+     * @param timeId
+     * @return time when window of timeId starts
+     */
+    long startTimeMillisOf(long timeId) {
+        return startTimeMillis + timeId * windowSizeMills;
+    }
 }
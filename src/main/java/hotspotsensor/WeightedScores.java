@@ -0,0 +1,178 @@
+package hotspotsensor;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Weighted scores of elements of all windows of a shard by {@link WindowWeighting}, maintained by the consumer thread
+ * incrementally: counts are added when packets arrive and subtracted when windows expire, with the timeId of their
+ * window.
+ * <p>
+ * Exponential weighting uses forward decay: count of window t is added as count * 2 ^ ((t - landmark) / halfLife),
+ * so the sum of an element never changes when time goes, score at time T is sum * 2 ^ ((landmark - T) / halfLife).
+ * The landmark moves forward (all sums are rescaled) every {@link #RESCALE_HALF_LIVES} half-lives to keep precision.
+ * Linear weighting keeps sum(count) and sum(count * t), which is enough to get sum(count * (windowsNumber - T + t)).
+ *
+ * @author iamlotus@gmail.com
+ */
+class WeightedScores<E> {
+
+    private static final int RESCALE_HALF_LIVES = 16;
+
+    private final WindowWeighting.Kind kind;
+
+    private final int windowsNumber;
+
+    private final double halfLife;
+
+    private final double[] weights;
+
+    private final Map<E, Score> scores;
+
+    private long landmark;
+
+    WeightedScores(WindowWeighting weighting, int windowsNumber) {
+        this.kind = weighting.getKind();
+        this.windowsNumber = windowsNumber;
+        this.halfLife = weighting.getHalfLife();
+        this.weights = weighting.getWeights();
+        if (kind == WindowWeighting.Kind.CUSTOM && weights.length != windowsNumber) {
+            throw new IllegalArgumentException(
+                "number of weights " + weights.length + " mismatches windowsNumber " + windowsNumber);
+        }
+        this.scores = new HashMap<>();
+        this.landmark = Long.MIN_VALUE;
+    }
+
+    void add(E element, int count, long timeId) {
+        if (landmark == Long.MIN_VALUE) {
+            landmark = timeId;
+        }
+        Score score = scores.get(element);
+        if (score == null) {
+            score = new Score(kind == WindowWeighting.Kind.CUSTOM ? new int[windowsNumber] : null);
+            scores.put(element, score);
+        }
+        update(score, count, timeId);
+    }
+
+    void subtract(E element, int count, long timeId) {
+        Score score = scores.get(element);
+        if (score != null) {
+            update(score, -count, timeId);
+            if (score.count <= 0) {
+                scores.remove(element);
+            }
+        }
+    }
+
+    private void update(Score score, int count, long timeId) {
+        score.count += count;
+        switch (kind) {
+            case EXPONENTIAL:
+                score.sum += count * Math.pow(2, (timeId - landmark) / halfLife);
+                break;
+            case LINEAR:
+                score.sum += (double) count * (timeId - landmark);
+                break;
+            default:
+                score.windowCounts[(int) Math.floorMod(timeId, (long) windowsNumber)] += count;
+        }
+    }
+
+    /**
+     * Elements whose score is greater than or equals to threshold
+     *
+     * @param threshold
+     * @param timeId    timeId of the youngest window
+     * @return entries with count and score
+     */
+    Set<Entry<E>> filterGreaterThanOrEqualsTo(double threshold, long timeId) {
+        if (kind == WindowWeighting.Kind.EXPONENTIAL && (timeId - landmark) / halfLife > RESCALE_HALF_LIVES) {
+            rescale(timeId);
+        }
+
+        Set<Entry<E>> result = new HashSet<>();
+        for (Map.Entry<E, Score> entry : scores.entrySet()) {
+            Score score = entry.getValue();
+            double value = score(score, timeId);
+            if (value >= threshold && score.count > 0) {
+                result.add(new Entry<>(entry.getKey(), (int) score.count, value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the {@code k} elements of biggest score among those whose score is greater than or equals to threshold,
+     * of descending score
+     */
+    List<Entry<E>> top(double threshold, long timeId, int k) {
+        if (kind == WindowWeighting.Kind.EXPONENTIAL && (timeId - landmark) / halfLife > RESCALE_HALF_LIVES) {
+            rescale(timeId);
+        }
+
+        TopK<E> topK = new TopK<>(k);
+        for (Map.Entry<E, Score> entry : scores.entrySet()) {
+            Score score = entry.getValue();
+            double value = score(score, timeId);
+            if (value >= threshold && score.count > 0) {
+                topK.offer(entry.getKey(), (int) score.count, value);
+            }
+        }
+        return topK.toList();
+    }
+
+    private double score(Score score, long timeId) {
+        switch (kind) {
+            case EXPONENTIAL:
+                return score.sum * Math.pow(2, (landmark - timeId) / halfLife);
+            case LINEAR:
+                // sum(count * (windowsNumber - (timeId - t))) / windowsNumber
+                return ((windowsNumber - (timeId - landmark)) * (double) score.count + score.sum) / windowsNumber;
+            default:
+                double value = 0;
+                for (int age = 0; age < windowsNumber; age++) {
+                    value += weights[age] * score.windowCounts[(int) Math.floorMod(timeId - age, (long) windowsNumber)];
+                }
+                return value;
+        }
+    }
+
+    // move landmark to timeId
+    private void rescale(long timeId) {
+        double factor = Math.pow(2, (landmark - timeId) / halfLife);
+        for (Score score : scores.values()) {
+            score.sum *= factor;
+        }
+        landmark = timeId;
+    }
+
+    int size() {
+        return scores.size();
+    }
+
+    void clear() {
+        scores.clear();
+        landmark = Long.MIN_VALUE;
+    }
+
+    private static class Score {
+
+        // sum of counts
+        long count;
+
+        // weighted sum, by kind
+        double sum;
+
+        // counts by timeId % windowsNumber, for custom weighting only
+        final int[] windowCounts;
+
+        Score(int[] windowCounts) {
+            this.windowCounts = windowCounts;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package hotspotsensor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts of a closed {@link HotspotSensor.ServerWindow} of one shard of one process, encoded in a compact binary
+ * format to be merged by a {@link ClusterAggregator}. Summaries are mergeable: counts of the same element and window
+ * from different sources are simply added.
+ * <p>
+ * Format of version 1, all integers are unsigned varints (7 bits per byte, least significant group first):
+ * <pre>
+ * version(1 byte) windowSizeMills windowStartMillis sourceLength source(UTF-8) partition totalCount entryCount
+ * { keyLength key(by KeyCodec) count } * entryCount
+ * </pre>
+ * Windows are identified by start time since epoch rather than timeId, so that they are comparable across processes
+ * whose windows are epoch aligned.
+ *
+ * @author iamlotus@gmail.com
+ */
+public final class WindowSummary<T> {
+
+    static final int VERSION = 1;
+
+    private final String source;
+
+    private final int partition;
+
+    private final int windowSizeMills;
+
+    private final long windowStartMillis;
+
+    private final long totalCount;
+
+    private final List<Entry<T>> entries;
+
+    /**
+     * @param source            name of the sending process, unique in the cluster
+     * @param partition         shard of the sending process
+     * @param windowSizeMills
+     * @param windowStartMillis start time of window since epoch
+     * @param totalCount        total count of the window, 0 for all partitions but the first
+     * @param entries           counts of elements, not bigger than {@code Integer.MAX_VALUE}
+     */
+    public WindowSummary(String source, int partition, int windowSizeMills, long windowStartMillis, long totalCount,
+        List<Entry<T>> entries) {
+        if (source == null) {
+            throw new NullPointerException("source");
+        }
+        if (partition < 0) {
+            throw new IllegalArgumentException("partition:" + partition);
+        }
+        if (windowSizeMills <= 0) {
+            throw new IllegalArgumentException("windowSizeMills:" + windowSizeMills);
+        }
+        if (windowStartMillis < 0) {
+            throw new IllegalArgumentException("windowStartMillis:" + windowStartMillis);
+        }
+        if (totalCount < 0) {
+            throw new IllegalArgumentException("totalCount:" + totalCount);
+        }
+        if (entries == null) {
+            throw new NullPointerException("entries");
+        }
+        this.source = source;
+        this.partition = partition;
+        this.windowSizeMills = windowSizeMills;
+        this.windowStartMillis = windowStartMillis;
+        this.totalCount = totalCount;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public int getWindowSizeMills() {
+        return windowSizeMills;
+    }
+
+    public long getWindowStartMillis() {
+        return windowStartMillis;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public List<Entry<T>> getEntries() {
+        return entries;
+    }
+
+    public byte[] encode(KeyCodec<T> keyCodec) {
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        Writer writer = new Writer(32 + sourceBytes.length + entries.size() * 8);
+        writer.putByte(VERSION);
+        writer.putVarLong(windowSizeMills);
+        writer.putVarLong(windowStartMillis);
+        writer.putBytes(sourceBytes);
+        writer.putVarLong(partition);
+        writer.putVarLong(totalCount);
+        writer.putVarLong(entries.size());
+        for (Entry<T> entry : entries) {
+            writer.putBytes(keyCodec.encode(entry.getElement()));
+            writer.putVarLong(entry.getCount());
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param bytes
+     * @param keyCodec
+     * @param <T>
+     * @return summary
+     * @throws IllegalArgumentException if {@code bytes} is malformed or of unknown version
+     */
+    public static <T> WindowSummary<T> decode(byte[] bytes, KeyCodec<T> keyCodec) {
+        Reader reader = new Reader(bytes);
+        int version = reader.getByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("version:" + version);
+        }
+        int windowSizeMills = reader.getVarInt();
+        long windowStartMillis = reader.getVarLong();
+        int sourceLength = reader.getVarInt();
+        String source = new String(bytes, reader.skip(sourceLength), sourceLength, StandardCharsets.UTF_8);
+        int partition = reader.getVarInt();
+        long totalCount = reader.getVarLong();
+        int entryCount = reader.getVarInt();
+        // every entry takes 2 bytes at least, do not trust entryCount for allocation
+        List<Entry<T>> entries = new ArrayList<>(Math.min(entryCount, bytes.length / 2));
+        for (int i = 0; i < entryCount; i++) {
+            int keyLength = reader.getVarInt();
+            T element = keyCodec.decode(bytes, reader.skip(keyLength), keyLength);
+            entries.add(new Entry<>(element, reader.getVarInt()));
+        }
+        if (reader.remaining() != 0) {
+            throw new IllegalArgumentException("trailing bytes:" + reader.remaining());
+        }
+        return new WindowSummary<>(source, partition, windowSizeMills, windowStartMillis, totalCount, entries);
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return position after the varint
+     */
+    static int putVarLong(byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        return "[" +
+            "source=" + source +
+            ", partition=" + partition +
+            ", windowStartMillis=" + windowStartMillis +
+            ", totalCount=" + totalCount +
+            ", entries=" + entries.size() +
+            ']';
+    }
+
+
+    private static class Writer {
+        private byte[] bytes;
+
+        private int position;
+
+        Writer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void putByte(int value) {
+            ensureCapacity(1);
+            bytes[position++] = (byte) value;
+        }
+
+        void putVarLong(long value) {
+            ensureCapacity(10);
+            position = WindowSummary.putVarLong(bytes, position, value);
+        }
+
+        // length prefixed
+        void putBytes(byte[] value) {
+            putVarLong(value.length);
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(position + length, bytes.length * 2));
+            }
+        }
+    }
+
+
+    private static class Reader {
+        private final byte[] bytes;
+
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int getByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("truncated summary");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long getVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = getByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        int getVarInt() {
+            long result = getVarLong();
+            if (result > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("int overflow:" + result);
+            }
+            return (int) result;
+        }
+
+        /**
+         * @return position before skip
+         */
+        int skip(int length) {
+            if (length > remaining()) {
+                throw new IllegalArgumentException("truncated summary");
+            }
+            int result = position;
+            position += length;
+            return result;
+        }
+
+        int remaining() {
+            return bytes.length - position;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package hotspotsensor;
+
+import java.util.Arrays;
+
+/**
+ * How counts of {@link HotspotSensor.ServerWindow}s are weighted by age when hot elements are calculated. Age of the
+ * youngest window in the calculation is 0. By default all windows weigh 1, score of an element is its count.
+ * <p>
+ * Scores are maintained incrementally as packets arrive and windows expire: exponential and linear weightings keep
+ * two numbers per element, custom weighting keeps count of every window per element and evaluates the weights once
+ * per calculation.
+ *
+ * @author iamlotus@gmail.com
+ */
+public final class WindowWeighting {
+
+    enum Kind {
+        EXPONENTIAL, LINEAR, CUSTOM
+    }
+
+    private final Kind kind;
+
+    private final double halfLife;
+
+    private final double[] weights;
+
+    private WindowWeighting(Kind kind, double halfLife, double[] weights) {
+        this.kind = kind;
+        this.halfLife = halfLife;
+        this.weights = weights;
+    }
+
+    /**
+     * Weight of window halves every {@code halfLifeWindows} windows: weight(age) = 2 ^ (-age / halfLifeWindows).
+     *
+     * @param halfLifeWindows half-life in number of windows, positive
+     * @return weighting
+     */
+    public static WindowWeighting exponential(double halfLifeWindows) {
+        if (!(halfLifeWindows > 0)) {
+            throw new IllegalArgumentException("halfLifeWindows:" + halfLifeWindows);
+        }
+        return new WindowWeighting(Kind.EXPONENTIAL, halfLifeWindows, null);
+    }
+
+    /**
+     * Weight of window drops linearly from 1 (the youngest) to 1 / windowsNumber (the oldest): weight(age) =
+     * (windowsNumber - age) / windowsNumber.
+     *
+     * @return weighting
+     */
+    public static WindowWeighting linear() {
+        return new WindowWeighting(Kind.LINEAR, 0, null);
+    }
+
+    /**
+     * Weight of every window by age, {@code weights[0]} is for the youngest window. Length of weights must be equal to
+     * number of windows.
+     *
+     * @param weights not negative
+     * @return weighting
+     */
+    public static WindowWeighting custom(double... weights) {
+        if (weights == null) {
+            throw new NullPointerException("weights");
+        }
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("weights is empty");
+        }
+        for (double weight : weights) {
+            if (!(weight >= 0)) {
+                throw new IllegalArgumentException("weights:" + Arrays.toString(weights));
+            }
+        }
+        return new WindowWeighting(Kind.CUSTOM, 0, weights.clone());
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    double getHalfLife() {
+        return halfLife;
+    }
+
+    double[] getWeights() {
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case EXPONENTIAL:
+                return "exponential(" + halfLife + ")";
+            case LINEAR:
+                return "linear()";
+            default:
+                return "custom(" + Arrays.toString(weights) + ")";
+        }
+    }
+}
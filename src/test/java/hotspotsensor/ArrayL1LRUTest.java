@@ -0,0 +1,66 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class ArrayL1LRUTest {
+
+    @Test
+    public void testReplace() {
+        L1LRU<String> l2 = new ArrayL1LRU<>(2);
+        Assert.assertEquals(set(), l2.getElements());
+        Assert.assertNull(l2.put("a"));
+        Assert.assertEquals(set("a"), l2.getElements());
+        Assert.assertEquals("a", l2.put("a"));
+        Assert.assertEquals(set(), l2.getElements());
+
+        Assert.assertNull(l2.put("a"));
+        Assert.assertNull(l2.put("b"));
+        Assert.assertTrue(l2.isFull());
+        Assert.assertEquals(set("a", "b"), l2.getElements());
+        Assert.assertNull(l2.put("c"));
+        Assert.assertEquals(set("b", "c"), l2.getElements());
+        Assert.assertEquals("b", l2.put("b"));
+        Assert.assertEquals(set("c"), l2.getElements());
+
+        l2.clear();
+        Assert.assertEquals(set(), l2.getElements());
+        Assert.assertNull(l2.put("c"));
+        Assert.assertEquals("c", l2.put("c"));
+    }
+
+    @Test
+    public void testAgainstLinkedHashSet() {
+        int capacity = 50;
+        L1LRU<Integer> l1 = new ArrayL1LRU<>(capacity);
+        // insertion ordered, the first one is the least recently put
+        LinkedHashSet<Integer> expected = new LinkedHashSet<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            if (i % 10000 == 0) {
+                l1.clear();
+                expected.clear();
+            }
+
+            // multiples of 64 collide on the table
+            Integer element = random.nextInt(200) * (i % 3 == 0 ? 64 : 1);
+            boolean present = expected.remove(element);
+            if (!present) {
+                if (expected.size() == capacity) {
+                    expected.remove(expected.iterator().next());
+                }
+                expected.add(element);
+            }
+            Assert.assertEquals(present ? element : null, l1.put(element));
+        }
+        Assert.assertEquals(expected, l1.getElements());
+    }
+}
@@ -0,0 +1,85 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class CapacityBudgetTest {
+
+    @Test
+    public void testGrow() {
+        CapacityBudget budget = new CapacityBudget(1000, 100, 100);
+        CapacityBudget.Tuner tuner = budget.newTuner();
+
+        // rejections grow L2Counter only, doubled at most
+        Assert.assertTrue(tuner.tune(1000, 100, 30));
+        Assert.assertEquals(100, tuner.getL1Capacity());
+        Assert.assertEquals(130, tuner.getL2Capacity());
+        Assert.assertTrue(tuner.tune(1000, 130, 500));
+        Assert.assertEquals(260, tuner.getL2Capacity());
+
+        // churn of L1LRU doubles it
+        Assert.assertFalse(tuner.tune(200, 10, 0));
+        Assert.assertTrue(tuner.tune(201, 10, 0));
+        Assert.assertEquals(200, tuner.getL1Capacity());
+
+        Assert.assertEquals(200, budget.getL1Entries());
+        Assert.assertEquals(260, budget.getL2Entries());
+        Assert.assertEquals(3, budget.getResizes());
+    }
+
+    @Test
+    public void testShrink() {
+        CapacityBudget budget = new CapacityBudget(1000, 100, 100);
+        CapacityBudget.Tuner tuner = budget.newTuner();
+
+        for (int i = 0; i < CapacityBudget.QUIET_WINDOWS - 1; i++) {
+            Assert.assertFalse(tuner.tune(10, 5, 0));
+        }
+        // L2Counter is used enough in one of quiet windows
+        Assert.assertTrue(tuner.tune(10, 50, 0));
+        Assert.assertEquals(50, tuner.getL1Capacity());
+        Assert.assertEquals(100, tuner.getL2Capacity());
+
+        // never below 1/8
+        for (int i = 0; i < CapacityBudget.QUIET_WINDOWS * 10; i++) {
+            tuner.tune(0, 0, 0);
+        }
+        Assert.assertEquals(12, tuner.getL1Capacity());
+        Assert.assertEquals(12, tuner.getL2Capacity());
+        Assert.assertEquals(24, budget.getL1Entries() + budget.getL2Entries());
+    }
+
+    @Test
+    public void testBudget() {
+        CapacityBudget budget = new CapacityBudget(500, 100, 100);
+        CapacityBudget.Tuner t1 = budget.newTuner();
+        CapacityBudget.Tuner t2 = budget.newTuner();
+
+        // 100 entries left
+        Assert.assertTrue(t1.tune(0, 100, 1000));
+        Assert.assertEquals(200, t1.getL2Capacity());
+        Assert.assertFalse(t2.tune(0, 100, 1000));
+        Assert.assertEquals(100, t2.getL2Capacity());
+
+        // overdrawn by a new collector, all shrink
+        CapacityBudget.Tuner t3 = budget.newTuner();
+        Assert.assertTrue(t1.tune(0, 100, 1000));
+        Assert.assertEquals(50, t1.getL1Capacity());
+        Assert.assertEquals(100, t1.getL2Capacity());
+
+        // released ones are given back
+        t3.release();
+        t3.release();
+        Assert.assertEquals(350, budget.getL1Entries() + budget.getL2Entries());
+        Assert.assertTrue(t2.tune(0, 100, 1000));
+        Assert.assertEquals(200, t2.getL2Capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalBudget() {
+        new CapacityBudget(100, 100, 100);
+    }
+}
@@ -0,0 +1,117 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+import static hotspotsensor.TestUtils.set;
+import static hotspotsensor.TestUtils.submit;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class ClusterAggregatorTest {
+
+    @Test
+    public void testAggregate() throws InterruptedException {
+        int windowsNum = 3;
+        int windowSizeMills = 50;
+        ManualTimeSource timeSource = new ManualTimeSource(1020);
+        SummaryTransport transport = SummaryTransport.loopback();
+
+        List<NotificationHandler.Notification<String>> nodeNotifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> node1 = node("node-1", windowsNum, windowSizeMills, timeSource, transport,
+            nodeNotifications);
+        HotspotSensor<String> node2 = node("node-2", windowsNum, windowSizeMills, timeSource, transport,
+            nodeNotifications);
+
+        List<NotificationHandler.Notification<String>> clusterNotifications = new CopyOnWriteArrayList<>();
+        ClusterAggregator<String> aggregator = HotspotSensor.<String>builder()
+                                                            .addNotificationHandler(clusterNotifications::add)
+                                                            .setWindowsNumber(windowsNum)
+                                                            .setWindowSizeMills(windowSizeMills)
+                                                            .setHotThreshold(15)
+                                                            .setConsumerShards(2)
+                                                            .setTimeSource(timeSource)
+                                                            .buildClusterAggregator(KeyCodec.ofString(), transport);
+
+        long now = node1.getWatch().currentTimeId();
+        // a=10 and b=3 on each node, both are below threshold of nodes
+        submit(node1, 100, now, list(e("a", 9), e("b", 2)), 13);
+        submit(node2, 100, now, list(e("a", 9), e("b", 2)), 13);
+
+        for (int i = 0; i < windowsNum + 1; i++) {
+            timeSource.advance(windowSizeMills);
+            TimeUnit.MILLISECONDS.sleep(30);
+        }
+
+        Assert.assertTrue(nodeNotifications.stream().allMatch(n -> n.getEntrySet().isEmpty()));
+        Assert.assertEquals(1, clusterNotifications.size());
+        Assert.assertEquals(set(e("a", 20)), clusterNotifications.get(0).getEntrySet());
+        Assert.assertEquals(26, clusterNotifications.get(0).getTotalCount());
+        Assert.assertTrue(aggregator.isHot("a"));
+        Assert.assertEquals(20, aggregator.hotCount("a"));
+        Assert.assertEquals(2, aggregator.getAcceptedCount());
+    }
+
+    @Test
+    public void testReject() {
+        ManualTimeSource timeSource = new ManualTimeSource();
+        ClusterAggregator<String> aggregator = HotspotSensor.<String>builder()
+                                                            .setWindowSizeMills(50)
+                                                            .setTimeSource(timeSource)
+                                                            .buildClusterAggregator(KeyCodec.ofString(),
+                                                                SummaryTransport.loopback());
+
+        Assert.assertFalse(aggregator.receive(new byte[] {1, 2}));
+        Assert.assertFalse(aggregator.merge(new WindowSummary<>("node-1", 0, 100, 0, 1, list(e("a", 1)))));
+        Assert.assertTrue(aggregator.merge(new WindowSummary<>("node-1", 0, 50, 0, 1, list(e("a", 1)))));
+        // the next window is tolerated, a later one would slide the ring
+        Assert.assertTrue(aggregator.merge(new WindowSummary<>("node-1", 0, 50, 50, 1, list(e("a", 1)))));
+        Assert.assertFalse(aggregator.merge(new WindowSummary<>("node-1", 0, 50, 100, 1, list(e("a", 1)))));
+        Assert.assertEquals(3, aggregator.getRejectedCount());
+        Assert.assertEquals(2, aggregator.getAcceptedCount());
+    }
+
+    @Test
+    public void testExpireSources() {
+        ManualTimeSource timeSource = new ManualTimeSource();
+        ClusterAggregator<String> aggregator = HotspotSensor.<String>builder()
+                                                            .setWindowsNumber(3)
+                                                            .setWindowSizeMills(50)
+                                                            .setTimeSource(timeSource)
+                                                            .buildClusterAggregator(KeyCodec.ofString(),
+                                                                SummaryTransport.loopback());
+
+        Assert.assertTrue(aggregator.merge(new WindowSummary<>("node-1", 0, 50, 0, 1, list(e("a", 1)))));
+        Assert.assertTrue(aggregator.merge(new WindowSummary<>("node-2", 0, 50, 0, 1, list(e("a", 1)))));
+        Assert.assertEquals(2, aggregator.getSourceCount());
+
+        // node-1 is silent for 3 windows
+        timeSource.advance(150);
+        Assert.assertTrue(aggregator.merge(new WindowSummary<>("node-2", 0, 50, 100, 1, list(e("a", 1)))));
+        Assert.assertEquals(1, aggregator.getSourceCount());
+
+        // and comes back as a new source
+        Assert.assertTrue(aggregator.merge(new WindowSummary<>("node-1", 0, 50, 100, 1, list(e("a", 1)))));
+        Assert.assertEquals(2, aggregator.getSourceCount());
+        aggregator.stop();
+    }
+
+    private static HotspotSensor<String> node(String source, int windowsNum, int windowSizeMills,
+        TimeSource timeSource, SummaryTransport transport,
+        List<NotificationHandler.Notification<String>> notifications) {
+        return HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                              .setWindowsNumber(windowsNum)
+                                              .setWindowSizeMills(windowSizeMills)
+                                              .setHotThreshold(15)
+                                              .setTimeSource(timeSource)
+                                              .setSummaryExport(source, KeyCodec.ofString(), transport)
+                                              .build();
+    }
+}
@@ -0,0 +1,24 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class CollectorIndexesTest {
+
+    @Test
+    public void testReuseAfterQuarantine() {
+        CollectorIndexes indexes = new CollectorIndexes();
+        Assert.assertEquals(0, indexes.allocate(10));
+        Assert.assertEquals(1, indexes.allocate(10));
+
+        indexes.release(0, 10);
+        // the old owner may have submitted window 10, and window 11 is not complete yet
+        Assert.assertEquals(2, indexes.allocate(10));
+        Assert.assertEquals(3, indexes.allocate(11));
+        Assert.assertEquals(0, indexes.allocate(12));
+        Assert.assertEquals(4, indexes.allocate(12));
+    }
+}
@@ -2,12 +2,18 @@ package hotspotsensor;
 
 import hotspotsensor.Collector.CollectorId;
 import junit.framework.Assert;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.newCapture;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
@@ -37,12 +43,11 @@ public class CollectorTest {
         int l2Capacity = 2;
         Collector<String> collector =
             new Collector<>(hotspotSensor, watch, new SimpleL1LRU<>(l1Capacity), new SimpleL2Counter<>(l2Capacity));
-        CollectorId collectorId = collector.getId();
+        collector.setIndex(7);
         long startTime = watch.currentTimeId();
 
-
-        expect(hotspotSensor.submit(
-            collectorId, startTime, TestUtils.list(TestUtils.e("a", 3), TestUtils.e("c", 1)), 10)).andReturn(true);
+        Capture<ClientMessage> submitted = newCapture();
+        expect(hotspotSensor.submit(capture(submitted))).andReturn(true);
         replay(hotspotSensor);
         // a & c are promoted to L2, b is discard and d is overflow
         // getTotalCount=10(9+1)
@@ -60,6 +65,151 @@ public class CollectorTest {
         //trigger submit
         collector.access("x");
         verify(hotspotSensor);
+        // counts include the one in L1
+        assertMessage(submitted.getValue(), 7, startTime, 10, TestUtils.set(TestUtils.e("a", 4), TestUtils.e("c", 2)));
+        Assert.assertEquals(2, submitted.getValue().getL1Promotions());
+        Assert.assertEquals(1, submitted.getValue().getL2Rejections());
+    }
+
+    @Test
+    public void testAccessWithDelta() throws InterruptedException {
+
+        int windowSizeMills = 50;
+
+        HotspotSensor<String> hotspotSensor = createMock(HotspotSensor.class);
+
+        Watch watch = new Watch(windowSizeMills);
+        Collector<String> collector =
+            new Collector<>(hotspotSensor, watch, new SimpleL1LRU<>(2), new SimpleL2Counter<>(2));
+        long startTime = watch.currentTimeId();
+
+        Capture<ClientMessage> submitted = newCapture();
+        expect(hotspotSensor.submit(capture(submitted))).andReturn(true);
+        replay(hotspotSensor);
+        // a=1(L1)+4(L2)
+        collector.access("a", 5);
+        // b=1(L1)+3(L2)
+        collector.access("b");
+        collector.access("b", 3);
+        // a=1(L1)+5(L2), c is in L1
+        collector.accessAll(new String[] {"a", "c"});
+
+        TimeUnit.MILLISECONDS.sleep(windowSizeMills * 2);
+        //trigger submit
+        collector.access("x");
+        verify(hotspotSensor);
+        assertMessage(submitted.getValue(), -1, startTime, 12, TestUtils.set(TestUtils.e("a", 6), TestUtils.e("b", 4)));
+    }
+
+    @Test
+    public void testDeferWhileFlushed() {
+        HotspotSensor<String> hotspotSensor = createMock(HotspotSensor.class);
+
+        Watch watch = new Watch(1000);
+        Collector<String> collector =
+            new Collector<>(hotspotSensor, watch, new SimpleL1LRU<>(2), new SimpleL2Counter<>(2));
+        long startTime = watch.currentTimeId();
+
+        Capture<ClientMessage> submitted = newCapture(CaptureType.ALL);
+        expect(hotspotSensor.submit(capture(submitted))).andReturn(true).times(2);
+        replay(hotspotSensor);
+
+        // held by the consumer, the owner defers instead of waiting
+        Assert.assertTrue(collector.tryAcquire());
+        collector.access("a");
+        collector.accessAll(new String[] {"a", "b"});
+        Assert.assertEquals(3, collector.deferred());
+        collector.release();
+
+        // replayed on the next access
+        collector.access("a");
+        Assert.assertEquals(0, collector.deferred());
+        collector.flushCurrent();
+        assertMessage(submitted.getValues().get(0), -1, startTime, 4, TestUtils.set(TestUtils.e("a", 3)));
+
+        // deferred again, and the owner never accesses again
+        Assert.assertTrue(collector.tryAcquire());
+        collector.access("b", 2);
+        collector.access("c");
+        collector.release();
+        Assert.assertEquals(2, collector.deferred());
+
+        // drained by the consumer into the window they are deferred in
+        Assert.assertTrue(collector.flush(startTime + 1));
+        Assert.assertEquals(0, collector.deferred());
+        verify(hotspotSensor);
+        assertMessage(submitted.getValues().get(1), -1, startTime, 3, TestUtils.set(TestUtils.e("b", 2)));
+        Assert.assertEquals(2, submitted.getValues().get(1).countAt(0));
+    }
+
+    @Test
+    public void testReplacedElementNotInflated() {
+        HotspotSensor<String> hotspotSensor = createMock(HotspotSensor.class);
+
+        Watch watch = new Watch(1000);
+        Collector<String> collector =
+            new Collector<>(hotspotSensor, watch, new SimpleL1LRU<>(2), new SpaceSavingL2Counter<>(1));
+        long startTime = watch.currentTimeId();
+
+        Capture<ClientMessage> submitted = newCapture();
+        expect(hotspotSensor.submit(capture(submitted))).andReturn(true);
+        replay(hotspotSensor);
+
+        // a=4 in L2
+        for (int i = 0; i < 5; i++) {
+            collector.access("a");
+        }
+        // b replaces a, inherits 4 as error
+        collector.access("b");
+        collector.access("b");
+        collector.flushCurrent();
+        verify(hotspotSensor);
+
+        ClientMessage message = submitted.getValue();
+        assertMessage(message, -1, startTime, 7, TestUtils.set(TestUtils.e("b", 2)));
+        // 1 in L2 plus the one in L1, not the 6 over-estimated
+        Assert.assertEquals(2, message.countAt(0));
+    }
+
+    @Test
+    public void testMessagesAreReused() throws InterruptedException {
+        int windowSizeMills = 20;
+
+        HotspotSensor<Long> hotspotSensor = createMock(HotspotSensor.class);
+
+        Watch watch = new Watch(windowSizeMills);
+        LongCollector collector = new LongCollector(hotspotSensor, watch, new LongL1LRU(2), new LongL2Counter(2));
+
+        Capture<ClientMessage> submitted = newCapture(CaptureType.ALL);
+        expect(hotspotSensor.submit(capture(submitted))).andReturn(true).times(3);
+        replay(hotspotSensor);
+
+        for (int i = 0; i < 3; i++) {
+            collector.access(1L);
+            collector.access(1L);
+            TimeUnit.MILLISECONDS.sleep(windowSizeMills * 2);
+            collector.access(2L);
+            // recycled by consumer
+            ClientMessage message = submitted.getValues().get(i);
+            Assert.assertTrue(message.isOfLong());
+            Assert.assertEquals(1, message.size());
+            Assert.assertEquals(1L, message.longElementAt(0));
+            message.recycle();
+        }
+        verify(hotspotSensor);
+        Assert.assertEquals(1, collector.pool.created());
+    }
+
+    private static void assertMessage(ClientMessage message, int collectorIndex, long timeId, long totalCount,
+        Set<Entry<String>> entries) {
+        Assert.assertEquals(collectorIndex, message.getCollectorIndex());
+        Assert.assertEquals(timeId, message.getTimeId());
+        Assert.assertEquals(totalCount, message.getTotalCount());
+        Set<Entry<String>> actual = new HashSet<>();
+        for (int i = 0; i < message.size(); i++) {
+            actual.add(new Entry<>((String) message.elementAt(i), message.countAt(i)));
+        }
+        Assert.assertEquals(entries, actual);
     }
 
-} 
+}
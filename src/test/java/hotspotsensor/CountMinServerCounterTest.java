@@ -0,0 +1,79 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class CountMinServerCounterTest {
+
+    @Test
+    public void testMergeAndFilter() {
+        CountMinServerCounter<String> c = new CountMinServerCounter<>(1024, 4, 8);
+        c.merge("a", 2);
+        c.merge("b", 3);
+        c.merge("a", 2);
+        Assert.assertEquals(4, c.estimate("a"));
+        Assert.assertEquals(3, c.estimate("b"));
+        Assert.assertEquals(0, c.estimate("c"));
+
+        Assert.assertEquals(set(), c.filterGreaterThanOrEqualsTo(5));
+        Assert.assertEquals(set(e("a", 4)), c.filterGreaterThanOrEqualsTo(4));
+        Assert.assertEquals(set(e("a", 4), e("b", 3)), c.filterGreaterThanOrEqualsTo(1));
+
+        c.clear();
+        Assert.assertEquals(0, c.estimate("a"));
+        Assert.assertEquals(set(), c.filterGreaterThanOrEqualsTo(1));
+    }
+
+    @Test
+    public void testNeverUnderEstimate() {
+        // a tiny sketch, collisions are inevitable
+        CountMinServerCounter<String> c = new CountMinServerCounter<>(16, 2, 4);
+        for (int i = 0; i < 1000; i++) {
+            c.merge("e" + i, 1);
+        }
+        c.merge("hot", 500);
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(c.estimate("e" + i) >= 1);
+        }
+        Assert.assertTrue(c.estimate("hot") >= 500);
+
+        // only candidates with biggest estimates are kept
+        boolean found = false;
+        for (Entry<String> entry : c.filterGreaterThanOrEqualsTo(500)) {
+            found |= entry.getElement().equals("hot");
+        }
+        Assert.assertTrue(found);
+    }
+
+    @Test
+    public void testSubtract() {
+        ServerCounter.Factory<String> factory = CountMinServerCounter.factory(1024, 4, 2);
+        CountMinServerCounter<String> aggregate = (CountMinServerCounter<String>) factory.createAggregateCounter();
+        CountMinServerCounter<String> window1 = (CountMinServerCounter<String>) factory.createWindowCounter();
+        CountMinServerCounter<String> window2 = (CountMinServerCounter<String>) factory.createWindowCounter();
+
+        window1.merge("a", 5);
+        aggregate.merge("a", 5);
+        window2.merge("a", 1);
+        aggregate.merge("a", 1);
+        window2.merge("b", 3);
+        aggregate.merge("b", 3);
+
+        Assert.assertEquals(set(e("a", 6), e("b", 3)), aggregate.filterGreaterThanOrEqualsTo(1));
+
+        aggregate.subtract(window1);
+        Assert.assertEquals(1, aggregate.estimate("a"));
+        Assert.assertEquals(set(e("b", 3)), aggregate.filterGreaterThanOrEqualsTo(2));
+
+        // c replaces the minimum candidate a
+        aggregate.merge("c", 2);
+        Assert.assertEquals(set(e("b", 3), e("c", 2)), aggregate.filterGreaterThanOrEqualsTo(1));
+    }
+}
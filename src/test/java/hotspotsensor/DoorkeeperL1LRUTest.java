@@ -0,0 +1,47 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class DoorkeeperL1LRUTest {
+
+    @Test
+    public void testPromoteOnSecondSighting() {
+        L1LRU<String> l1 = new DoorkeeperL1LRU<>(10);
+        Assert.assertNull(l1.put("a"));
+        Assert.assertEquals("a", l1.put("a"));
+        // can not be removed, keep promoting
+        Assert.assertEquals("a", l1.put("a"));
+        Assert.assertFalse(l1.isFull());
+        Assert.assertTrue(l1.getElements().isEmpty());
+
+        l1.clear();
+        Assert.assertNull(l1.put("a"));
+    }
+
+    @Test
+    public void testRecall() {
+        int capacity = 1000;
+        L1LRU<Integer> l1 = new DoorkeeperL1LRU<>(capacity);
+
+        // every element is remembered for at least capacity distinct elements
+        int falsePositives = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (l1.put(-i - 1) != null) {
+                falsePositives++;
+            }
+        }
+        for (int i = 0; i < capacity; i++) {
+            if (l1.put(i) != null) {
+                falsePositives++;
+            }
+        }
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertEquals(Integer.valueOf(-i - 1), l1.put(-i - 1));
+        }
+        Assert.assertTrue("falsePositives:" + falsePositives, falsePositives < capacity / 10);
+    }
+}
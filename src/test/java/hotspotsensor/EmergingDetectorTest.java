@@ -0,0 +1,84 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class EmergingDetectorTest {
+
+    @Test
+    public void testEmerging() {
+        EmergingDetector<String> detector = new EmergingDetector<>(2, 10, 16);
+        // nothing is emerging in the first window
+        Assert.assertEquals(set(), detector.update(set(e("a", 5), e("b", 5), e("c", 20))));
+
+        // b grows from 5 to 20, c is steady
+        Set<Entry<String>> result = detector.update(set(e("a", 5), e("b", 20), e("c", 20)));
+        Assert.assertEquals(set(e("b", 20)), result);
+        Assert.assertEquals(15, result.iterator().next().getScore(), 1e-9);
+
+        // b stops accelerating
+        for (int i = 0; i < 5; i++) {
+            detector.update(set(e("a", 5), e("b", 20), e("c", 20)));
+        }
+        Assert.assertEquals(set(), detector.update(set(e("a", 5), e("b", 20), e("c", 20))));
+
+        // a jumps
+        Assert.assertEquals(set(e("a", 40)), detector.update(set(e("a", 40), e("b", 20), e("c", 20))));
+    }
+
+    @Test
+    public void testAdmitAndDecay() {
+        EmergingDetector<String> detector = new EmergingDetector<>(2, 10, 16);
+        // below minWindowCount / growthFactor
+        detector.update(set(e("a", 4)));
+        Assert.assertEquals(0, detector.size());
+
+        detector.update(set(e("a", 8)));
+        Assert.assertEquals(1, detector.size());
+
+        // rate 8, then 4, 2, 1, 0.5
+        for (int i = 0; i < 3; i++) {
+            detector.update(set());
+            Assert.assertEquals(1, detector.size());
+        }
+        detector.update(set());
+        Assert.assertEquals(0, detector.size());
+    }
+
+    @Test
+    public void testCapacity() {
+        EmergingDetector<String> detector = new EmergingDetector<>(2, 10, 2);
+        detector.update(set(e("a", 10), e("b", 30), e("c", 20), e("d", 5)));
+        Assert.assertEquals(2, detector.size());
+
+        // a and d were dropped, a is tracked again as a new element
+        Assert.assertEquals(set(e("a", 40)), detector.update(set(e("a", 40), e("b", 30), e("c", 20))));
+    }
+
+    @Test
+    public void testCapacityWhileAdmitting() {
+        EmergingDetector<Integer> detector = new EmergingDetector<>(2, 10, 4);
+        HashServerCounter<Integer> window = new HashServerCounter<>();
+        for (int i = 0; i < 10000; i++) {
+            window.merge(i, 5 + i);
+        }
+        window.forEach(detector::observe);
+        detector.complete();
+        Assert.assertEquals(4, detector.size());
+
+        // the fastest are tracked, so they are not emerging as new elements
+        window.clear();
+        window.merge(9999, 10004);
+        window.merge(9998, 10003);
+        window.merge(98, 30);
+        Assert.assertEquals(set(e(98, 30)), detector.update(window.filterGreaterThanOrEqualsTo(1)));
+    }
+}
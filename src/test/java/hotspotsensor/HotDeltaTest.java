@@ -0,0 +1,59 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class HotDeltaTest {
+
+    @Test
+    public void testUpdate() {
+        HotDelta.Tracker<String> tracker = new HotDelta.Tracker<>();
+        HotDelta<String> delta = tracker.update(1, list(e("a", 5), e("b", 6)));
+        Assert.assertEquals(Long.MIN_VALUE, delta.getBaseTimeId());
+        Assert.assertEquals(2, delta.getAdded().size());
+        Assert.assertTrue(delta.getRemoved().isEmpty());
+        Assert.assertTrue(delta.getChanged().isEmpty());
+
+        // nothing changes, nothing is allocated
+        delta = tracker.update(2, list(e("a", 5), e("b", 6)));
+        Assert.assertEquals(1, delta.getBaseTimeId());
+        Assert.assertTrue(delta.isEmpty());
+        Assert.assertSame(Collections.emptyList(), delta.getAdded());
+
+        delta = tracker.update(3, list(e("b", 7), e("c", 5)));
+        Assert.assertEquals(list(e("c", 5)), delta.getAdded());
+        Assert.assertEquals(list(e("a", 5)), delta.getRemoved());
+        Assert.assertEquals(5, delta.getRemoved().get(0).getCount());
+        Assert.assertEquals(list(e("b", 7)), delta.getChanged());
+        Assert.assertEquals(7, delta.getChanged().get(0).getCount());
+
+        // same counts, other scores
+        delta = tracker.update(4, list(new Entry<>("b", 7, 3.5), new Entry<>("c", 5, 5)));
+        Assert.assertTrue(delta.getChanged().isEmpty());
+        Assert.assertFalse(delta.isEmpty());
+
+        delta = tracker.update(5, Collections.emptyList());
+        Assert.assertEquals(2, delta.getRemoved().size());
+    }
+
+    @Test
+    public void testAddAll() {
+        HotDelta<String> round = new HotDelta<>(1);
+        Assert.assertTrue(round.isEmpty());
+
+        HotDelta.Tracker<String> shard0 = new HotDelta.Tracker<>();
+        HotDelta.Tracker<String> shard1 = new HotDelta.Tracker<>();
+        round.addAll(shard0.update(1, list(e("a", 5))));
+        round.addAll(shard1.update(1, list(e("b", 5))));
+        Assert.assertEquals(list(e("a", 5), e("b", 5)), round.getAdded());
+        Assert.assertTrue(round.getRemoved().isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class HotSetTest {
+
+    @Test
+    public void testEmpty() {
+        HotSet<String> hotSet = HotSet.of(list(), true);
+        Assert.assertSame(HotSet.empty(), hotSet);
+        Assert.assertEquals(0, hotSet.get("a"));
+        Assert.assertEquals(list(), hotSet.entries());
+    }
+
+    @Test
+    public void testGet() {
+        for (boolean bloomFilter : new boolean[] {false, true}) {
+            List<Entry<String>> entries = list(e("a", 3), e("b", 2), e("c", 1));
+            HotSet<String> hotSet = HotSet.of(entries, bloomFilter);
+            Assert.assertEquals(3, hotSet.get("a"));
+            Assert.assertEquals(2, hotSet.get("b"));
+            Assert.assertEquals(1, hotSet.get("c"));
+            Assert.assertEquals(0, hotSet.get("d"));
+            Assert.assertSame(entries, hotSet.entries());
+        }
+    }
+
+    @Test
+    public void testOfLong() {
+        Assert.assertNull(HotSet.of(list(e(7L, 3)), false).longHotSet());
+        Assert.assertEquals(0, HotSet.ofLong(list(), false).longHotSet().get(7L));
+
+        HotSet<Long> hotSet = HotSet.ofLong(list(e(7L, 3), e(-1L, 2)), true);
+        for (long element : new long[] {7L, -1L, 8L}) {
+            Assert.assertEquals(hotSet.get(element), hotSet.longHotSet().get(element));
+        }
+        Assert.assertEquals(3, hotSet.longHotSet().get(7L));
+    }
+
+    @Test
+    public void testViews() {
+        HotSet<String> hotSet = HotSet.of(list(new Entry<>("a", 3, 2.5), e("b", 2)), false);
+        Assert.assertEquals(list("a", "b"), new ArrayList<>(hotSet.elementSet()));
+        Assert.assertEquals(set("a", "b"), hotSet.elementSet());
+        Assert.assertEquals(set(e("a", 3), e("b", 2)), hotSet.entrySet());
+        Assert.assertFalse(hotSet.entrySet().contains(e("a", 2)));
+        Assert.assertEquals(2.5, hotSet.getScore("a"), 1e-9);
+        Assert.assertEquals(0, hotSet.getScore("c"), 1e-9);
+    }
+
+    @Test
+    public void testMany() {
+        List<Entry<String>> entries = new ArrayList<>();
+        List<Entry<Long>> longEntries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(e("k" + i, i + 1));
+            longEntries.add(e((long) i, i + 1));
+        }
+        HotSet<String> hotSet = HotSet.of(entries, true);
+        LongHotSet longHotSet = LongHotSet.of(longEntries, true);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i + 1, hotSet.get("k" + i));
+            Assert.assertEquals(i + 1, longHotSet.get(i));
+        }
+        for (int i = 1000; i < 2000; i++) {
+            Assert.assertEquals(0, hotSet.get("k" + i));
+            Assert.assertEquals(0, longHotSet.get(i));
+        }
+        Assert.assertEquals(0, LongHotSet.of(new ArrayList<>(), false).get(0));
+    }
+}
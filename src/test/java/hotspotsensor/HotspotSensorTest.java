@@ -3,13 +3,24 @@ package hotspotsensor;
 import org.junit.Test;
 import org.testng.Assert;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static hotspotsensor.TestUtils.e;
 import static hotspotsensor.TestUtils.list;
 import static hotspotsensor.TestUtils.set;
+import static hotspotsensor.TestUtils.submit;
 
 /**
  * @author iamlotus@gmail.com
@@ -29,7 +40,8 @@ public class HotspotSensorTest {
         final AtomicReference<NotificationHandler.Notification<String>> notificationAtomicReference =
             new AtomicReference<>();
         HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notification -> {
-            notificationAtomicReference.set(notification);
+            // windows also slide by time later, keep the one triggered by newEpisode
+            notificationAtomicReference.compareAndSet(null, notification);
 
         }).setWindowsNumber(windowsNum).setWindowSizeMills(windowSizeMills).setHotThreshold(hotThreshold).build();
 
@@ -38,7 +50,7 @@ public class HotspotSensorTest {
         long startTime = d.getWatch().currentTimeId();
         es.submit(() -> {
             // a=2(L2)+1(L1) b=1(L2)+1(L1)
-            d.submit(Collector.CollectorId.next(), startTime, TestUtils.list(TestUtils.e("a", 2), TestUtils.e("b", 1)),
+            submit(d, 100, startTime, TestUtils.list(TestUtils.e("a", 2), TestUtils.e("b", 1)),
                 3);
 
             try {
@@ -48,13 +60,13 @@ public class HotspotSensorTest {
             }
 
             // a=1(L2)+1(L1) c=2(L2)+1(L1)
-            d.submit(Collector.CollectorId.next(), startTime + 1,
+            submit(d, 101, startTime + 1,
                 TestUtils.list(TestUtils.e("a", 1), TestUtils.e("c", 2)), 3);
         });
 
         es.submit(() -> {
             // a=1(L2)+1(L1)
-            d.submit(Collector.CollectorId.next(), startTime, list(TestUtils.e("a", 1)), 1);
+            submit(d, 102, startTime, list(TestUtils.e("a", 1)), 1);
 
             try {
                 TimeUnit.MILLISECONDS.sleep(windowSizeMills);
@@ -63,7 +75,7 @@ public class HotspotSensorTest {
             }
 
             // b=1(L2)+1(L1) c=1(L2)+1(L1)
-            d.submit(Collector.CollectorId.next(), startTime + 1,
+            submit(d, 103, startTime + 1,
                 TestUtils.list(TestUtils.e("b", 1), TestUtils.e("c", 1)), 1);
 
         });
@@ -80,7 +92,7 @@ public class HotspotSensorTest {
 
         //trigger calculate
         // sum(a)=7,sum(b)=4 sum(c)=5
-        d.submit(Collector.CollectorId.next(), newEpisode, TestUtils.list(), 1);
+        submit(d, 104, newEpisode, TestUtils.list(), 1);
         //make sure consume is done
         TimeUnit.MILLISECONDS.sleep(50);
 
@@ -108,21 +120,21 @@ public class HotspotSensorTest {
 
         }).setWindowsNumber(3).setHotThreshold(hotThreshold).build();
 
-        Collector.CollectorId id = Collector.CollectorId.next();
+        int id = 100;
         Watch watch = d.getWatch();
         long now = watch.currentTimeId();
         // a=2(L2)+1(L1) b=1(L2)+1(L1)
-        d.submit(id, now, TestUtils.list(TestUtils.e("a", 2), TestUtils.e("b", 1)), 10);
+        submit(d, id, now, TestUtils.list(TestUtils.e("a", 2), TestUtils.e("b", 1)), 10);
 
         // a=1(L2)+1(L1)
         long nextTime = now + 1;
-        d.submit(id, nextTime, list(TestUtils.e("a", 1)), 20);
+        submit(d, id, nextTime, list(TestUtils.e("a", 1)), 20);
 
         // trigger calculate
         // sum(a)= 5, sum(b)=2
         long newEpisode = now + windowsNum;
 
-        d.submit(id, newEpisode, TestUtils.list(), 10);
+        submit(d, id, newEpisode, TestUtils.list(), 10);
 
         //make sure consume is done
         TimeUnit.MILLISECONDS.sleep(50);
@@ -139,9 +151,567 @@ public class HotspotSensorTest {
 
     }
 
+    @Test
+    public void testSlidingWindows() throws InterruptedException {
+        int windowsNum = 3;
+        int hotThreshold = 5;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(hotThreshold)
+                                                                 .build();
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+
+        // a=4(L2)+1(L1)
+        submit(d, id, now, list(e("a", 4)), 10);
+        // a=1(L2)+1(L1) b=4(L2)+1(L1)
+        submit(d, id, now + 1, list(e("a", 1), e("b", 4)), 20);
+
+        // windows [now, now+2] are summed: a=7, b=5
+        submit(d, id, now + 3, list(e("b", 1)), 30);
+        // window now expires: a=2, b=7
+        submit(d, id, now + 4, list(), 40);
+        // windows before now+3 expire: b=2
+        submit(d, id, now + 6, list(), 50);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(3, notifications.size());
+
+        Assert.assertEquals(set(e("a", 7), e("b", 5)), notifications.get(0).getEntrySet());
+        Assert.assertEquals(30, notifications.get(0).getTotalCount());
+
+        Assert.assertEquals(set(e("b", 7)), notifications.get(1).getEntrySet());
+        Assert.assertEquals(50, notifications.get(1).getTotalCount());
+
+        Assert.assertEquals(set(), notifications.get(2).getEntrySet());
+        Assert.assertEquals(70, notifications.get(2).getTotalCount());
+    }
+
+    @Test
+    public void testShardedSubmit() throws InterruptedException {
+        int windowsNum = 3;
+        int hotThreshold = 5;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(hotThreshold)
+                                                                 .setConsumerShards(4)
+                                                                 .build();
+
+        int id1 = 100;
+        int id2 = 101;
+        long now = d.getWatch().currentTimeId();
+
+        submit(d, id1, now, list(e("a", 4), e("b", 1), e("c", 4), e("d", 1), e("e", 9)), 10);
+        submit(d, id2, now + 1, list(e("b", 2), e("d", 1), e("f", 4)), 20);
+
+        // trigger calculate on all shards
+        submit(d, id1, now + 3, list(), 30);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(1, notifications.size());
+        Assert.assertEquals(set(e("a", 5), e("b", 5), e("c", 5), e("e", 10), e("f", 5)),
+            notifications.get(0).getEntrySet());
+        Assert.assertEquals(set("a", "b", "c", "e", "f"), notifications.get(0).getElementSet());
+        Assert.assertEquals(30, notifications.get(0).getTotalCount());
+    }
+
+    @Test
+    public void testOfLong() throws InterruptedException {
+        int windowsNum = 3;
+        int windowSizeMills = 20;
+
+        final List<NotificationHandler.Notification<Long>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor.OfLong d = HotspotSensor.OfLong.longBuilder()
+                                                         .addNotificationHandler(notifications::add)
+                                                         .setWindowsNumber(windowsNum)
+                                                         .setWindowSizeMills(windowSizeMills)
+                                                         .setHotThreshold(50)
+                                                         .buildOfLong();
+
+        for (int i = 0; i < 100; i++) {
+            d.increase(7L);
+            d.increase(i);
+        }
+
+        // submit the window of 7, and windows after it until calculate is triggered
+        for (int i = 0; i < windowsNum + 2; i++) {
+            TimeUnit.MILLISECONDS.sleep(windowSizeMills);
+            d.increase(8L);
+        }
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertFalse(notifications.isEmpty());
+        Assert.assertEquals(set(7L), notifications.get(0).getElementSet());
+        Assert.assertEquals(set(e(7L, 101)), notifications.get(0).getEntrySet());
+    }
+
+    @Test
+    public void testFlushIdleCollector() throws InterruptedException {
+        int windowsNum = 3;
+        int windowSizeMills = 10;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setWindowSizeMills(windowSizeMills)
+                                                                 .setHotThreshold(5)
+                                                                 .build();
+
+        // burst then stay idle, the window is never submitted by this thread
+        for (int i = 0; i < 10; i++) {
+            d.increase("a");
+        }
+
+        TimeUnit.MILLISECONDS.sleep(windowSizeMills * (windowsNum + 5));
+
+        Assert.assertTrue(notifications.stream().anyMatch(n -> n.getElementSet().contains("a")),
+            notifications.toString());
+    }
+
+    @Test
+    public void testOpenCollector() throws Exception {
+        int windowsNum = 3;
+        int windowSizeMills = 10;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setWindowSizeMills(windowSizeMills)
+                                                                 .setHotThreshold(5)
+                                                                 .build();
+
+        CollectorHandle<String> handle = d.openCollector();
+        handle.increase("a", 4);
+        handle.increase("a");
+
+        // bound to the owner thread
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            es.submit(() -> handle.increase("a")).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            es.shutdown();
+        }
+
+        // current window is submitted on close
+        handle.close();
+        handle.close();
+        try {
+            handle.increase("a");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        TimeUnit.MILLISECONDS.sleep(windowSizeMills * (windowsNum + 5));
+
+        Assert.assertTrue(notifications.stream().anyMatch(n -> n.getEntrySet().contains(e("a", 5))),
+            notifications.toString());
+    }
+
+    @Test
+    public void testCollectorStripes() throws Exception {
+        int windowsNum = 3;
+        int windowSizeMills = 10;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setWindowSizeMills(windowSizeMills)
+                                                                 .setHotThreshold(50)
+                                                                 .setCollectorStripes(2)
+                                                                 .build();
+
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            es.submit(() -> {
+                for (int j = 0; j < 100; j++) {
+                    d.increase("a");
+                }
+            });
+        }
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(1, TimeUnit.SECONDS));
+
+        TimeUnit.MILLISECONDS.sleep(windowSizeMills * (windowsNum + 5));
+
+        Assert.assertTrue(notifications.stream().anyMatch(n -> n.getElementSet().contains("a")),
+            notifications.toString());
+    }
+
+    @Test
+    public void testManualTimeSource() throws InterruptedException {
+        int windowsNum = 3;
+        int windowSizeMills = 50;
+        ManualTimeSource timeSource = new ManualTimeSource();
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setWindowSizeMills(windowSizeMills)
+                                                                 .setHotThreshold(5)
+                                                                 .setTimeSource(timeSource)
+                                                                 .build();
+
+        d.increase("a", 10);
+
+        // window 0 is flushed in window 1 and calculated in window windowsNum + 1
+        for (int i = 0; i < windowsNum + 1; i++) {
+            timeSource.advance(windowSizeMills);
+            TimeUnit.MILLISECONDS.sleep(30);
+        }
+
+        Assert.assertEquals(1, notifications.size());
+        Assert.assertEquals(set(e("a", 10)), notifications.get(0).getEntrySet());
+        Assert.assertEquals(10, notifications.get(0).getTotalCount());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        int windowsNum = 3;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(2)
+                                                                 .setTimeSource(new ManualTimeSource())
+                                                                 .setMetricsMBeanName("testMetrics")
+                                                                 .build();
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+
+        submit(d, id, now, list(e("a", 2)), 3);
+        // duplicated
+        submit(d, id, now, list(e("a", 2)), 3);
+        // slide and calculate
+        submit(d, id, now + 3, list(), 1);
+        // out-of-date
+        submit(d, id, now, list(e("b", 2)), 3);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        SensorMetrics metrics = d.getMetrics();
+        Assert.assertEquals(metrics.getSubmittedWindows(), 4);
+        Assert.assertEquals(metrics.getSubmittedElements(), 3);
+        Assert.assertEquals(metrics.getDuplicatedDrops(), 1);
+        Assert.assertEquals(metrics.getOutOfDateDrops(), 1);
+        Assert.assertEquals(metrics.getOverflowDrops(), 0);
+        Assert.assertEquals(metrics.getChannelDepth(), 0);
+        Assert.assertEquals(metrics.getMergeCount(), 4);
+        Assert.assertEquals(metrics.getNotifyCount(), notifications.size());
+        Assert.assertTrue(metrics.getNotifyCount() > 0);
+
+        ObjectName name = new ObjectName("hotspotsensor:type=SensorMetrics,name=" + ObjectName.quote("testMetrics"));
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            Assert.assertEquals(mbs.getAttribute(name, "DuplicatedDrops"), 1L);
+            Assert.assertEquals(mbs.getAttribute(name, "SubmittedWindows"), 4L);
+        } finally {
+            mbs.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testAdaptiveCapacity() {
+        int windowSizeMills = 50;
+        ManualTimeSource timeSource = new ManualTimeSource();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().setWindowSizeMills(windowSizeMills)
+                                                                 .setL1Capacity(8)
+                                                                 .setL2Capacity(2)
+                                                                 .setAdaptiveCapacity(1000)
+                                                                 .setTimeSource(timeSource)
+                                                                 .build();
+        SensorMetrics metrics = d.getMetrics();
+        Assert.assertEquals(metrics.getCapacityBudget(), 1000);
+
+        CollectorHandle<String> handle = d.openCollector();
+        Assert.assertEquals(metrics.getL1Capacity(), 8);
+        Assert.assertEquals(metrics.getL2Capacity(), 2);
+
+        // 2 promoted and 3 rejected
+        for (int i = 0; i < 5; i++) {
+            handle.increase("e" + i, 2);
+        }
+        timeSource.advance(windowSizeMills);
+        handle.increase("x");
+
+        Assert.assertEquals(metrics.getL2Rejections(), 3);
+        Assert.assertEquals(metrics.getL1Capacity(), 8);
+        Assert.assertEquals(metrics.getL2Capacity(), 4);
+        Assert.assertEquals(metrics.getResizes(), 1);
+
+        handle.close();
+        Assert.assertEquals(metrics.getL1Capacity(), 0);
+        Assert.assertEquals(metrics.getL2Capacity(), 0);
+    }
+
+    @Test
+    public void testWindowWeighting() throws InterruptedException {
+        int windowsNum = 3;
+        int hotThreshold = 5;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(hotThreshold)
+                                                                 .setWindowWeighting(WindowWeighting.exponential(1))
+                                                                 .setTimeSource(new ManualTimeSource())
+                                                                 .build();
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+
+        // a=7 in the oldest window, b=5 in the youngest
+        submit(d, id, now, list(e("a", 6)), 10);
+        submit(d, id, now + 2, list(e("b", 4)), 10);
+        // a=7*0.25, b=5
+        submit(d, id, now + 3, list(), 10);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(1, notifications.size());
+        Assert.assertEquals(set(e("b", 5)), notifications.get(0).getEntrySet());
+        Assert.assertEquals(5, notifications.get(0).getScore("b"), 1e-9);
+        Assert.assertEquals(0, notifications.get(0).getScore("a"), 1e-9);
+    }
+
+    @Test
+    public void testTopK() throws InterruptedException {
+        int windowsNum = 3;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(2)
+                                                                 .setMaxHotElements(3)
+                                                                 .setConsumerShards(2)
+                                                                 .setHotSetBloomFilter(true)
+                                                                 .setTimeSource(new ManualTimeSource())
+                                                                 .build();
+        Assert.assertEquals(list(), d.topK(10));
+        Assert.assertFalse(d.isHot("f"));
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+
+        submit(d, id, now, list(e("a", 1), e("b", 1), e("c", 2), e("d", 3), e("e", 4), e("f", 5)), 100);
+        submit(d, id, now + windowsNum, list(), 100);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(1, notifications.size());
+        Assert.assertEquals(set(e("f", 6), e("e", 5), e("d", 4)), notifications.get(0).getEntrySet());
+        Assert.assertEquals(list(e("f", 6), e("e", 5), e("d", 4)), d.topK(10));
+        Assert.assertEquals(list(e("f", 6), e("e", 5)), d.topK(2));
+        Assert.assertTrue(d.isHot("f"));
+        Assert.assertEquals(4, d.hotCount("d"));
+        // beyond maxHotElements
+        Assert.assertFalse(d.isHot("c"));
+        Assert.assertEquals(0, d.hotCount("x"));
+        Assert.assertEquals(1, d.getNotificationDispatchers().get(0).getHandledCount());
+    }
+
+    @Test
+    public void testDeltas() throws InterruptedException {
+        int windowsNum = 3;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(5)
+                                                                 .setTimeSource(new ManualTimeSource())
+                                                                 .build();
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+        submit(d, id, now, list(e("a", 4)), 10);
+        submit(d, id, now + 1, list(e("b", 5)), 10);
+        // a=5, b=6
+        submit(d, id, now + windowsNum, list(e("b", 1)), 10);
+        // a expires, b=8
+        submit(d, id, now + windowsNum + 1, list(), 10);
+        // all expire
+        submit(d, id, now + windowsNum * 3, list(), 10);
+        // nothing changes
+        submit(d, id, now + windowsNum * 3 + 1, list(), 10);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(4, notifications.size());
+        NotificationHandler.Notification<String> first = notifications.get(0);
+        Assert.assertEquals(list(e("b", 6), e("a", 5)), first.getAdded());
+        Assert.assertEquals(list(), first.getRemoved());
+        Assert.assertEquals(list(), first.getChanged());
+
+        NotificationHandler.Notification<String> second = notifications.get(1);
+        Assert.assertTrue(second.isElementSetChanged());
+        Assert.assertEquals(list(), second.getAdded());
+        Assert.assertEquals(list(e("a", 5)), second.getRemoved());
+        Assert.assertEquals(list(e("b", 8)), second.getChanged());
+        Assert.assertEquals(set(e("b", 8)), second.getEntrySet());
+
+        NotificationHandler.Notification<String> third = notifications.get(2);
+        Assert.assertEquals(list(e("b", 8)), third.getRemoved());
+
+        NotificationHandler.Notification<String> fourth = notifications.get(3);
+        Assert.assertFalse(fourth.isElementSetChanged());
+        Assert.assertFalse(fourth.isEntrySetChanged());
+        Assert.assertEquals(set(), fourth.getElementSet());
+    }
+
+    @Test
+    public void testIsHotOfLong() throws InterruptedException {
+        int windowsNum = 3;
+
+        HotspotSensor.OfLong d = HotspotSensor.OfLong.longBuilder()
+                                                         .setWindowsNumber(windowsNum)
+                                                         .setHotThreshold(5)
+                                                         .setTimeSource(new ManualTimeSource())
+                                                         .buildOfLong();
+        Assert.assertFalse(d.isHot(7L));
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+        submit(d, id, now, list(e(7L, 9), e(8L, 1)), 100);
+        submit(d, id, now + windowsNum, list(), 100);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertTrue(d.isHot(7L));
+        Assert.assertEquals(10, d.hotCount(7L));
+        Assert.assertEquals(10, d.hotCount(Long.valueOf(7L)));
+        Assert.assertFalse(d.isHot(8L));
+        Assert.assertEquals(list(e(7L, 10)), d.topK(1));
+    }
+
+    @Test
+    public void testEmergingDetection() throws InterruptedException {
+        int windowsNum = 3;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(100)
+                                                                 .setEmergingDetection(2, 10)
+                                                                 .setTimeSource(new ManualTimeSource())
+                                                                 .build();
+
+        int id = 100;
+        long now = d.getWatch().currentTimeId();
+
+        for (int i = 0; i < windowsNum + 1; i++) {
+            submit(d, id, now + i, list(e("a", 4), e("b", 19)), 100);
+        }
+        // a grows from 5 to 30 per window
+        submit(d, id, now + windowsNum + 1, list(e("a", 29), e("b", 19)), 100);
+        submit(d, id, now + windowsNum + 2, list(), 100);
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(3, notifications.size());
+        Assert.assertEquals(set(), notifications.get(0).getEmergingSet());
+        Assert.assertEquals(set(), notifications.get(1).getEmergingSet());
+        Assert.assertEquals(set(e("a", 30)), notifications.get(2).getEmergingSet());
+        Assert.assertEquals(set(), notifications.get(2).getEntrySet());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWindowWeightingWithSketch() {
+        HotspotSensor.<String>builder()
+                     .setWindowWeighting(WindowWeighting.linear())
+                     .setServerSketch(1024, 4, 16)
+                     .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEmergingDetectionWithSketch() {
+        HotspotSensor.<String>builder()
+                     .setEmergingDetection(2, 10)
+                     .setServerSketch(1024, 4, 16)
+                     .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEmergingDetectionWithSketchOfLong() {
+        HotspotSensor.OfLong.longBuilder()
+                            .setEmergingDetection(2, 10)
+                            .setServerSketch(1024, 4, 16)
+                            .buildOfLong();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEmergingDetectionWithSketchOfAggregator() {
+        HotspotSensor.<String>builder()
+                     .setEmergingDetection(2, 10)
+                     .setServerSketch(1024, 4, 16)
+                     .buildClusterAggregator(KeyCodec.ofString(), SummaryTransport.loopback());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSummaryExportWithSketch() {
+        HotspotSensor.<String>builder()
+                     .setSummaryExport("a", KeyCodec.ofString(), SummaryTransport.loopback())
+                     .setServerSketch(1024, 4, 16)
+                     .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSummaryExportWithSketchOfLong() {
+        HotspotSensor.OfLong.longBuilder()
+                            .setSummaryExport("a", KeyCodec.ofLong(), SummaryTransport.loopback())
+                            .setServerSketch(1024, 4, 16)
+                            .buildOfLong();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckpointWithSketch() throws Exception {
+        Path file = Files.createTempFile("sensor", ".checkpoint");
+        try {
+            HotspotSensor.<String>builder()
+                         .setCheckpoint(file, KeyCodec.ofString(), 1)
+                         .setServerSketch(1024, 4, 16)
+                         .build();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckpointWithSketchOfLong() throws Exception {
+        Path file = Files.createTempFile("sensor", ".checkpoint");
+        try {
+            HotspotSensor.OfLong.longBuilder()
+                                .setCheckpoint(file, KeyCodec.ofLong(), 1)
+                                .setServerSketch(1024, 4, 16)
+                                .buildOfLong();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @Test
     public void testServerCounter() {
-        HotspotSensor.ServerCounter<String> serverCounter = new HotspotSensor.ServerCounter<>();
+        ServerCounter<String> serverCounter = new HashServerCounter<>();
         serverCounter.merge("a", 2);
         serverCounter.merge("b", 3);
         serverCounter.merge("a", 2);
@@ -153,29 +723,181 @@ public class HotspotSensorTest {
             serverCounter.filterGreaterThanOrEqualsTo(0));
     }
 
+    @Test
+    public void testWarmRestart() throws Exception {
+        int windowsNum = 3;
+        int windowSizeMills = 50;
+        ManualTimeSource timeSource = new ManualTimeSource(1000);
+        Path file = Files.createTempFile("hotspot-sensor", ".checkpoint");
+        Path copy = Files.createTempFile("hotspot-sensor", ".checkpoint");
+        try {
+            List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+            HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                     .setWindowsNumber(windowsNum)
+                                                                     .setWindowSizeMills(windowSizeMills)
+                                                                     .setHotThreshold(5)
+                                                                     .setTimeSource(timeSource)
+                                                                     .setCheckpoint(file, KeyCodec.ofString(), 1)
+                                                                     .build();
+            int id = 100;
+            submit(d, id, 0, list(e("a", 9)), 10);
+            for (int i = 1; i <= windowsNum + 1; i++) {
+                timeSource.advance(windowSizeMills);
+                if (i == windowsNum) {
+                    submit(d, id, i, list(e("b", 4)), 5);
+                }
+                TimeUnit.MILLISECONDS.sleep(30);
+            }
+            // windows [0, 2] are calculated, window 3 is checkpointed
+            Assert.assertEquals(notifications.size(), 1);
+            Assert.assertEquals(notifications.get(0).getEntrySet(), set(e("a", 10)));
+
+            // restart with what is on disk now
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            List<NotificationHandler.Notification<String>> restarted = new CopyOnWriteArrayList<>();
+            HotspotSensor<String> r = HotspotSensor.<String>builder().addNotificationHandler(restarted::add)
+                                                                     .setWindowsNumber(windowsNum)
+                                                                     .setWindowSizeMills(windowSizeMills)
+                                                                     .setHotThreshold(5)
+                                                                     .setTimeSource(timeSource)
+                                                                     .setCheckpoint(copy, KeyCodec.ofString(), 1)
+                                                                     .build();
+            // hot set is restored at once
+            Assert.assertTrue(r.isHot("a"));
+            Assert.assertEquals(r.hotCount("a"), 10);
+
+            // window 3 is restored, window 0 is out of horizon
+            for (int i = 0; i < 2; i++) {
+                timeSource.advance(windowSizeMills);
+                TimeUnit.MILLISECONDS.sleep(30);
+            }
+            Assert.assertEquals(restarted.size(), 1);
+            Assert.assertEquals(restarted.get(0).getEntrySet(), set(e("b", 5)));
+            Assert.assertEquals(restarted.get(0).getRemoved(), list(e("a", 10)));
+            Assert.assertEquals(restarted.get(0).getTotalCount(), 5);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    @Test
+    public void testStopWithCheckpoint() throws Exception {
+        int windowsNum = 3;
+        int windowSizeMills = 50;
+        ManualTimeSource timeSource = new ManualTimeSource(1000);
+        Path file = Files.createTempFile("hotspot-sensor", ".checkpoint");
+        try {
+            // never checkpointed before stop
+            HotspotSensor<String> d = HotspotSensor.<String>builder().setWindowsNumber(windowsNum)
+                                                                     .setWindowSizeMills(windowSizeMills)
+                                                                     .setHotThreshold(5)
+                                                                     .setTimeSource(timeSource)
+                                                                     .setCheckpoint(file, KeyCodec.ofString(), 100)
+                                                                     .build();
+            submit(d, 100, 0, list(e("a", 9)), 10);
+            TimeUnit.MILLISECONDS.sleep(30);
+            d.stop();
+            Assert.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+
+            List<NotificationHandler.Notification<String>> restarted = new CopyOnWriteArrayList<>();
+            HotspotSensor<String> r = HotspotSensor.<String>builder().addNotificationHandler(restarted::add)
+                                                                     .setWindowsNumber(windowsNum)
+                                                                     .setWindowSizeMills(windowSizeMills)
+                                                                     .setHotThreshold(5)
+                                                                     .setTimeSource(timeSource)
+                                                                     .setCheckpoint(file, KeyCodec.ofString(), 100)
+                                                                     .build();
+            for (int i = 0; i <= windowsNum; i++) {
+                timeSource.advance(windowSizeMills);
+                TimeUnit.MILLISECONDS.sleep(30);
+            }
+            r.stop();
+            // window 0 is restored
+            Assert.assertFalse(restarted.isEmpty());
+            Assert.assertEquals(restarted.get(0).getEntrySet(), set(e("a", 10)));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSnapshotReusedIfNothingChanges() throws InterruptedException {
+        int windowsNum = 3;
+
+        final List<NotificationHandler.Notification<String>> notifications = new CopyOnWriteArrayList<>();
+        HotspotSensor<String> d = HotspotSensor.<String>builder().addNotificationHandler(notifications::add)
+                                                                 .setWindowsNumber(windowsNum)
+                                                                 .setHotThreshold(5)
+                                                                 .setTimeSource(new ManualTimeSource())
+                                                                 .build();
+
+        long now = d.getWatch().currentTimeId();
+        // b=21 in every calculation, counts include the one in L1
+        for (int i = 0; i <= windowsNum + 2; i++) {
+            submit(d, 100, now + i, list(e("b", 6)), 10);
+        }
+
+        //make sure consume is done
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        Assert.assertEquals(notifications.size(), 3);
+        Assert.assertEquals(notifications.get(0).getAdded(), list(e("b", 21)));
+        for (int i = 1; i < notifications.size(); i++) {
+            Assert.assertFalse(notifications.get(i).isEntrySetChanged());
+            Assert.assertSame(notifications.get(i).getEntrySet(), notifications.get(0).getEntrySet());
+        }
+        Assert.assertEquals(d.hotCount("b"), 21);
+    }
+
+    @Test
+    public void testStopInterrupted() throws Exception {
+        Path file = Files.createTempFile("hotspot-sensor", ".checkpoint");
+        try {
+            HotspotSensor<String> d = HotspotSensor.<String>builder().setTimeSource(new ManualTimeSource())
+                                                                     .setCheckpoint(file, KeyCodec.ofString(), 100)
+                                                                     .build();
+            Thread.currentThread().interrupt();
+            d.stop();
+            Assert.assertTrue(Thread.interrupted());
+            // closed anyway, the file of this run replaces the checkpoint
+            Assert.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+            Assert.assertTrue(Files.size(file) > 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     @Test
     public void testServerWindow() {
 
         HotspotSensor.ServerWindow serverWindow = new HotspotSensor.ServerWindow();
-        Collector.CollectorId collectorId1 = Collector.CollectorId.next();
-        Collector.CollectorId collectorId2 = Collector.CollectorId.next();
         Watch w = new Watch(10);
         long timeId1 = w.currentTimeId();
 
+        Assert.assertTrue(serverWindow.merge(message(0, timeId1, 10, "a", 2)));
 
-        Assert.assertTrue(serverWindow.merge(collectorId1, timeId1, list(TestUtils.e("a", 1)), 10));
-
-        Assert.assertFalse(serverWindow.merge(collectorId1, timeId1, list(TestUtils.e("b", 1)), 20));
+        Assert.assertFalse(serverWindow.merge(message(0, timeId1, 20, "b", 2)));
 
-        Assert.assertTrue(serverWindow.merge(collectorId2, timeId1, list(TestUtils.e("c", 1)), 30));
+        // index beyond the initial bitset
+        Assert.assertTrue(serverWindow.merge(message(1000, timeId1, 30, "c", 2)));
 
         Assert.assertEquals(40, serverWindow.getTotalCount());
         Assert.assertEquals(TestUtils.set(TestUtils.e("a", 2), TestUtils.e("c", 2)),
             serverWindow.getServerCounter().filterGreaterThanOrEqualsTo(1));
 
-
+        // indexes are forgotten on clear
+        serverWindow.clear();
+        Assert.assertTrue(serverWindow.merge(message(1000, timeId1 + 1, 1, "a", 1)));
+        Assert.assertEquals(1, serverWindow.getTotalCount());
     }
 
-
+    private static ClientMessage message(int collectorIndex, long timeId, long totalCount, String element,
+        int count) {
+        ClientMessage message = new ClientMessage(null, false);
+        message.reset(collectorIndex, timeId, totalCount);
+        message.add(element, count);
+        return message;
+    }
 
 }
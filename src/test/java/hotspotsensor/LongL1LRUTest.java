@@ -0,0 +1,67 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class LongL1LRUTest {
+
+    @Test
+    public void testReplace() {
+        LongL1LRU l1 = new LongL1LRU(2);
+        Assert.assertFalse(l1.put(1));
+        Assert.assertTrue(l1.put(1));
+        Assert.assertEquals(0, l1.size());
+
+        Assert.assertFalse(l1.put(1));
+        Assert.assertFalse(l1.put(2));
+        Assert.assertTrue(l1.isFull());
+        // 1 is evicted
+        Assert.assertFalse(l1.put(3));
+        Assert.assertFalse(l1.contains(1));
+        Assert.assertTrue(l1.contains(2));
+        Assert.assertTrue(l1.contains(3));
+        Assert.assertTrue(l1.put(2));
+        Assert.assertEquals(1, l1.size());
+
+        l1.clear();
+        Assert.assertEquals(0, l1.size());
+        Assert.assertFalse(l1.contains(3));
+        Assert.assertFalse(l1.put(3));
+    }
+
+    @Test
+    public void testAgainstLinkedHashSet() {
+        int capacity = 50;
+        LongL1LRU l1 = new LongL1LRU(capacity);
+        // insertion ordered, the first one is the least recently put
+        LinkedHashSet<Long> expected = new LinkedHashSet<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            if (i % 10000 == 0) {
+                l1.clear();
+                expected.clear();
+            }
+
+            long element = random.nextInt(200) - 100;
+            boolean present = expected.remove(element);
+            if (!present) {
+                if (expected.size() == capacity) {
+                    expected.remove(expected.iterator().next());
+                }
+                expected.add(element);
+            }
+            Assert.assertEquals(present, l1.put(element));
+            Assert.assertEquals(expected.size(), l1.size());
+        }
+
+        for (long element = -100; element < 100; element++) {
+            Assert.assertEquals(expected.contains(element), l1.contains(element));
+        }
+    }
+}
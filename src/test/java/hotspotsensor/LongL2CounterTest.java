@@ -0,0 +1,42 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class LongL2CounterTest {
+
+    @Test
+    public void testAdd() {
+        LongL2Counter c = new LongL2Counter(2);
+        Assert.assertTrue(c.addIfAbsentAndNotFull(1));
+        Assert.assertEquals(set(e(1L, 1)), set(c.getElements()));
+
+        //present
+        Assert.assertFalse(c.addIfAbsentAndNotFull(1));
+
+        Assert.assertTrue(c.addIfAbsentAndNotFull(-2));
+        Assert.assertTrue(c.incIfPresent(-2));
+        Assert.assertEquals(set(e(1L, 1), e(-2L, 2)), set(c.getElements()));
+
+        //full
+        Assert.assertFalse(c.addIfAbsentAndNotFull(3));
+        Assert.assertFalse(c.incIfPresent(3));
+
+        Assert.assertTrue(c.incIfPresent(1));
+        Assert.assertTrue(c.incIfPresent(1));
+        Assert.assertEquals(3, c.get(1));
+        Assert.assertEquals(set(e(1L, 3), e(-2L, 2)), set(c.getElements()));
+
+        c.clear();
+        Assert.assertEquals(set(), set(c.getElements()));
+        Assert.assertEquals(0, c.get(1));
+        Assert.assertTrue(c.addIfAbsentAndNotFull(3));
+        Assert.assertEquals(set(e(3L, 1)), set(c.getElements()));
+    }
+}
@@ -0,0 +1,67 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class LongServerCounterTest {
+
+    @Test
+    public void testMerge() {
+        LongServerCounter serverCounter = new LongServerCounter();
+        serverCounter.merge(1L, 2);
+        serverCounter.merge(2L, 3);
+        serverCounter.merge(1L, 2);
+        Assert.assertEquals(set(), serverCounter.filterGreaterThanOrEqualsTo(5));
+        Assert.assertEquals(set(e(1L, 4)), serverCounter.filterGreaterThanOrEqualsTo(4));
+        Assert.assertEquals(set(e(1L, 4), e(2L, 3)), serverCounter.filterGreaterThanOrEqualsTo(0));
+
+        serverCounter.clear();
+        Assert.assertEquals(0, serverCounter.size());
+        Assert.assertEquals(set(), serverCounter.filterGreaterThanOrEqualsTo(0));
+    }
+
+    @Test
+    public void testSubtractAgainstHashServerCounter() {
+        Random random = new Random(0);
+        LongServerCounter aggregate = new LongServerCounter();
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int round = 0; round < 20; round++) {
+            LongServerCounter window = new LongServerCounter();
+            for (int i = 0; i < 2000; i++) {
+                long element = random.nextInt(5000);
+                int count = random.nextInt(3) + 1;
+                window.merge(element, count);
+                aggregate.merge(element, count);
+                expected.merge(element, count, Integer::sum);
+            }
+
+            if (round % 2 == 1) {
+                aggregate.subtract(window);
+                for (Entry<Long> entry : window.filterGreaterThanOrEqualsTo(0)) {
+                    int remain = expected.get(entry.getElement()) - entry.getCount();
+                    if (remain <= 0) {
+                        expected.remove(entry.getElement());
+                    } else {
+                        expected.put(entry.getElement(), remain);
+                    }
+                }
+            }
+
+            Assert.assertEquals(expected.size(), aggregate.size());
+            for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+                Assert.assertEquals((int) entry.getValue(), aggregate.get(entry.getKey()));
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class NotificationDispatcherTest {
+
+    private static final HotSet<String> EMPTY = HotSet.empty();
+
+    private static final HotSet<String> A = HotSet.of(list(e("a", 1)), false);
+
+    private static final HotSet<String> AB = HotSet.of(list(e("a", 2), e("b", 1)), false);
+
+    private static NotificationHandler.Notification<String> notification(HotSet<String> previous,
+        HotSet<String> current, long totalCount) {
+        return new HotspotSensor.NotificationImpl<>(previous, current, Collections.emptySet(), totalCount);
+    }
+
+    @Test
+    public void testInline() {
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        NotificationDispatcher<String> dispatcher =
+            new NotificationDispatcher<>(n -> handled.add(n.getTotalCount()), Runnable::run);
+        dispatcher.dispatch(notification(EMPTY, A, 1));
+        dispatcher.dispatch(notification(A, A, 2));
+
+        Assert.assertEquals(list(1L, 2L), handled);
+        Assert.assertEquals(2, dispatcher.getDispatchedCount());
+        Assert.assertEquals(2, dispatcher.getHandledCount());
+        Assert.assertEquals(0, dispatcher.getConflatedCount());
+    }
+
+    @Test
+    public void testConflate() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<NotificationHandler.Notification<String>> handled = new CopyOnWriteArrayList<>();
+
+        NotificationDispatcher<String> dispatcher = new NotificationDispatcher<>(n -> {
+            handled.add(n);
+            if (handled.size() == 1) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, executor);
+
+        try {
+            dispatcher.dispatch(notification(EMPTY, A, 1));
+            Assert.assertTrue(blocked.await(1, TimeUnit.SECONDS));
+
+            // handler is slow, 2 and 3 are conflated into 4
+            dispatcher.dispatch(notification(A, A, 2));
+            dispatcher.dispatch(notification(A, EMPTY, 3));
+            dispatcher.dispatch(notification(EMPTY, AB, 4));
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (dispatcher.getHandledCount() < 2 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+
+            Assert.assertEquals(2, handled.size());
+            NotificationHandler.Notification<String> last = handled.get(1);
+            Assert.assertEquals(4, last.getTotalCount());
+            // deltas are based on the handled A rather than EMPTY of 4
+            Assert.assertTrue(last.isElementSetChanged());
+            Assert.assertEquals(list(e("b", 1)), last.getAdded());
+            Assert.assertEquals(list(), last.getRemoved());
+            Assert.assertEquals(list(e("a", 2)), last.getChanged());
+            Assert.assertEquals(4, dispatcher.getDispatchedCount());
+            Assert.assertEquals(2, dispatcher.getConflatedCount());
+            Assert.assertTrue(dispatcher.getMaxLagNanos() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConflateToNoChange() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        List<NotificationHandler.Notification<String>> handled = new CopyOnWriteArrayList<>();
+        NotificationDispatcher<String> dispatcher = new NotificationDispatcher<>(handled::add, executor);
+
+        try {
+            // A is added then removed before handled
+            dispatcher.dispatch(notification(EMPTY, A, 1));
+            dispatcher.dispatch(notification(A, EMPTY, 2));
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (dispatcher.getHandledCount() < 1 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+
+            Assert.assertEquals(1, handled.size());
+            Assert.assertFalse(handled.get(0).isElementSetChanged());
+            Assert.assertFalse(handled.get(0).isEntrySetChanged());
+            Assert.assertEquals(list(), handled.get(0).getAdded());
+            Assert.assertEquals(list(), handled.get(0).getRemoved());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailure() {
+        NotificationDispatcher<String> dispatcher = new NotificationDispatcher<>(n -> {
+            throw new IllegalStateException();
+        }, Runnable::run);
+        dispatcher.dispatch(notification(EMPTY, A, 1));
+        dispatcher.dispatch(notification(A, EMPTY, 2));
+        Assert.assertEquals(2, dispatcher.getFailedCount());
+        Assert.assertEquals(2, dispatcher.getHandledCount());
+    }
+}
@@ -0,0 +1,113 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static hotspotsensor.TestUtils.list;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class RingBufferChannelTest {
+
+    @Test
+    public void testOfferAndDrain() {
+        RingBufferChannel<String> channel = new RingBufferChannel<>(3, WaitStrategy.PARK);
+        Assert.assertEquals(4, channel.capacity());
+        Assert.assertTrue(channel.isEmpty());
+
+        Assert.assertTrue(channel.offer("a"));
+        Assert.assertTrue(channel.offer("b"));
+        Assert.assertTrue(channel.offer("c"));
+        Assert.assertTrue(channel.offer("d"));
+        // full
+        Assert.assertFalse(channel.offer("e"));
+
+        List<String> result = new ArrayList<>();
+        Assert.assertEquals(2, channel.drain(result::add, 2));
+        Assert.assertEquals(list("a", "b"), result);
+
+        Assert.assertTrue(channel.offer("e"));
+        Assert.assertEquals(3, channel.drain(result::add, 10));
+        Assert.assertEquals(list("a", "b", "c", "d", "e"), result);
+        Assert.assertTrue(channel.isEmpty());
+        Assert.assertEquals(0, channel.drain(result::add, 10));
+    }
+
+    @Test
+    public void testConcurrentOffer() throws InterruptedException {
+        int producers = 4;
+        int times = 100000;
+        RingBufferChannel<Long> channel = new RingBufferChannel<>(64, WaitStrategy.PARK);
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+
+        ExecutorService es = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            es.submit(() -> {
+                for (long i = 1; i <= times; i++) {
+                    while (!channel.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (count.get() < producers * times && System.currentTimeMillis() < deadline) {
+            if (channel.drain(v -> {
+                sum.addAndGet(v);
+                count.incrementAndGet();
+            }, 16) == 0) {
+                channel.await(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        es.shutdown();
+
+        Assert.assertEquals(producers * times, count.get());
+        Assert.assertEquals(producers * ((long) times * (times + 1) / 2), sum.get());
+    }
+
+    @Test
+    public void testWakeupLatency() throws InterruptedException {
+        int times = 2000;
+        long parkNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        RingBufferChannel<Long> channel = new RingBufferChannel<>(64, WaitStrategy.PARK);
+        AtomicLong received = new AtomicLong();
+        AtomicLong latencies = new AtomicLong();
+
+        Thread consumer = new Thread(() -> {
+            while (received.get() < times) {
+                if (channel.drain(sent -> {
+                    latencies.addAndGet(System.nanoTime() - sent);
+                    received.incrementAndGet();
+                }, 16) == 0) {
+                    channel.await(parkNanos);
+                }
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < times; i++) {
+            // let the consumer park before every offer
+            while (received.get() < i) {
+                Thread.yield();
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            Assert.assertTrue(channel.offer(System.nanoTime()));
+        }
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+
+        Assert.assertEquals(times, received.get());
+        // a lost wakeup waits for the whole park
+        Assert.assertTrue("mean latency " + latencies.get() / times, latencies.get() / times < parkNanos / 10);
+    }
+}
@@ -0,0 +1,144 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class SensorCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReload() throws Exception {
+        Path file = folder.newFile("checkpoint").toPath();
+        SensorCheckpoint<String> checkpoint = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096);
+        SensorCheckpoint.Restored<String> restored = checkpoint.open(50, 2);
+        Assert.assertTrue(restored.windows.isEmpty());
+        Assert.assertNull(restored.hotSet);
+
+        Assert.assertTrue(checkpoint.region(0).append(summary(0, 0, list(e("a", 1)))));
+        Assert.assertTrue(checkpoint.region(0).append(summary(0, 50, list(e("a", 2)))));
+        // supersedes the first record
+        Assert.assertTrue(checkpoint.region(0).append(summary(0, 0, list(e("a", 3)))));
+        Assert.assertTrue(checkpoint.region(1).append(summary(1, 0, list(e("b", 4)))));
+        checkpoint.writeHotSet(summary(0, 50, list(e("x", 9))));
+        checkpoint.writeHotSet(summary(0, 100, list(e("y", 9))));
+        checkpoint.region(0).flush();
+        checkpoint.region(1).flush();
+        // hot set is not flushed yet
+        Assert.assertTrue(Files.exists(file.resolveSibling("checkpoint.tmp")));
+        checkpoint.flushHotSet();
+
+        // shards number changes
+        restored = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096).open(50, 1);
+        Assert.assertEquals(3, restored.windows.size());
+        Assert.assertEquals(list(e("a", 3)), restored.windows.get(0).getEntries());
+        Assert.assertEquals(list(e("a", 2)), restored.windows.get(1).getEntries());
+        Assert.assertEquals(list(e("b", 4)), restored.windows.get(2).getEntries());
+        Assert.assertEquals(1, restored.windows.get(2).getPartition());
+        Assert.assertEquals(100, restored.hotSet.getWindowStartMillis());
+        Assert.assertEquals(list(e("y", 9)), restored.hotSet.getEntries());
+
+        // the new file replaces the checkpoint once every region is flushed
+        checkpoint = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096);
+        checkpoint.open(50, 1);
+        Assert.assertTrue(checkpoint.region(0).append(summary(0, 150, list(e("c", 5)))));
+        checkpoint.close();
+        restored = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096).open(50, 1);
+        Assert.assertEquals(1, restored.windows.size());
+        Assert.assertEquals(list(e("c", 5)), restored.windows.get(0).getEntries());
+        Assert.assertNull(restored.hotSet);
+    }
+
+    @Test
+    public void testCrashBeforeComplete() throws Exception {
+        Path file = folder.newFile("checkpoint").toPath();
+        SensorCheckpoint<String> checkpoint = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096);
+        checkpoint.open(50, 2);
+        Assert.assertTrue(checkpoint.region(0).append(summary(0, 0, list(e("a", 1)))));
+        Assert.assertTrue(checkpoint.region(1).append(summary(1, 0, list(e("b", 2)))));
+        checkpoint.close();
+
+        // crash right after open
+        new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096).open(50, 2);
+        // crash before every region is flushed
+        checkpoint = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096);
+        checkpoint.open(50, 2);
+        Assert.assertTrue(checkpoint.region(0).append(summary(0, 50, list(e("c", 3)))));
+        checkpoint.region(0).flush();
+        checkpoint.writeHotSet(summary(0, 50, list(e("c", 3))));
+
+        SensorCheckpoint.Restored<String> restored =
+            new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096).open(50, 2);
+        Assert.assertEquals(2, restored.windows.size());
+        Assert.assertEquals(list(e("a", 1)), restored.windows.get(0).getEntries());
+        Assert.assertEquals(list(e("b", 2)), restored.windows.get(1).getEntries());
+        Assert.assertNull(restored.hotSet);
+    }
+
+    @Test
+    public void testRegionFull() throws Exception {
+        Path file = folder.newFile("checkpoint").toPath();
+        SensorCheckpoint<String> checkpoint = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 64);
+        checkpoint.open(50, 1);
+
+        SensorCheckpoint<String>.Region region = checkpoint.region(0);
+        Assert.assertTrue(region.append(summary(0, 0, list(e("a", 1)))));
+        Assert.assertTrue(region.append(summary(0, 50, list(e("a", 1)))));
+        // 18 bytes a record and 4 bytes of end mark
+        Assert.assertTrue(region.append(summary(0, 100, list(e("a", 1)))));
+        Assert.assertFalse(region.append(summary(0, 150, list(e("a", 1)))));
+        region.reset();
+        Assert.assertTrue(region.append(summary(0, 100, list(e("a", 1)))));
+        checkpoint.close();
+
+        SensorCheckpoint.Restored<String> restored =
+            new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 64).open(50, 1);
+        Assert.assertEquals(1, restored.windows.size());
+        Assert.assertEquals(100, restored.windows.get(0).getWindowStartMillis());
+    }
+
+    @Test
+    public void testIgnoreMismatchedOrTorn() throws Exception {
+        Path file = folder.newFile("checkpoint").toPath();
+        SensorCheckpoint<String> checkpoint = new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096);
+        checkpoint.open(50, 1);
+        checkpoint.region(0).append(summary(0, 0, list(e("a", 1))));
+        checkpoint.region(0).append(summary(0, 50, list(e("b", 1))));
+        checkpoint.close();
+
+        // another window size
+        Path copy = folder.getRoot().toPath().resolve("copy");
+        Files.copy(file, copy);
+        Assert.assertTrue(new SensorCheckpoint<>(copy, KeyCodec.ofString(), 1, 4096).open(100, 1).windows.isEmpty());
+
+        // corrupt the last byte of the second record, the first one survives
+        int first = 8 + summary(0, 0, list(e("a", 1))).encode(KeyCodec.ofString()).length;
+        int second = 8 + summary(0, 50, list(e("b", 1))).encode(KeyCodec.ofString()).length;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(20 + first + second - 1);
+            raf.write(0x7F);
+        }
+        SensorCheckpoint.Restored<String> restored =
+            new SensorCheckpoint<>(file, KeyCodec.ofString(), 1, 4096).open(50, 1);
+        Assert.assertEquals(1, restored.windows.size());
+        Assert.assertEquals(list(e("a", 1)), restored.windows.get(0).getEntries());
+    }
+
+    private static WindowSummary<String> summary(int partition, long windowStartMillis, List<Entry<String>> entries) {
+        return new WindowSummary<>("", partition, 50, windowStartMillis, 0, entries);
+    }
+}
@@ -0,0 +1,59 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class SensorMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        SensorMetrics.Histogram histogram = new SensorMetrics.Histogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentile(0.99));
+        Assert.assertEquals(0.0, histogram.getMean());
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-1);
+
+        Assert.assertEquals(101, histogram.getCount());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(5050.0 / 101, histogram.getMean(), 1e-9);
+        Assert.assertEquals(0, histogram.getPercentile(0));
+        // 50 is in bucket [32, 64)
+        Assert.assertEquals(63, histogram.getPercentile(0.5));
+        // bucket [64, 128) is bounded by max
+        Assert.assertEquals(100, histogram.getPercentile(0.99));
+        Assert.assertEquals(100, histogram.getPercentile(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalQuantile() {
+        new SensorMetrics.Histogram().getPercentile(1.5);
+    }
+
+    @Test
+    public void testRecordSubmission() {
+        SensorMetrics metrics = new SensorMetrics(() -> 3, null);
+        ClientMessage message = new ClientMessage(null, true);
+        message.reset(0, 0, 10);
+        message.add(1L, 2);
+        message.add(2L, 3);
+        message.setCollectorCounts(2, 1);
+        metrics.recordSubmission(message);
+
+        // parts do not repeat counts of collector
+        ClientMessage part = message.newPart();
+        metrics.recordSubmission(part);
+
+        Assert.assertEquals(2, metrics.getSubmittedWindows());
+        Assert.assertEquals(2, metrics.getSubmittedElements());
+        Assert.assertEquals(2, metrics.getL1Promotions());
+        Assert.assertEquals(1, metrics.getL2Rejections());
+        Assert.assertEquals(3, metrics.getChannelDepth());
+    }
+}
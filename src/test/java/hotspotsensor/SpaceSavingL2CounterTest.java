@@ -0,0 +1,116 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class SpaceSavingL2CounterTest {
+
+    @Test
+    public void testAdd() {
+        SpaceSavingL2Counter<String> c = new SpaceSavingL2Counter<>(2);
+        Assert.assertTrue(c.addIfAbsentAndNotFull("a"));
+        Assert.assertEquals(set(e("a", 1)), set(c.getElements()));
+
+        //present
+        Assert.assertFalse(c.addIfAbsentAndNotFull("a"));
+        Assert.assertTrue(c.addIfAbsentAndNotFull("b"));
+        Assert.assertTrue(c.isFull());
+        Assert.assertEquals(set(e("a", 1), e("b", 1)), set(c.getElements()));
+
+        Assert.assertTrue(c.incIfPresent("b"));
+        Assert.assertTrue(c.incIfPresent("b"));
+        Assert.assertEquals(set(e("a", 1), e("b", 3)), set(c.getElements()));
+        Assert.assertFalse(c.incIfPresent("c"));
+
+        // full, replace the minimum a=1, c=2 with error 1
+        Assert.assertTrue(c.addIfAbsentAndNotFull("c"));
+        Assert.assertEquals(set(e("c", 1), e("b", 3)), set(c.getElements()));
+        Assert.assertEquals(1, c.getError("c"));
+        Assert.assertEquals(0, c.getError("b"));
+        Assert.assertEquals(0, c.getError("a"));
+
+        Assert.assertTrue(c.incIfPresent("c"));
+        Assert.assertTrue(c.incIfPresent("c"));
+        Assert.assertEquals(set(e("c", 3), e("b", 3)), set(c.getElements()));
+
+        // replace the minimum b=3, d=4 with error 3
+        Assert.assertTrue(c.addIfAbsentAndNotFull("d"));
+        Assert.assertEquals(set(e("c", 3), e("d", 1)), set(c.getElements()));
+        Assert.assertEquals(3, c.getError("d"));
+
+        c.clear();
+        Assert.assertEquals(set(), set(c.getElements()));
+        Assert.assertFalse(c.isFull());
+        Assert.assertTrue(c.addIfAbsentAndNotFull("c"));
+        Assert.assertEquals(set(e("c", 1)), set(c.getElements()));
+        Assert.assertEquals(0, c.getError("c"));
+    }
+
+    @Test
+    public void testDelta() {
+        SpaceSavingL2Counter<String> c = new SpaceSavingL2Counter<>(3);
+        Assert.assertTrue(c.addIfAbsentAndNotFull("a", 5));
+        Assert.assertTrue(c.addIfAbsentAndNotFull("b", 2));
+        Assert.assertTrue(c.addIfAbsentAndNotFull("c", 5));
+        Assert.assertFalse(c.addIfAbsentAndNotFull("c", 5));
+        Assert.assertEquals(set(e("a", 5), e("b", 2), e("c", 5)), set(c.getElements()));
+
+        // jump over buckets
+        Assert.assertTrue(c.incIfPresent("b", 10));
+        Assert.assertTrue(c.incIfPresent("a", 1));
+        Assert.assertEquals(set(e("a", 6), e("b", 12), e("c", 5)), set(c.getElements()));
+
+        // replace the minimum c=5, d=8 with error 5
+        Assert.assertTrue(c.addIfAbsentAndNotFull("d", 3));
+        Assert.assertEquals(set(e("a", 6), e("b", 12), e("d", 3)), set(c.getElements()));
+        Assert.assertEquals(5, c.getError("d"));
+    }
+
+    @Test
+    public void testDeltaKeepsTotal() {
+        // sum of counts and errors always equals sum of deltas, even if elements are replaced
+        SpaceSavingL2Counter<Integer> c = new SpaceSavingL2Counter<>(8);
+        java.util.Random random = new java.util.Random(0);
+        long total = 0;
+        for (int i = 0; i < 10000; i++) {
+            int element = random.nextInt(20);
+            int delta = random.nextInt(5) + 1;
+            if (!c.incIfPresent(element, delta)) {
+                Assert.assertTrue(c.addIfAbsentAndNotFull(element, delta));
+            }
+            total += delta;
+        }
+        long sum = 0;
+        for (Entry<Integer> entry : c.getElements()) {
+            sum += entry.getCount() + c.getError(entry.getElement());
+        }
+        Assert.assertEquals(total, sum);
+    }
+
+    @Test
+    public void testHeavyHitterSurvivesChurn() {
+        SpaceSavingL2Counter<String> c = new SpaceSavingL2Counter<>(10);
+        for (int i = 0; i < 10000; i++) {
+            // one hot element among a stream of distinct ones
+            String element = i % 3 == 0 ? "hot" : "cold" + i;
+            if (!c.incIfPresent(element)) {
+                Assert.assertTrue(c.addIfAbsentAndNotFull(element));
+            }
+        }
+
+        int count = 0;
+        for (Entry<String> entry : c.getElements()) {
+            if (entry.getElement().equals("hot")) {
+                count = entry.getCount();
+            }
+        }
+        int error = c.getError("hot");
+        Assert.assertTrue(count <= 3334 && 3334 <= count + error);
+    }
+}
@@ -37,6 +37,22 @@ public class TestUtils {
         return new Entry<>(element, count);
     }
 
+    /**
+     * Submit a window by entries as a collector would. Counts of entries are those of L2Counter, the access recorded
+     * by L1LRU is added here.
+     *
+     * @param collectorIndex index of the collector, far from those allocated by the sensor
+     */
+    static <T> boolean submit(HotspotSensor<T> sensor, int collectorIndex, long timeId, List<Entry<T>> l2Counter,
+        long totalCount) {
+        ClientMessage message = new ClientMessage(null, false);
+        message.reset(collectorIndex, timeId, totalCount);
+        for (Entry<T> entry : l2Counter) {
+            message.add(entry.getElement(), entry.getCount() + 1);
+        }
+        return sensor.submit(message);
+    }
+
     public static Map<String, Double> map(String key, double d) {
         Map result = new HashMap<>();
         result.put(key, d);
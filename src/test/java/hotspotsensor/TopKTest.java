@@ -0,0 +1,69 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class TopKTest {
+
+    @Test
+    public void testTopK() {
+        TopK<String> topK = new TopK<>(3);
+        topK.offer("a", 1, 1);
+        topK.offer("b", 5, 5);
+        topK.offer("c", 3, 3);
+        topK.offer("d", 4, 4);
+        Assert.assertFalse(topK.accepts(2, 2));
+        topK.offer("e", 2, 2);
+        Assert.assertEquals(3, topK.size());
+
+        List<Entry<String>> result = topK.toList();
+        Assert.assertEquals(list(e("b", 5), e("d", 4), e("c", 3)), result);
+        Assert.assertEquals(0, topK.size());
+    }
+
+    @Test
+    public void testTieOnScore() {
+        TopK<String> topK = new TopK<>(2);
+        topK.offer("a", 1, 10);
+        topK.offer("b", 3, 10);
+        topK.offer("c", 2, 10);
+        Assert.assertEquals(list(e("b", 3), e("c", 2)), topK.toList());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        TopK<String> topK = new TopK<>(2);
+        topK.offer("a", 1, 1);
+        topK.toList().add(e("b", 1));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(0);
+        List<Integer> counts = new ArrayList<>();
+        TopK<Integer> topK = new TopK<>(100);
+        for (int i = 0; i < 10000; i++) {
+            int count = random.nextInt(1000000) + 1;
+            counts.add(count);
+            topK.offer(i, count, count);
+        }
+        counts.sort(Collections.reverseOrder());
+
+        List<Entry<Integer>> result = topK.toList();
+        Assert.assertEquals(100, result.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals((int) counts.get(i), result.get(i).getCount());
+        }
+    }
+}
@@ -22,7 +22,8 @@ public class WatchTest {
         Assert.assertTrue(window1 == 0);
 
         try {
-            TimeUnit.MILLISECONDS.sleep(windowSizeMillis * 2);
+            // plus granularity of the coarse clock
+            TimeUnit.MILLISECONDS.sleep(windowSizeMillis * 2 + 5);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -35,6 +36,43 @@ public class WatchTest {
 
     }
 
+    @Test
+    public void testManualTimeSource() {
+        ManualTimeSource timeSource = new ManualTimeSource(1000);
+        Watch watch = new Watch(50, timeSource);
+        Assert.assertEquals(0, watch.currentTimeId());
+
+        timeSource.advance(49);
+        Assert.assertEquals(0, watch.currentTimeId());
+        timeSource.advance(1);
+        Assert.assertEquals(1, watch.currentTimeId());
+        Assert.assertEquals(1050, watch.startTimeMillisOf(1));
 
+        timeSource.advance(500);
+        Assert.assertEquals(11, watch.currentTimeId());
+    }
+
+    @Test
+    public void testEpochAligned() {
+        ManualTimeSource timeSource = new ManualTimeSource(1020);
+        Watch watch = new Watch(50, timeSource, true);
+        Assert.assertEquals(0, watch.currentTimeId());
+        Assert.assertEquals(1000, watch.startTimeMillisOf(0));
 
+        // another watch started later in the same window has the same windows
+        timeSource.advance(60);
+        Watch other = new Watch(50, timeSource, true);
+        Assert.assertEquals(1050, other.startTimeMillisOf(0));
+        Assert.assertEquals(1, watch.timeIdOf(other.startTimeMillisOf(0)));
+        Assert.assertEquals(-1, other.timeIdOf(1049));
+    }
+
+    @Test
+    public void testNanoTimeSource() throws InterruptedException {
+        TimeSource timeSource = TimeSource.nanoTime();
+        long start = timeSource.currentTimeMillis();
+        TimeUnit.MILLISECONDS.sleep(20);
+        long elapsed = timeSource.currentTimeMillis() - start;
+        Assert.assertTrue(String.valueOf(elapsed), elapsed >= 19 && elapsed < 1000);
+    }
 }
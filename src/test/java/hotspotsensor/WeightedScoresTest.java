@@ -0,0 +1,92 @@
+package hotspotsensor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class WeightedScoresTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testExponential() {
+        WeightedScores<String> scores = new WeightedScores<>(WindowWeighting.exponential(1), 4);
+        scores.add("a", 8, 0);
+        scores.add("a", 4, 1);
+        scores.add("b", 6, 1);
+
+        // a=8*0.5+4, b=6
+        Set<Entry<String>> result = scores.filterGreaterThanOrEqualsTo(7, 1);
+        Assert.assertEquals(set(e("a", 12)), result);
+        Assert.assertEquals(8, result.iterator().next().getScore(), DELTA);
+
+        // a=8*0.25+4*0.5, b=6*0.5
+        Assert.assertEquals(set(e("a", 12), e("b", 6)), scores.filterGreaterThanOrEqualsTo(3, 2));
+
+        scores.subtract("a", 8, 0);
+        result = scores.filterGreaterThanOrEqualsTo(0, 2);
+        Assert.assertEquals(set(e("a", 4), e("b", 6)), result);
+        for (Entry<String> entry : result) {
+            Assert.assertEquals(entry.getElement().equals("a") ? 2 : 3, entry.getScore(), DELTA);
+        }
+
+        scores.subtract("a", 4, 1);
+        scores.subtract("b", 6, 1);
+        Assert.assertEquals(0, scores.size());
+    }
+
+    @Test
+    public void testExponentialRescale() {
+        WeightedScores<String> scores = new WeightedScores<>(WindowWeighting.exponential(2), 4);
+        for (long t = 0; t < 200; t++) {
+            scores.add("a", 4, t);
+            Entry<String> entry = scores.filterGreaterThanOrEqualsTo(0, t).iterator().next();
+            // 4 * (1 + 2^-0.5 + 2^-1 ...) converges to 4 / (1 - 2^-0.5)
+            double expected = 4 * (1 - Math.pow(2, -0.5 * (t + 1))) / (1 - Math.pow(2, -0.5));
+            Assert.assertEquals(expected, entry.getScore(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testLinear() {
+        WeightedScores<String> scores = new WeightedScores<>(WindowWeighting.linear(), 4);
+        scores.add("a", 4, 10);
+        scores.add("a", 4, 13);
+
+        // a=4*1/4+4*4/4
+        Entry<String> entry = scores.filterGreaterThanOrEqualsTo(0, 13).iterator().next();
+        Assert.assertEquals(e("a", 8), entry);
+        Assert.assertEquals(5, entry.getScore(), DELTA);
+
+        scores.subtract("a", 4, 10);
+        // a=4*3/4
+        entry = scores.filterGreaterThanOrEqualsTo(0, 14).iterator().next();
+        Assert.assertEquals(3, entry.getScore(), DELTA);
+    }
+
+    @Test
+    public void testCustom() {
+        WeightedScores<String> scores = new WeightedScores<>(WindowWeighting.custom(1, 0.5, 0, 0), 4);
+        scores.add("a", 2, 2);
+        scores.add("a", 4, 3);
+
+        Entry<String> entry = scores.filterGreaterThanOrEqualsTo(0, 3).iterator().next();
+        Assert.assertEquals(5, entry.getScore(), DELTA);
+        // a=2*0+4*0.5
+        entry = scores.filterGreaterThanOrEqualsTo(0, 4).iterator().next();
+        Assert.assertEquals(2, entry.getScore(), DELTA);
+        Assert.assertEquals(set(), scores.filterGreaterThanOrEqualsTo(3, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCustomWeightsMismatch() {
+        new WeightedScores<String>(WindowWeighting.custom(1, 0.5), 4);
+    }
+}
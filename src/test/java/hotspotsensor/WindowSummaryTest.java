@@ -0,0 +1,67 @@
+package hotspotsensor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static hotspotsensor.TestUtils.e;
+import static hotspotsensor.TestUtils.list;
+import static hotspotsensor.TestUtils.set;
+
+/**
+ * @author iamlotus@gmail.com
+ */
+public class WindowSummaryTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+        WindowSummary<String> summary = new WindowSummary<>("node-1", 2, 50, 1_600_000_000_000L, 300,
+            list(e("a", 1), e("\u70ed\u70b9", 200), e("c", 70000)));
+        byte[] bytes = summary.encode(KeyCodec.ofString());
+        Assert.assertEquals(WindowSummary.VERSION, bytes[0]);
+
+        WindowSummary<String> decoded = WindowSummary.decode(bytes, KeyCodec.ofString());
+        Assert.assertEquals("node-1", decoded.getSource());
+        Assert.assertEquals(2, decoded.getPartition());
+        Assert.assertEquals(50, decoded.getWindowSizeMills());
+        Assert.assertEquals(1_600_000_000_000L, decoded.getWindowStartMillis());
+        Assert.assertEquals(300, decoded.getTotalCount());
+        Assert.assertEquals(list(e("a", 1), e("\u70ed\u70b9", 200), e("c", 70000)), decoded.getEntries());
+    }
+
+    @Test
+    public void testLongKeys() {
+        WindowSummary<Long> summary = new WindowSummary<>("node-1", 0, 50, 0, 3,
+            list(e(0L, 1), e(-1L, 1), e(63L, 1), e(Long.MAX_VALUE, 1), e(Long.MIN_VALUE, 1)));
+        byte[] bytes = summary.encode(KeyCodec.ofLong());
+        Assert.assertEquals(set(summary.getEntries()),
+            set(WindowSummary.decode(bytes, KeyCodec.ofLong()).getEntries()));
+
+        // small keys take a byte
+        Assert.assertEquals(1, KeyCodec.ofLong().encode(63L).length);
+        Assert.assertEquals(1, KeyCodec.ofLong().encode(-64L).length);
+        Assert.assertEquals(10, KeyCodec.ofLong().encode(Long.MIN_VALUE).length);
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] bytes = new WindowSummary<>("node-1", 0, 50, 100, 3, list(e("a", 2))).encode(KeyCodec.ofString());
+
+        byte[] unknownVersion = bytes.clone();
+        unknownVersion[0] = 2;
+        assertMalformed(unknownVersion);
+        assertMalformed(Arrays.copyOf(bytes, bytes.length - 1));
+        assertMalformed(Arrays.copyOf(bytes, bytes.length + 1));
+        assertMalformed(new byte[0]);
+    }
+
+    private static void assertMalformed(byte[] bytes) {
+        try {
+            WindowSummary.decode(bytes, KeyCodec.ofString());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}